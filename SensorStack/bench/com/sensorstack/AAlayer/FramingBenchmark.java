@@ -0,0 +1,150 @@
+package com.sensorstack.AAlayer;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.sensorstack.ContinuousStreamInfo;
+import com.sensorstack.DiscretePacketInfo;
+import com.sensorstack.devicelayer.ContinuousStream;
+import com.sensorstack.devicelayer.DeviceLayerClass;
+import com.sensorstack.devicelayer.Frame;
+import com.sensorstack.devicelayer.ReplayTransport;
+import com.sensorstack.devicelayer.SensorEmulator;
+
+/**
+ * Compares text and binary frames of the ECG stream: the bytes on the link per sample, and the time
+ * {@link ChunkingStreamListener} takes to parse a sample. A {@link SensorEmulator} session streams the same number of
+ * samples once in text and once in binary frames (int16 blocks, compression turned off), recorded with a capture;
+ * each capture is then played back unpaced by a {@link ReplayTransport} into the listener. The time of a playback
+ * without the listener is subtracted, so the parse time excludes reading the capture; of either, the fastest of
+ * PLAYBACKS playbacks is taken.
+ * Runs on a desktop JVM, with the classes of src and a no-op android.util.Log on the class path (the methods of
+ * android.jar throw):
+ * <pre>
+ * java -cp bin/classes:bench-classes:log-stub com.sensorstack.AAlayer.FramingBenchmark [samples [rate]]
+ * </pre>
+ */
+public class FramingBenchmark {
+	private static final int DEFAULT_SAMPLES = 10000;
+	private static final int DEFAULT_RATE = 2000;		//samples per second sent by the emulator
+	private static final int CHUNK = 32;
+	private static final int TIMEOUT = 1000;			//milliseconds to wait for negotiation and the stop ack
+	private static final int WARMUP = 20;				//playbacks before measuring
+	private static final int PLAYBACKS = 200;			//playbacks measured, the fastest counts
+	private static final int REQUESTS = 16;			//request bytes written to the replay, more than the capture holds
+
+	public static void main(String args[]) throws Exception {
+		int samples = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_SAMPLES;
+		int rate = (args.length > 1) ? Integer.parseInt(args[1]) : DEFAULT_RATE;
+
+		DiscretePacketInfo info = AALayerII.getDiscretePacketInfo();
+		info.setSensorIdentifier(new char[]{'T', 'B', 'P', 'O', 'G'});
+		ContinuousStreamInfo stream = AALayerII.getContinuousStreamInfo();
+		stream.setSamplingRate(rate);
+		stream.setTimeout(TIMEOUT);
+
+		System.out.println(samples + " samples at " + rate + " per second");
+		measure("text", record(info, stream, samples, false));
+		measure("binary", record(info, stream, samples, true));
+	}
+
+	/*
+	 * Streams the samples from an emulator into a capture file, in text or binary frames; returns the file
+	 */
+	private static File record(DiscretePacketInfo info, ContinuousStreamInfo c, final int samples, boolean binary)
+			throws Exception
+	{
+		File file = File.createTempFile("framing", ".cap");
+		file.deleteOnExit();
+		SensorEmulator emulator = new SensorEmulator(info, c);
+		emulator.setCompressionSupported(false);
+		DeviceLayerClass.connectEmulator(emulator);
+		if(binary && !DeviceLayerClass.negotiateBinaryFraming(TIMEOUT))
+			throw new IllegalStateException("Binary frames not negotiated");
+		DeviceLayerClass.startCapture(file);
+		final SensorFuture<Integer> received = new SensorFuture<Integer>();
+		ContinuousStream s = AALayerII.streamECG(CHUNK, new SampleSink() {
+			private int count = 0;
+			public void onSamples(float values[], int length) {
+				count += length;
+				if(count >= samples)
+					received.set(count);
+			}
+			public void onEnd(boolean acknowledged) {
+				received.set(count);
+			}
+		});
+		received.get();
+		s.stop();
+		DeviceLayerClass.stopCapture();
+		DeviceLayerClass.disconnect();
+		emulator.shutdown();
+		return file;
+	}
+
+	private static void measure(String name, File capture) throws Exception {
+		CountingSink sink = new CountingSink();
+		long bytes[] = new long[1];
+		for(int i=0;i<WARMUP;i++)
+		{
+			play(capture, null, bytes);
+			play(capture, sink, bytes);
+		}
+		long replay = Long.MAX_VALUE;
+		long parse = Long.MAX_VALUE;
+		for(int i=0;i<PLAYBACKS;i++)
+		{
+			replay = Math.min(replay, play(capture, null, bytes));
+			sink.count = 0;
+			parse = Math.min(parse, play(capture, sink, bytes));
+		}
+		System.out.println(name + ": " + String.format("%.1f", (double) bytes[0] / sink.count) + " bytes and "
+				+ String.format("%.1f", (double) (parse - replay) / sink.count) + " ns per sample, "
+				+ sink.count + " samples");
+	}
+
+	/*
+	 * Plays the capture back into the listener, without one if sink is null; stores the bytes of the frames
+	 * including their line ends, and returns the nanoseconds taken
+	 */
+	private static long play(File capture, SampleSink sink, long bytes[]) throws IOException, InterruptedException {
+		ReplayTransport replay = new ReplayTransport(capture, false);
+		replay.open();
+		for(int i=0;i<REQUESTS;i++)
+			replay.write((byte) 0);
+		ChunkingStreamListener listener = (sink != null)
+				? new ChunkingStreamListener(CHUNK, AALayerII.STANDARD_ECG_RANGE, sink) : null;
+		char stopAck = AALayerII.getContinuousStreamInfo().getStopAck();
+		Frame frame = new Frame();
+		long total = 0;
+		long start = System.nanoTime();
+		try {
+			while(true)
+			{
+				replay.readFrame(frame, 0);
+				total += frame.length() + 1;
+				if(listener != null && !(frame.length() == 1 && frame.charAt(0) == stopAck))
+					listener.onFrame(frame);
+			}
+		} catch (IOException e) {
+			//end of capture
+		}
+		if(listener != null)
+			listener.onEnd(true);
+		long time = System.nanoTime() - start;
+		replay.close();
+		bytes[0] = total;
+		return time;
+	}
+
+	private static class CountingSink implements SampleSink {
+		private long count = 0;
+
+		public void onSamples(float samples[], int length) {
+			count += length;
+		}
+
+		public void onEnd(boolean acknowledged) {
+		}
+	}
+}
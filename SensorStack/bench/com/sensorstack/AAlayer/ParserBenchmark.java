@@ -0,0 +1,321 @@
+package com.sensorstack.AAlayer;
+
+import java.lang.management.ManagementFactory;
+
+import android.util.Log;
+
+import com.sensorstack.DiscretePacketInfo;
+import com.sensorstack.PacketSchema;
+import com.sensorstack.devicelayer.DeviceLayerClass;
+import com.sensorstack.devicelayer.SensorEmulator;
+import com.sensorstack.sensors.BloodPressure;
+import com.sensorstack.sensors.DataNotCollectedException;
+import com.sensorstack.sensors.GSR;
+import com.sensorstack.sensors.Oximeter;
+import com.sensorstack.sensors.PulseRate;
+import com.sensorstack.sensors.RangeOfValues;
+import com.sensorstack.sensors.Sensor;
+import com.sensorstack.sensors.SensorData;
+import com.sensorstack.sensors.SensorDataRange;
+import com.sensorstack.sensors.SensorNotDefinedException;
+import com.sensorstack.sensors.Temperature;
+
+/**
+ * Measures the bytes allocated and the time taken per discrete response packet by {@link DiscretePacketParser},
+ * against the split based parsing it replaced, kept below as it was. The packet is fetched once from a
+ * {@link SensorEmulator} answering all five discrete sensors with fixed values, then parsed in a loop on this
+ * thread; allocations are read from the thread's allocation counter, so the numbers include the SensorData
+ * created per packet by the loop itself.
+ * Runs on a desktop HotSpot JVM, with the classes of src and a no-op android.util.Log on the class path (the
+ * methods of android.jar throw):
+ * <pre>
+ * java -cp bin/classes:bench-classes:log-stub com.sensorstack.AAlayer.ParserBenchmark [iterations]
+ * </pre>
+ */
+public class ParserBenchmark {
+	private static final int WARMUP = 50000;
+	private static final int DEFAULT_ITERATIONS = 200000;
+	private static final int TIMEOUT = 1000;		//milliseconds to wait for the emulator's packet
+
+	private static com.sun.management.ThreadMXBean threads;
+
+	public static void main(String args[]) throws Exception {
+		int iterations = (args.length > 0) ? Integer.parseInt(args[0]) : DEFAULT_ITERATIONS;
+		threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+		DiscretePacketInfo info = AALayerII.getDiscretePacketInfo();
+		info.setSensorIdentifier(new char[]{'T', 'B', 'P', 'O', 'G'});
+		SensorEmulator emulator = new SensorEmulator(info, AALayerII.getContinuousStreamInfo());
+		emulator.setValue(Sensor.TEMPERATURE, "36.5");
+		emulator.setValue(Sensor.BLOODPRESSURE, "120" + info.getMultiValueDelimiter() + "80");
+		emulator.setValue(Sensor.PULSERATE, "72");
+		emulator.setValue(Sensor.OXIMETER, "97.5");
+		emulator.setValue(Sensor.GSR, "2.5" + info.getMultiValueDelimiter() + "1000.0");
+		DeviceLayerClass.connectEmulator(emulator);
+		String packet = DeviceLayerClass.getDiscretePacket((byte) ((1 << Sensor.NUM_DISCRETE) - 1), TIMEOUT);
+		DeviceLayerClass.disconnect();
+		emulator.shutdown();
+		if(packet.length() == 0)
+			throw new IllegalStateException("No response from the emulator");
+
+		System.out.println("packet: " + packet + ", " + iterations + " iterations");
+		run("split", packet, info, WARMUP, false);
+		run("single pass", packet, info, WARMUP, true);
+		report("split", run("split", packet, info, iterations, false), iterations);
+		report("single pass", run("single pass", packet, info, iterations, true), iterations);
+	}
+
+	/*
+	 * Parses the packet the number of times given; returns the bytes allocated and the nanoseconds taken
+	 */
+	private static long[] run(String name, String packet, DiscretePacketInfo info, int iterations, boolean current)
+			throws DataNotCollectedException
+	{
+		PacketSchema schema = info.getSchema();
+		SensorDataRange range = AALayerII.getHardwareDataRange();
+		boolean request[] = new boolean[Sensor.NUM_DISCRETE];
+		long thread = Thread.currentThread().getId();
+		long bytes = threads.getThreadAllocatedBytes(thread);
+		long start = System.nanoTime();
+		for(int n=0;n<iterations;n++)
+		{
+			for(int i=0;i<request.length;i++)
+				request[i] = true;
+			SensorData sd = new SensorData();
+			if(current)
+				DiscretePacketParser.parse(sd, packet, schema, request, range);
+			else
+				parseSplit(sd, packet, info, request, range);
+			for(int i=0;i<request.length;i++)
+				if(request[i])
+					throw new IllegalStateException(name + ": " + Sensor.sensorName(i) + " not parsed");
+		}
+		long time = System.nanoTime() - start;
+		return new long[]{threads.getThreadAllocatedBytes(thread) - bytes, time};
+	}
+
+	private static void report(String name, long result[], int iterations) {
+		System.out.println(name + ": " + result[0] / iterations + " bytes and "
+				+ result[1] / iterations + " ns per packet");
+	}
+
+	/*
+	 * populateDiscreteResponse() and its extract methods before the single pass parser
+	 */
+	private static void parseSplit(SensorData sd, String response, DiscretePacketInfo p, boolean request[],
+			SensorDataRange range) throws DataNotCollectedException
+	{
+		String sensorDelimiter = String.valueOf(p.getSensorDelimiter());
+		for(int i=0;i<request.length;i++)
+		{
+			if(request[i])
+			{
+				String sensorid=null;
+				try {
+					if(p.getSensorIdentifier(i)=='\0')
+						throw new DataNotCollectedException("Sensor Identifier is not defined for "+Sensor.sensorName(i)+" sensor");
+					sensorid=String.valueOf(p.getSensorIdentifier(i));
+				} catch (SensorNotDefinedException e1) {
+					e1.printStackTrace();
+				}
+				String splitter = sensorid + p.getSensorDataDelimiter();
+				String data[]= response.split(splitter);
+				boolean success=false;
+				for(int index=data.length-1;index>0;index--)
+				{
+					String sensorValue = data[index].split(sensorDelimiter)[0];
+					try
+					{
+						switch(i)
+						{
+							case Sensor.TEMPERATURE:
+								Temperature temp=extractTemp(sensorValue, range.getTemperatureRange());
+								if(temp!=null)
+								{
+									sd.setTemperature(temp);
+									success=true;
+								}
+								break;
+							case Sensor.BLOODPRESSURE:
+								BloodPressure bp=extractBP(sensorValue, String.valueOf(p.getMultiValueDelimiter()), range.getSystolicRange(), range.getDiastolicRange());
+								if(bp!=null)
+								{
+									sd.setBloodPressure(bp);
+									success = true;
+								}
+								break;
+							case Sensor.PULSERATE:
+								PulseRate pr = extractPulseRate(sensorValue, range.getPulseRateRange());
+								if(pr!=null)
+								{
+									sd.setPulseRate(pr);
+									success = true;
+								}
+								break;
+							case Sensor.OXIMETER:
+								Oximeter oxi = extractSPO2(sensorValue, range.getOximeterRange());
+								if(oxi != null)
+								{
+									sd.setOximeter(oxi);
+									success = true;
+								}
+								break;
+							case Sensor.GSR:
+								GSR gsr = extractGSR(sensorValue, String.valueOf(p.getMultiValueDelimiter()), range.getGsrConductanceRange(), range.getGsrResistanceRange());
+								if(gsr != null)
+								{
+									sd.setGsr(gsr);
+									success = true;
+								}
+								break;
+						}
+						if(success)
+						{
+							request[i] = false;
+							break;
+						}
+					}
+					catch(SensorNotDefinedException e)
+					{
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+	}
+
+	private static GSR extractGSR(String sensorValue, String delimiter, RangeOfValues<Float> conductanceRange, RangeOfValues<Float> resistanceRange)
+	{
+		try
+		{
+			Log.e("extractGSR", "sensorvalue= "+sensorValue+" splitter= "+delimiter);
+			String value[]=sensorValue.split(delimiter);
+			if(value.length>=2)
+			{
+				Log.e("extractGSR", "valuelength>=2");
+				float conductance=Float.parseFloat(value[0]);
+				float resistance=Float.parseFloat(value[1]);
+				if(isValid(conductance, conductanceRange) && isValid(resistance, resistanceRange))
+				{
+					Log.e("extractGSR", "GSR valid");
+					GSR temp = new GSR();
+					temp.setConductanceValue(conductance);
+					temp.setResistanceValue(resistance);
+					return temp;
+				}
+			}
+			Log.e("extractGSR", "valuelength<2");
+			return null;
+		}
+		catch(Exception e)
+		{
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private static Oximeter extractSPO2(String sensorValue, RangeOfValues<Float> range)
+	{
+		try
+		{
+			float value = Float.parseFloat(sensorValue);
+			if(isValid(value, range))
+			{
+				Oximeter temp = new Oximeter();
+				temp.setValue(value);
+				return temp;
+			}
+			else
+				return null;
+		}
+		catch(Exception e)
+		{
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private static PulseRate extractPulseRate(String sensorValue, RangeOfValues<Integer> range)
+	{
+		try
+		{
+			int value = Integer.parseInt(sensorValue);
+			if(isValid(value, range))
+			{
+				PulseRate temp = new PulseRate();
+				temp.setValue(value);
+				return temp;
+			}
+			else
+				return null;
+		}
+		catch(Exception e)
+		{
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private static BloodPressure extractBP(String sensorValue, String delimiter, RangeOfValues<Integer> sysrange, RangeOfValues<Integer> dirange)
+	{
+		try
+		{
+			String value[]=sensorValue.split(delimiter);
+			if(value.length>=2)
+			{
+				int sysvalue=Integer.parseInt(value[0]);
+				int divalue=Integer.parseInt(value[1]);
+				if(isValid(sysvalue, sysrange) && isValid(divalue, dirange))
+				{
+					BloodPressure bp = new BloodPressure();
+					bp.setSystolicValue(sysvalue);
+					bp.setDiastolicValue(divalue);
+					return bp;
+				}
+			}
+			return null;
+		}
+		catch(Exception e)
+		{
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private static Temperature extractTemp(String sensorValue, RangeOfValues<Float> range)
+	{
+		Log.e("extractTemp : ","SensorValue is "+sensorValue);
+		try
+		{
+			float value = Float.parseFloat(sensorValue);
+			if(isValid(value, range))
+			{
+				Temperature temp = new Temperature();
+				temp.setValue(value);
+				Log.e("extractTemp: ","Valid reading: "+value);
+				return temp;
+			}
+			else
+			{
+				Log.e("extractTemp: ","inValid reading: "+value);
+				return null;
+			}
+		}
+		catch(Exception e)
+		{
+			Log.e("extractTemp: ","exception");
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	private static boolean isValid(float value, RangeOfValues<Float> r)
+	{
+		return value<=r.getUpperLimit() && value>=r.getLowerLimit();
+	}
+
+	private static boolean isValid(int value, RangeOfValues<Integer> r)
+	{
+		return value<=r.getUpperLimit() && value>=r.getLowerLimit();
+	}
+}
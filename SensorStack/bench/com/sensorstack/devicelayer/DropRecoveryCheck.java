@@ -0,0 +1,106 @@
+package com.sensorstack.devicelayer;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sensorstack.DiscretePacketInfo;
+import com.sensorstack.AAlayer.AALayerII;
+import com.sensorstack.sensors.Sensor;
+
+/**
+ * Checks that discrete reads recover after the hardware drops a response, see {@link RequestPipeline}. A
+ * {@link SensorEmulator} dropping DROP_RATE of its replies is read by one or several threads, each reading its
+ * own sensor, at pipeline depth 1 and 4, in text and binary frames. Every packet received must be the one of the
+ * sensor read, and each dropped reply may cost at most RECOVERY_COST empty reads per thread, where a misaligned
+ * pipeline would lose nearly every read after the first drop.
+ * Runs on a desktop JVM, with the classes of src and a no-op android.util.Log on the class path (the methods of
+ * android.jar throw); exits with status 1 if a check fails:
+ * <pre>
+ * java -cp bin/classes:bench-classes:log-stub com.sensorstack.devicelayer.DropRecoveryCheck
+ * </pre>
+ */
+public class DropRecoveryCheck {
+	private static final double DROP_RATE = 0.05;
+	private static final int READS = 100;			//per thread
+	private static final int TIMEOUT = 200;			//milliseconds
+	private static final int RECOVERY_COST = 2;		//empty reads per dropped reply and thread
+	private static final long SEED = 3;
+
+	public static void main(String args[]) throws Exception {
+		DiscretePacketInfo info = AALayerII.getDiscretePacketInfo();
+		info.setSensorIdentifier(new char[]{'T', 'B', 'P', 'O', 'G'});
+		boolean passed = check(info, 1, 1, false);
+		passed &= check(info, 1, 4, false);
+		passed &= check(info, 4, 4, false);
+		passed &= check(info, 4, 4, true);
+		System.exit(passed ? 0 : 1);
+	}
+
+	private static boolean check(final DiscretePacketInfo info, int depth, int threads, final boolean binary)
+			throws Exception
+	{
+		SensorEmulator emulator = new SensorEmulator(info, AALayerII.getContinuousStreamInfo());
+		emulator.setLatency(5, 5);
+		emulator.setSeed(SEED);
+		String name = "check-" + depth + "-" + threads + (binary ? "-binary" : "");
+		final DeviceSession session = DeviceRegistry.open(name, new LoopbackTransport(emulator));
+		session.setPipelineDepth(depth);
+		session.setPacketSchema(info.getSchema());
+		if(binary && !session.negotiateBinaryFraming(TIMEOUT))
+			throw new IllegalStateException("Binary frames not negotiated");
+		emulator.setDropRate(DROP_RATE);
+
+		final AtomicInteger answered = new AtomicInteger();
+		final AtomicInteger empty = new AtomicInteger();
+		final AtomicInteger wrong = new AtomicInteger();
+		Thread readers[] = new Thread[threads];
+		for(int t=0;t<threads;t++)
+		{
+			final int sensor = t % Sensor.NUM_DISCRETE;
+			readers[t] = new Thread("reader-" + t) {
+				public void run() {
+					try {
+						for(int i=0;i<READS;i++)
+						{
+							String packet = session.getDiscretePacket((byte) (1 << sensor), TIMEOUT);
+							if(packet.length() == 0)
+								empty.incrementAndGet();
+							else if(sensorOf(packet, info, binary) == (1 << sensor))
+								answered.incrementAndGet();
+							else
+								wrong.incrementAndGet();
+						}
+					} catch (NoDeviceConnectedException e) {
+						e.printStackTrace();
+					}
+				}
+			};
+			readers[t].start();
+		}
+		for(int t=0;t<threads;t++)
+			readers[t].join();
+		long dropped = emulator.getDroppedCount();
+		DeviceRegistry.close(name);
+		emulator.shutdown();
+
+		boolean passed = wrong.get() == 0 && empty.get() <= RECOVERY_COST * threads * dropped;
+		System.out.println((passed ? "passed " : "FAILED ") + name + ": " + answered + " answered, " + empty
+				+ " empty, " + wrong + " for another sensor, " + dropped + " replies dropped");
+		return passed;
+	}
+
+	/*
+	 * Returns the sensors a response packet names
+	 */
+	private static int sensorOf(String packet, DiscretePacketInfo info, boolean binary) {
+		if(binary)
+		{
+			BinaryFrame frame = new BinaryFrame();
+			return frame.decode(packet) ? frame.getSensor() & ((1 << Sensor.NUM_DISCRETE) - 1) : -1;
+		}
+		int sensors = 0;
+		for(int j=0;j+1<packet.length();j++)
+			if(packet.charAt(j+1) == info.getSensorDataDelimiter())
+				sensors |= info.getSchema().getSensors(packet.charAt(j));
+		return sensors;
+	}
+}
@@ -3,13 +3,21 @@ package com.sensorstack.AAlayer;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import android.util.Log;
 
 import com.sensorstack.ContinuousStreamInfo;
 import com.sensorstack.DiscretePacketInfo;
-import com.sensorstack.devicelayer.DeviceLayerClass;
+import com.sensorstack.PacketSchema;
+import com.sensorstack.RetryPolicy;
+import com.sensorstack.devicelayer.BinaryFrame;
+import com.sensorstack.devicelayer.ContinuousStream;
+import com.sensorstack.devicelayer.Deadline;
+import com.sensorstack.devicelayer.DeviceSession;
+import com.sensorstack.devicelayer.LateResponseListener;
 import com.sensorstack.devicelayer.NoDeviceConnectedException;
+import com.sensorstack.devicelayer.ResponseListener;
 import com.sensorstack.sensors.BloodPressure;
 import com.sensorstack.sensors.DataNotCollectedException;
 import com.sensorstack.sensors.ECG;
@@ -18,8 +26,11 @@ import com.sensorstack.sensors.Oximeter;
 import com.sensorstack.sensors.PulseRate;
 import com.sensorstack.sensors.RangeOfValues;
 import com.sensorstack.sensors.Sensor;
-import com.sensorstack.sensors.SensorContinuous;
+import com.sensorstack.sensors.SensorContinuousFloat;
+import com.sensorstack.sensors.SensorContinuousInt;
 import com.sensorstack.sensors.SensorData;
+import com.sensorstack.sensors.SensorDataRange;
+import com.sensorstack.sensors.SensorSeries;
 import com.sensorstack.sensors.SensorNotDefinedException;
 import com.sensorstack.sensors.Temperature;
 
@@ -31,9 +42,13 @@ import com.sensorstack.sensors.Temperature;
  * will fetch, validate and re-fetch invalid/missing/corrupt values till a complete valid response is generated
  * or the maximum number of attempts has been exhausted. The final populated object is then returned to the 
  * upper layer, AALayer-II.
+ * Every request is made on the session passed in, with the packet info and hardware range passed in, so
+ * requests to several sensor hardware units can run concurrently. See {@link DeviceSession}
  */
 public class AALayerI {
-	static int remainingAttempts;
+	private static final int STREAM_CHUNK = 1;		//hand each sample over at once, so the caller does not wait for a full chunk
+	private static final int BATCH = 1 << 6;		//request bit asking for all readings buffered since the last batch
+	private static final int BATCH_CAPACITY = 16;	//initial readings per series
 	private static byte generateRequestByte(boolean req[]) throws DataNotCollectedException
 	{
 		byte request=0;
@@ -43,90 +58,14 @@ public class AALayerI {
 		return request;
 	}
 	
-	private static void populateDiscreteResponse(SensorData sd, String response, DiscretePacketInfo p) 
-			throws DataNotCollectedException
+	private static void populateDiscreteResponse(SensorData sd, String response, PacketSchema schema, boolean request[], 
+			SensorDataRange range) throws DataNotCollectedException
 	{
-		String sensorDelimiter = String.valueOf(p.getSensorDelimiter());
-		boolean request[]=p.getRequirement();
-		for(int i=0;i<request.length;i++)
-		{
-			if(request[i])
-			{
-				String sensorid=null;
-				try {
-					if(p.getSensorIdentifier(i)=='\0')
-						throw new DataNotCollectedException("Sensor Identifier is not defined for "+Sensor.sensorName(i)+" sensor");
-					sensorid=String.valueOf(p.getSensorIdentifier(i));
-				} catch (SensorNotDefinedException e1) {
-					e1.printStackTrace();
-				}
-				String splitter = sensorid + p.getSensorDataDelimiter();
-				String data[]= response.split(splitter);
-				boolean success=false;
-				for(int index=data.length-1;index>0;index--)		//if response contain multiple values for same sensor, try to extract the latest valid value
-				{
-					String sensorValue = data[index].split(sensorDelimiter)[0];
-					try
-					{
-						switch(i)
-						{
-							case Sensor.TEMPERATURE:
-								Temperature temp=extractTemp(sensorValue);
-								if(temp!=null)
-								{
-									sd.setTemperature(temp);
-									success=true;
-								}
-								break;
-							case Sensor.BLOODPRESSURE:
-								BloodPressure bp=extractBP(sensorValue,String.valueOf(p.getMultiValueDelimiter()));
-								if(bp!=null)
-								{
-									sd.setBloodPressure(bp);
-									success = true;
-								}
-								break;
-							case Sensor.PULSERATE:
-								PulseRate pr = extractPulseRate(sensorValue);
-								if(pr!=null)
-								{
-									sd.setPulseRate(pr);
-									success = true;
-								}
-								break;
-							case Sensor.OXIMETER:
-								Oximeter oxi = extractSPO2(sensorValue);
-								if(oxi != null)
-								{
-									sd.setOximeter(oxi);
-									success = true;
-								}
-								break;
-							case Sensor.GSR:
-								GSR gsr = extractGSR(sensorValue,String.valueOf(p.getMultiValueDelimiter()));
-								if(gsr != null)
-								{
-									sd.setGsr(gsr);
-									success = true;
-								}
-								break;
-						}
-						if(success)
-						{
-							p.setRequirement(i, false);
-							break;
-						}
-					}
-					catch(SensorNotDefinedException e)
-					{
-						e.printStackTrace();
-					}
-				}
-			}
-		}
+		//if response contain multiple values for same sensor, the latest valid value is extracted
+		DiscretePacketParser.parse(sd, response, schema, request, range);
 	}
 	
-	private static GSR extractGSR(String sensorValue, String delimiter) 
+	private static GSR extractGSR(String sensorValue, String delimiter, RangeOfValues<Float> conductanceRange, RangeOfValues<Float> resistanceRange) 
 	{
 		try
 		{
@@ -137,14 +76,7 @@ public class AALayerI {
 				Log.e("extractGSR", "valuelength>=2");
 				float conductance=Float.parseFloat(value[0]);
 				float resistance=Float.parseFloat(value[1]);
-				if(isValid(conductance,resistance, AALayerII.hardwareDataRange.getGsrConductanceRange(), AALayerII.hardwareDataRange.getGsrResistanceRange()))
-				{
-					Log.e("extractGSR", "GSR valid");
-					GSR temp = new GSR();
-					temp.setConductanceValue(conductance);
-					temp.setResistanceValue(resistance);
-					return temp;
-				}
+				return extractGSR(conductance, resistance, conductanceRange, resistanceRange);
 			}
 			Log.e("extractGSR", "valuelength<2");
 			return null;
@@ -156,19 +88,23 @@ public class AALayerI {
 		}
 	}
 
-	private static Oximeter extractSPO2(String sensorValue) 
+	private static GSR extractGSR(float conductance, float resistance, RangeOfValues<Float> conductanceRange, RangeOfValues<Float> resistanceRange) 
+	{
+		if(isValid(conductance,resistance, conductanceRange, resistanceRange))
+		{
+			GSR temp = new GSR();
+			temp.setConductanceValue(conductance);
+			temp.setResistanceValue(resistance);
+			return temp;
+		}
+		return null;
+	}
+
+	private static Oximeter extractSPO2(String sensorValue, RangeOfValues<Float> range) 
 	{
 		try
 		{
-			float value = Float.parseFloat(sensorValue);
-			if(isValid(value, AALayerII.hardwareDataRange.getOximeterRange()))
-			{
-				Oximeter temp = new Oximeter();
-				temp.setValue(value);
-				return temp;
-			}
-			else
-				return null;
+			return extractSPO2(Float.parseFloat(sensorValue), range);
 		}
 		catch(Exception e)
 		{
@@ -177,19 +113,22 @@ public class AALayerI {
 		}
 	}
 
-	private static PulseRate extractPulseRate(String sensorValue) 
+	private static Oximeter extractSPO2(float value, RangeOfValues<Float> range) 
+	{
+		if(isValid(value, range))
+		{
+			Oximeter temp = new Oximeter();
+			temp.setValue(value);
+			return temp;
+		}
+		return null;
+	}
+
+	private static PulseRate extractPulseRate(String sensorValue, RangeOfValues<Integer> range) 
 	{
 		try
 		{
-			int value = Integer.parseInt(sensorValue);
-			if(isValid(value, AALayerII.hardwareDataRange.getPulseRateRange()))
-			{
-				PulseRate temp = new PulseRate();
-				temp.setValue(value);
-				return temp;
-			}
-			else
-				return null;
+			return extractPulseRate(Integer.parseInt(sensorValue), range);
 		}
 		catch(Exception e)
 		{
@@ -198,23 +137,24 @@ public class AALayerI {
 		}
 	}
 
-	private static BloodPressure extractBP(String sensorValue, String delimiter) 
+	private static PulseRate extractPulseRate(int value, RangeOfValues<Integer> range) 
+	{
+		if(isValid(value, range))
+		{
+			PulseRate temp = new PulseRate();
+			temp.setValue(value);
+			return temp;
+		}
+		return null;
+	}
+
+	private static BloodPressure extractBP(String sensorValue, String delimiter, RangeOfValues<Integer> sysrange, RangeOfValues<Integer> dirange) 
 	{
 		try
 		{
 			String value[]=sensorValue.split(delimiter);
 			if(value.length>=2)
-			{
-				int sysvalue=Integer.parseInt(value[0]);
-				int divalue=Integer.parseInt(value[1]);
-				if(isValid(sysvalue,divalue, AALayerII.hardwareDataRange.getSystolicRange(), AALayerII.hardwareDataRange.getDiastolicRange()))
-				{
-					BloodPressure bp = new BloodPressure();
-					bp.setSystolicValue(sysvalue);
-					bp.setDiastolicValue(divalue);
-					return bp;
-				}
-			}
+				return extractBP(Integer.parseInt(value[0]), Integer.parseInt(value[1]), sysrange, dirange);
 			return null;
 		}
 		catch(Exception e)
@@ -224,24 +164,24 @@ public class AALayerI {
 		}
 	}
 
-	private static Temperature extractTemp(String sensorValue) 
+	private static BloodPressure extractBP(int sysvalue, int divalue, RangeOfValues<Integer> sysrange, RangeOfValues<Integer> dirange) 
+	{
+		if(isValid(sysvalue,divalue, sysrange, dirange))
+		{
+			BloodPressure bp = new BloodPressure();
+			bp.setSystolicValue(sysvalue);
+			bp.setDiastolicValue(divalue);
+			return bp;
+		}
+		return null;
+	}
+
+	private static Temperature extractTemp(String sensorValue, RangeOfValues<Float> range) 
 	{
 		Log.e("extractTemp : ","SensorValue is "+sensorValue);
 		try
 		{
-			float value = Float.parseFloat(sensorValue);
-			if(isValid(value, AALayerII.hardwareDataRange.getTemperatureRange()))
-			{
-				Temperature temp = new Temperature();
-				temp.setValue(value);
-				Log.e("extractTemp: ","Valid reading: "+value);
-				return temp;
-			}
-			else
-			{
-				Log.e("extractTemp: ","inValid reading: "+value);
-				return null;
-			}
+			return extractTemp(Float.parseFloat(sensorValue), range);
 		}
 		catch(Exception e)
 		{
@@ -251,6 +191,18 @@ public class AALayerI {
 		}
 	}
 	
+	private static Temperature extractTemp(float value, RangeOfValues<Float> range) 
+	{
+		if(isValid(value, range))
+		{
+			Temperature temp = new Temperature();
+			temp.setValue(value);
+			return temp;
+		}
+		Log.e("extractTemp: ","inValid reading: "+value);
+		return null;
+	}
+	
 	private static boolean isValid(float value, RangeOfValues<Float> r)
 	{
 		if(value<=r.getUpperLimit() && value>=r.getLowerLimit())
@@ -281,37 +233,147 @@ public class AALayerI {
 		return false;
 	}
 	
-	static SensorData getDiscrete() throws NoDeviceConnectedException, DataNotCollectedException
+	static SensorData getDiscrete(DeviceSession session, DiscretePacketInfo pi, SensorDataRange range) throws NoDeviceConnectedException, DataNotCollectedException
+	{
+		return getDiscrete(session, pi, range, (Deadline) null);
+	}
+	
+	/*
+	 * Makes the attempts the retry policy of pi chooses, but none which cannot be answered by the deadline:
+	 * the previous attempt's round trip is taken as the time the next one needs. An attempt may wait for less
+	 * than the discrete timeout of pi, which is still the time a late response is recognised for.
+	 */
+	static SensorData getDiscrete(DeviceSession session, DiscretePacketInfo pi, SensorDataRange range, Deadline deadline) throws NoDeviceConnectedException, DataNotCollectedException
 	{
 		SensorData sd=new SensorData();
-		byte requestByte;
-		DiscretePacketInfo pi=AALayerII.discretePacketInfo;
-		remainingAttempts = pi.getAttempts();
-		while(remainingAttempts>0)
+		PacketSchema schema=pi.getSchema();
+		session.setPacketSchema(schema);
+		boolean request[]=pi.getRequirement().clone();	//cleared as values are collected
+		RetryPolicy.Attempts attempts=pi.getRetryPolicy().begin(pi);
+		long roundTrip = 0;
+		while(deadline==null || deadline.remaining()>roundTrip)
 		{
-			requestByte = generateRequestByte(pi.getRequirement());
-			if(requestByte==0)
+			int sensors = attempts.next(generateRequestByte(request));
+			if(sensors==0)
 				break;
-			String discreteResponse = DeviceLayerClass.getDiscretePacket(requestByte,pi.getDiscreteTimeout());
-			populateDiscreteResponse(sd, discreteResponse, pi);
-			remainingAttempts--;
+			long sent = System.currentTimeMillis();
+			String discreteResponse = session.getDiscretePacket((byte) sensors,attempts.getTimeout(),pi.getDiscreteTimeout(),deadline,late(attempts, sensors));
+			long answered = -1;
+			if(discreteResponse.length()>0)
+				roundTrip = answered = System.currentTimeMillis() - sent;
+			populateDiscreteResponse(sd, discreteResponse, schema, request, range);
+			attempts.done(sensors, sensors & ~generateRequestByte(request), answered);
 		}
 		return sd;
 	}
 	
-	private static byte generateRequestByte(int sensorNum) throws DataNotCollectedException
+	/*
+	 * Batch form of getDiscrete(): the request byte carries the batch bit, which the hardware answers with every
+	 * reading of the requested sensors it buffered since the last batch request, oldest first. All valid readings
+	 * are kept. Attempts are made for sensors without any valid reading, as the retry policy of pi chooses. Hardware without
+	 * batch support ignores the bit and sends one reading per sensor.
+	 */
+	static SensorSeries[] getDiscreteBatch(DeviceSession session, DiscretePacketInfo pi, SensorDataRange range, Deadline deadline) 
+			throws NoDeviceConnectedException, DataNotCollectedException
+	{
+		SensorSeries series[] = new SensorSeries[Sensor.NUM_DISCRETE];
+		boolean request[] = pi.getRequirement().clone();
+		for(int i=0;i<Sensor.NUM_DISCRETE;i++)
+			if(request[i])
+				series[i] = new SensorSeries(i, PacketSchema.getArity(i), BATCH_CAPACITY);
+		PacketSchema schema=pi.getSchema();
+		session.setPacketSchema(schema);
+		RetryPolicy.Attempts attempts=pi.getRetryPolicy().begin(pi);
+		long roundTrip = 0;
+		while(deadline==null || deadline.remaining()>roundTrip)
+		{
+			int sensors = attempts.next(generateRequestByte(request));
+			if(sensors==0)
+				break;
+			long sent = System.currentTimeMillis();
+			String response = session.getDiscretePacket((byte) (sensors | BATCH),attempts.getTimeout(),pi.getDiscreteTimeout(),deadline,late(attempts, sensors));
+			long answered = -1;
+			if(response.length()>0)
+				roundTrip = answered = System.currentTimeMillis() - sent;
+			DiscretePacketParser.parseSeries(series, response, schema, request, range);
+			attempts.done(sensors, sensors & ~generateRequestByte(request), answered);
+		}
+		return series;
+	}
+	
+	/**
+	 * Receives the outcome of {@link AALayerI#getDiscrete(DeviceSession, DiscretePacketInfo, SensorDataRange, Deadline, DiscreteListener)}
+	 */
+	interface DiscreteListener {
+		void onDiscrete(SensorData sd);
+		void onError(Exception e);
+	}
+	
+	/*
+	 * Asynchronous form of getDiscrete(): every further attempt is requested from the listener of the previous
+	 * response, so no thread waits while the attempts are in progress.
+	 */
+	static void getDiscrete(DeviceSession session, DiscretePacketInfo pi, SensorDataRange range, Deadline deadline, DiscreteListener listener) 
+			throws NoDeviceConnectedException, DataNotCollectedException
+	{
+		PacketSchema schema=pi.getSchema();
+		session.setPacketSchema(schema);
+		requestDiscreteAttempt(session, new SensorData(), pi, pi.getRequirement().clone(), schema, range, pi.getRetryPolicy().begin(pi), 
+				deadline, 0, listener);
+	}
+	
+	private static void requestDiscreteAttempt(final DeviceSession session, final SensorData sd, final DiscretePacketInfo pi, 
+			final boolean request[], final PacketSchema schema, final SensorDataRange range, final RetryPolicy.Attempts attempts, final Deadline deadline, 
+			final long roundTrip, final DiscreteListener listener) throws NoDeviceConnectedException, DataNotCollectedException
+	{
+		final int sensors = (deadline!=null && deadline.remaining()<=roundTrip) ? 0 : attempts.next(generateRequestByte(request));
+		if(sensors==0)
+		{
+			listener.onDiscrete(sd);
+			return;
+		}
+		final long sent = System.currentTimeMillis();
+		session.getDiscretePacket((byte) sensors, attempts.getTimeout(), pi.getDiscreteTimeout(), new ResponseListener() {
+			public void onResponse(String packet) {
+				try {
+					populateDiscreteResponse(sd, packet, schema, request, range);
+					long answered = (packet.length()>0) ? System.currentTimeMillis() - sent : -1;
+					attempts.done(sensors, sensors & ~generateRequestByte(request), answered);
+					requestDiscreteAttempt(session, sd, pi, request, schema, range, attempts, deadline, (answered>=0) ? answered : roundTrip, listener);
+				} catch (NoDeviceConnectedException e) {
+					listener.onError(e);
+				} catch (DataNotCollectedException e) {
+					listener.onError(e);
+				}
+			}
+		}, deadline, late(attempts, sensors));
+	}
+	
+	/*
+	 * Reports the round trip of a response arriving after its attempt timed out to the retry policy
+	 */
+	private static LateResponseListener late(final RetryPolicy.Attempts attempts, final int sensors)
+	{
+		return new LateResponseListener() {
+			public void onLateResponse(long roundTrip) {
+				attempts.late(sensors, roundTrip);
+			}
+		};
+	}
+	
+	private static byte generateRequestByte(int sensorNum)
 	{
 		byte request=0;
 		request = (byte) (request | (1 << sensorNum));	//set bit i in request byte	for (i)th Sensor			
 		return request;
 	}
 	
-	private static SensorContinuous<Integer> getIntContinuous(ContinuousStreamInfo c,RangeOfValues<Integer> range) throws NoDeviceConnectedException, DataNotCollectedException{
-		SensorContinuous<Integer> sensor;
+	private static SensorContinuousInt getIntContinuous(DeviceSession session, ContinuousStreamInfo c,RangeOfValues<Integer> range) throws NoDeviceConnectedException, DataNotCollectedException{
 		String response[];
-		byte start=generateRequestByte(c.getSensorNum());
-		byte stop=c.getStop();
-		String stopAck=String.valueOf(c.getStopAck());
+		PacketSchema schema=c.getSchema();
+		byte start=schema.getStartByte();
+		byte stop=schema.getStopByte();
+		String stopAck=schema.getStopAck();
 		int length=c.getDataLength();
 		int timeout=c.getTimeout();
 		if(length==0) {
@@ -320,37 +382,25 @@ public class AALayerI {
 		if(length==0)
 			throw new DataNotCollectedException("Length or SamplingRate & Duration Not specified correctly in ContinuousStreamInfo");
 		
-		Integer[] data=new Integer[length];
+		int data[]=new int[length];
 		int dataIndex=0;
-		response=DeviceLayerClass.getContinuousPacket(start, stop, stopAck, length, timeout);		
+		response=session.getContinuousPacket(start, stop, stopAck, length, timeout);		
 		for(int i=0;i<response.length;i++)
 		{
-			try
-			{
-				int val=Integer.parseInt(response[i]);
-				if(isValid(val,range))
-				{
-					data[dataIndex]=val;
-					dataIndex++;
-				}
-			}
-			catch(NumberFormatException n)
-			{
-				continue;
-			}
+			int val=DiscretePacketParser.parseInt(response[i], 0, response[i].length());
+			if(val!=Integer.MIN_VALUE && isValid(val,range))
+				data[dataIndex++]=val;
 		}
-		sensor=new SensorContinuous<Integer>(Integer.class,dataIndex);
-		sensor.setValueArray(data);
-		return sensor;
+		//samples are handed over without copying or boxing
+		return new SensorContinuousInt(data, dataIndex);
 	}
 	
-	private static SensorContinuous<Float> getFloatContinuous(ContinuousStreamInfo c,RangeOfValues<Float> range) throws NoDeviceConnectedException, DataNotCollectedException
+	private static SensorContinuousFloat getFloatContinuous(DeviceSession session, ContinuousStreamInfo c,RangeOfValues<Float> range) throws NoDeviceConnectedException, DataNotCollectedException
 	{
-		SensorContinuous<Float> sensor;
-		String response[];
-		byte start=generateRequestByte(c.getSensorNum());
-		byte stop=c.getStop();
-		String stopAck=String.valueOf(c.getStopAck());
+		PacketSchema schema=c.getSchema();
+		byte start=schema.getStartByte();
+		byte stop=schema.getStopByte();
+		String stopAck=schema.getStopAck();
 		int length=c.getDataLength();
 		int timeout=c.getTimeout();
 		if(length==0) {
@@ -359,130 +409,305 @@ public class AALayerI {
 		if(length==0)
 			throw new DataNotCollectedException("Length or SamplingRate & Duration Not specified correctly in ContinuousStreamInfo");
 		
-		Float data[]=new Float[length];
+		float data[]=new float[length];
 		int dataIndex=0;
-		response=DeviceLayerClass.getContinuousPacket(start, stop, stopAck, length, timeout);		
-		for(int i=0;i<response.length;i++)
+		//the reader thread parses and validates the stream into the ring while this thread drains it; the ring holds
+		//all samples asked for, so none are dropped when they arrive faster than this thread wakes up
+		SampleRing ring = new SampleRing(length);
+		ContinuousStream stream = session.openContinuousStream(start, stop, stopAck, timeout, 
+				new ChunkingStreamListener(STREAM_CHUNK, range, ring));
+		if(stream!=null)
 		{
-			try
-			{
-				float val=Float.parseFloat(response[i]);
-				if(isValid(val,range))
+			long deadline = System.currentTimeMillis() + timeout;
+			try {
+				while(dataIndex<length)
 				{
-					data[dataIndex]=val;
-					dataIndex++;
+					long remaining = deadline - System.currentTimeMillis();
+					if(remaining<=0)
+						break;
+					int n = ring.read(data, dataIndex, length-dataIndex, remaining, TimeUnit.MILLISECONDS);
+					if(n<0)
+						break;		//stream ended by the hardware or link lost
+					dataIndex += n;
 				}
-			}
-			catch(NumberFormatException n)
-			{
-				continue;
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+				Thread.currentThread().interrupt();
+			} finally {
+				stream.stop();
 			}
 		}
-		
-		sensor=new SensorContinuous<Float>(Float.class,dataIndex);
-		sensor.setValueArray(data);
-		return sensor;
+		//samples are handed over without copying or boxing
+		return new SensorContinuousFloat(data, dataIndex);
 	}
 
 	
+	/*
+	 * Starts the continuous stream specified by c and hands its valid samples to the sink in chunks as they arrive.
+	 * The stream runs until the caller stops it or the hardware sends the stop ack.
+	 */
+	static ContinuousStream streamFloatContinuous(DeviceSession session, ContinuousStreamInfo c, RangeOfValues<Float> range, int chunkSize, SampleSink sink) 
+			throws NoDeviceConnectedException, DataNotCollectedException
+	{
+		if(chunkSize<=0)
+			throw new DataNotCollectedException("Chunk size must be positive");
+		PacketSchema schema=c.getSchema();
+		ContinuousStream stream = session.openContinuousStream(schema.getStartByte(), schema.getStopByte(), schema.getStopAck(), c.getTimeout(), 
+				new ChunkingStreamListener(chunkSize, range, sink));
+		if(stream==null)
+			throw new DataNotCollectedException(Sensor.sensorName(c.getSensorNum())+" stream could not be started");
+		return stream;
+	}
+	
 	//methods for geting data from individual sensors
 	//static Temperature getTemperature(String requestTemp, String sensorId, String delimiter, RangeOfValues<Float> range, int timeout) throws NoDeviceConnectedException
-	static Temperature getTemperature(String sensorId, String delimiter, int timeout) throws NoDeviceConnectedException
+	static Temperature getTemperature(DeviceSession session, String sensorId, String delimiter, RangeOfValues<Float> range, int timeout) throws NoDeviceConnectedException
+	{
+		String discreteResponse = session.getDiscretePacket(generateRequestByte(Sensor.TEMPERATURE),timeout);
+		return parseTemperature(discreteResponse, sensorId, delimiter, range);
+	}
+	
+	static Temperature parseTemperature(String discreteResponse, String sensorId, String delimiter, RangeOfValues<Float> range)
 	{
-		Byte request=0;
-		request = (byte) (request | 1 << Sensor.TEMPERATURE);
+		if(BinaryFrame.isBinary(discreteResponse))
+		{
+			float value[] = DiscretePacketParser.binaryValues(discreteResponse, Sensor.TEMPERATURE);
+			return (value!=null) ? extractTemp(value[0], range) : null;
+		}
 		//packet design: SensorId|delimiter|value
-		String discreteResponse = DeviceLayerClass.getDiscretePacket(request,timeout);
 		Log.e("Discrete Response Temp : ", discreteResponse);
 		String splitter = sensorId + delimiter;
 		String value[] = discreteResponse.split(splitter);
 		if(value.length>1)
 		{
 			Log.e("getTemp : ", "inside if");
-			return extractTemp(value[1]);
+			return extractTemp(value[1], range);
 		}
 		return null;
 	}
 	
-	static BloodPressure getBloodPressure(String sensorId, String dataDelimiter, String multiValueDelimiter, int timeout) throws NoDeviceConnectedException
+	static BloodPressure getBloodPressure(DeviceSession session, String sensorId, String dataDelimiter, String multiValueDelimiter, 
+			RangeOfValues<Integer> sysrange, RangeOfValues<Integer> dirange, int timeout) throws NoDeviceConnectedException
 	{
-		Byte request=0;
-		request = (byte) (request | 1 << Sensor.BLOODPRESSURE);
+		String discreteResponse = session.getDiscretePacket(generateRequestByte(Sensor.BLOODPRESSURE),timeout);
+		return parseBloodPressure(discreteResponse, sensorId, dataDelimiter, multiValueDelimiter, sysrange, dirange);
+	}
+	
+	static BloodPressure parseBloodPressure(String discreteResponse, String sensorId, String dataDelimiter, String multiValueDelimiter, 
+			RangeOfValues<Integer> sysrange, RangeOfValues<Integer> dirange)
+	{
+		if(BinaryFrame.isBinary(discreteResponse))
+		{
+			float value[] = DiscretePacketParser.binaryValues(discreteResponse, Sensor.BLOODPRESSURE);
+			return (value!=null) ? extractBP(Math.round(value[0]), Math.round(value[1]), sysrange, dirange) : null;
+		}
 		//packet design: SensorId|dataDelimiter|value1|multiValueDelimiter|value2
-		String discreteResponse = DeviceLayerClass.getDiscretePacket(request,timeout);
 		String splitter = sensorId + dataDelimiter;
 		String value[] = discreteResponse.split(splitter);
 		if(value.length>1)
 		{
-			return extractBP(value[1], multiValueDelimiter);
+			return extractBP(value[1], multiValueDelimiter, sysrange, dirange);
 		}
 		return null;
 	}
 	
-	static PulseRate getPulseRate(String sensorId, String delimiter, int timeout) throws NoDeviceConnectedException
+	static PulseRate getPulseRate(DeviceSession session, String sensorId, String delimiter, RangeOfValues<Integer> range, int timeout) throws NoDeviceConnectedException
+	{
+		String discreteResponse = session.getDiscretePacket(generateRequestByte(Sensor.PULSERATE),timeout);
+		return parsePulseRate(discreteResponse, sensorId, delimiter, range);
+	}
+	
+	static PulseRate parsePulseRate(String discreteResponse, String sensorId, String delimiter, RangeOfValues<Integer> range)
 	{
-		Byte request=0;
-		request = (byte) (request | 1 << Sensor.PULSERATE);
+		if(BinaryFrame.isBinary(discreteResponse))
+		{
+			float value[] = DiscretePacketParser.binaryValues(discreteResponse, Sensor.PULSERATE);
+			return (value!=null) ? extractPulseRate(Math.round(value[0]), range) : null;
+		}
 		//packet design: SensorId|delimiter|value
-		String discreteResponse = DeviceLayerClass.getDiscretePacket(request,timeout);
 		String splitter = sensorId + delimiter;
 		String value[] = discreteResponse.split(splitter);
 		if(value.length>1)
-			return extractPulseRate(value[1]);
+			return extractPulseRate(value[1], range);
 		return null;
 	}
 	
-	static Oximeter getOximeter(String sensorId, String delimiter, int timeout) throws NoDeviceConnectedException
+	static Oximeter getOximeter(DeviceSession session, String sensorId, String delimiter, RangeOfValues<Float> range, int timeout) throws NoDeviceConnectedException
+	{
+		String discreteResponse = session.getDiscretePacket(generateRequestByte(Sensor.OXIMETER),timeout);
+		return parseOximeter(discreteResponse, sensorId, delimiter, range);
+	}
+	
+	static Oximeter parseOximeter(String discreteResponse, String sensorId, String delimiter, RangeOfValues<Float> range)
 	{
-		Byte request=0;
-		request = (byte) (request | 1 << Sensor.OXIMETER);
+		if(BinaryFrame.isBinary(discreteResponse))
+		{
+			float value[] = DiscretePacketParser.binaryValues(discreteResponse, Sensor.OXIMETER);
+			return (value!=null) ? extractSPO2(value[0], range) : null;
+		}
 		//packet design: SensorId|delimiter|value
-		String discreteResponse = DeviceLayerClass.getDiscretePacket(request,timeout);
 		String splitter = sensorId + delimiter;
 		String value[] = discreteResponse.split(splitter);
 		if(value.length>1)
-			return extractSPO2(value[1]);
+			return extractSPO2(value[1], range);
 		return null;
 	}
 	
-	static GSR getGSR( String sensorId, String dataDelimiter, String multiValueDelimiter, int timeout) throws NoDeviceConnectedException
+	static GSR getGSR(DeviceSession session, String sensorId, String dataDelimiter, String multiValueDelimiter, 
+			RangeOfValues<Float> conductanceRange, RangeOfValues<Float> resistanceRange, int timeout) throws NoDeviceConnectedException
+	{
+		String discreteResponse = session.getDiscretePacket(generateRequestByte(Sensor.GSR),timeout);
+		return parseGSR(discreteResponse, sensorId, dataDelimiter, multiValueDelimiter, conductanceRange, resistanceRange);
+	}
+	
+	static GSR parseGSR(String discreteResponse, String sensorId, String dataDelimiter, String multiValueDelimiter, 
+			RangeOfValues<Float> conductanceRange, RangeOfValues<Float> resistanceRange)
 	{
-		Byte request=0;
-		request = (byte) (request | 1 << Sensor.GSR);
+		if(BinaryFrame.isBinary(discreteResponse))
+		{
+			float value[] = DiscretePacketParser.binaryValues(discreteResponse, Sensor.GSR);
+			return (value!=null) ? extractGSR(value[0], value[1], conductanceRange, resistanceRange) : null;
+		}
 		//packet design: SensorId|dataDelimiter|value1|multiValueDelimiter|value2
-		String discreteResponse = DeviceLayerClass.getDiscretePacket(request,timeout);
 		String splitter = sensorId + dataDelimiter;
 		Log.e("getGSR", "response: "+discreteResponse+" splitter= "+splitter);
 		String value[] = discreteResponse.split(splitter);
 		if(value.length>1)
 		{
 			Log.e("getGSR", "value[1] = "+value[1]);
-			return extractGSR(value[1], multiValueDelimiter);
+			return extractGSR(value[1], multiValueDelimiter, conductanceRange, resistanceRange);
 		}
 		Log.e("getGSR", "value.length<=1");
 		return null;
 	}
 	
-	static ECG getECG() throws NoDeviceConnectedException, DataNotCollectedException
+	/*
+	 * Single sensor requests unpacked with the compiled packet format: the latest valid value in the response is
+	 * returned, as getDiscrete() does
+	 */
+	static Temperature getTemperature(DeviceSession session, PacketSchema schema, RangeOfValues<Float> range, int timeout) throws NoDeviceConnectedException
 	{
-		ContinuousStreamInfo c=AALayerII.continuousStreamInfo;
-		SensorContinuous<Float> response = getFloatContinuous(c, AALayerII.hardwareDataRange.getEcgRange());
-		if(response == null)
-			return null;
-		ECG ecg = new ECG(response);
-		return ecg;
+		return parseTemperature(RequestCoalescer.get(session).request(Sensor.TEMPERATURE, timeout), schema, range);
+	}
+	
+	static Temperature parseTemperature(String discreteResponse, PacketSchema schema, RangeOfValues<Float> range)
+	{
+		float value[] = new float[2];
+		for(int j=discreteResponse.length();(j=DiscretePacketParser.previousValue(discreteResponse, schema, Sensor.TEMPERATURE, j, value))>=0;)
+		{
+			Temperature temp = extractTemp(value[0], range);
+			if(temp!=null)
+				return temp;
+		}
+		return null;
+	}
+	
+	static BloodPressure getBloodPressure(DeviceSession session, PacketSchema schema, RangeOfValues<Integer> sysrange, 
+			RangeOfValues<Integer> dirange, int timeout) throws NoDeviceConnectedException
+	{
+		return parseBloodPressure(RequestCoalescer.get(session).request(Sensor.BLOODPRESSURE, timeout), schema, sysrange, dirange);
+	}
+	
+	static BloodPressure parseBloodPressure(String discreteResponse, PacketSchema schema, RangeOfValues<Integer> sysrange, 
+			RangeOfValues<Integer> dirange)
+	{
+		float value[] = new float[2];
+		for(int j=discreteResponse.length();(j=DiscretePacketParser.previousValue(discreteResponse, schema, Sensor.BLOODPRESSURE, j, value))>=0;)
+		{
+			BloodPressure bp = extractBP(Math.round(value[0]), Math.round(value[1]), sysrange, dirange);
+			if(bp!=null)
+				return bp;
+		}
+		return null;
+	}
+	
+	static PulseRate getPulseRate(DeviceSession session, PacketSchema schema, RangeOfValues<Integer> range, int timeout) throws NoDeviceConnectedException
+	{
+		return parsePulseRate(RequestCoalescer.get(session).request(Sensor.PULSERATE, timeout), schema, range);
+	}
+	
+	static PulseRate parsePulseRate(String discreteResponse, PacketSchema schema, RangeOfValues<Integer> range)
+	{
+		float value[] = new float[2];
+		for(int j=discreteResponse.length();(j=DiscretePacketParser.previousValue(discreteResponse, schema, Sensor.PULSERATE, j, value))>=0;)
+		{
+			PulseRate pr = extractPulseRate(Math.round(value[0]), range);
+			if(pr!=null)
+				return pr;
+		}
+		return null;
+	}
+	
+	static Oximeter getOximeter(DeviceSession session, PacketSchema schema, RangeOfValues<Float> range, int timeout) throws NoDeviceConnectedException
+	{
+		return parseOximeter(RequestCoalescer.get(session).request(Sensor.OXIMETER, timeout), schema, range);
+	}
+	
+	static Oximeter parseOximeter(String discreteResponse, PacketSchema schema, RangeOfValues<Float> range)
+	{
+		float value[] = new float[2];
+		for(int j=discreteResponse.length();(j=DiscretePacketParser.previousValue(discreteResponse, schema, Sensor.OXIMETER, j, value))>=0;)
+		{
+			Oximeter oxi = extractSPO2(value[0], range);
+			if(oxi!=null)
+				return oxi;
+		}
+		return null;
+	}
+	
+	static GSR getGSR(DeviceSession session, PacketSchema schema, RangeOfValues<Float> conductanceRange, 
+			RangeOfValues<Float> resistanceRange, int timeout) throws NoDeviceConnectedException
+	{
+		return parseGSR(RequestCoalescer.get(session).request(Sensor.GSR, timeout), schema, conductanceRange, resistanceRange);
+	}
+	
+	static GSR parseGSR(String discreteResponse, PacketSchema schema, RangeOfValues<Float> conductanceRange, 
+			RangeOfValues<Float> resistanceRange)
+	{
+		float value[] = new float[2];
+		for(int j=discreteResponse.length();(j=DiscretePacketParser.previousValue(discreteResponse, schema, Sensor.GSR, j, value))>=0;)
+		{
+			GSR gsr = extractGSR(value[0], value[1], conductanceRange, resistanceRange);
+			if(gsr!=null)
+				return gsr;
+		}
+		return null;
+	}
+	
+	/**
+	 * Sends the request for a single discrete sensor without waiting for the response.
+	 * The response packet is handed to the listener, to be unpacked with the matching parse method.
+	 */
+	static void requestDiscrete(DeviceSession session, int sensorNum, int timeout, ResponseListener listener, Deadline deadline) throws NoDeviceConnectedException
+	{
+		session.getDiscretePacket(generateRequestByte(sensorNum), timeout, listener, deadline);
+	}
+	
+	/**
+	 * Sends the request for a single discrete sensor merged with the requests for other sensors made on the session
+	 * at about the same time, see {@link RequestCoalescer}. The response packet may hold these sensors as well.
+	 */
+	static void requestCoalesced(DeviceSession session, int sensorNum, int timeout, ResponseListener listener, Deadline deadline) throws NoDeviceConnectedException
+	{
+		RequestCoalescer.get(session).request(sensorNum, timeout, listener, deadline);
+	}
+	
+	static ECG getECG(DeviceSession session, ContinuousStreamInfo c, RangeOfValues<Float> range) throws NoDeviceConnectedException, DataNotCollectedException
+	{
+		SensorContinuousFloat response = getFloatContinuous(session, c, range);
+		return new ECG(response.getSamples(), response.getLength());
 	}
 	
-	static void getMetadata( int sensorNum, HashMap<String, String> metadata, String sensorId, String dataDelimiter, String multiValueDelimiter, int timeout) throws NoDeviceConnectedException
+	static void getMetadata(DeviceSession session, int sensorNum, HashMap<String, String> metadata, String sensorId, String dataDelimiter, String multiValueDelimiter, int timeout) throws NoDeviceConnectedException
 	{
-		remainingAttempts = 2;
+		int remainingAttempts = 2;
 		if(remainingAttempts > 0)
 		{
 			Byte request=0;
 			request = (byte) (request | 1 << 7);
 			request = (byte) (request | 1 << sensorNum);
 			//packet design: SensorId|dataDelimiter|value1|multiValueDelimiter|value2|...|multiValueDelimiter|valuen
-			String metadataResponse = DeviceLayerClass.getDiscretePacket(request,timeout);
+			String metadataResponse = session.getDiscretePacket(request,timeout);
 			String splitter = sensorId + dataDelimiter;
 			Log.e("getMetadata", "response: "+metadataResponse+" splitter= "+splitter);
 			String value[] = metadataResponse.split(splitter);
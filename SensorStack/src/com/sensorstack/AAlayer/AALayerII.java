@@ -1,10 +1,23 @@
 package com.sensorstack.AAlayer;
 
 import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.sensorstack.ContinuousStreamInfo;
 import com.sensorstack.DiscretePacketInfo;
+import com.sensorstack.PacketSchema;
+import com.sensorstack.devicelayer.ContinuousStream;
+import com.sensorstack.devicelayer.Deadline;
+import com.sensorstack.devicelayer.DeviceLayerClass;
+import com.sensorstack.devicelayer.DeviceSession;
 import com.sensorstack.devicelayer.NoDeviceConnectedException;
+import com.sensorstack.devicelayer.ResponseListener;
 import com.sensorstack.sensors.BloodPressure;
 import com.sensorstack.sensors.DataNotCollectedException;
 import com.sensorstack.sensors.ECG;
@@ -15,6 +28,7 @@ import com.sensorstack.sensors.RangeOfValues;
 import com.sensorstack.sensors.Sensor;
 import com.sensorstack.sensors.SensorData;
 import com.sensorstack.sensors.SensorDataRange;
+import com.sensorstack.sensors.SensorSeries;
 import com.sensorstack.sensors.SensorNotDefinedException;
 import com.sensorstack.sensors.Temperature;
 
@@ -23,6 +37,10 @@ import com.sensorstack.sensors.Temperature;
  * from the sensors (i.e. without any metadata). 
  * Note - If you need metadata along with medical data, you must invoke the provenance layer class methods instead,
  * see {@link com.sensorstack.provenancelayer.ProvenanceLayer}
+ * The methods without a session parameter act on the default session of {@link DeviceLayerClass} using the current
+ * DiscretePacketInfo, ContinuousStreamInfo and hardware range. To poll several sensor hardware units concurrently,
+ * open a session for each unit with {@link com.sensorstack.devicelayer.DeviceRegistry} and use the methods taking
+ * the session; these do not change the current settings, so each unit can have its own.
  */
 public class AALayerII {
 	/**
@@ -85,6 +103,7 @@ public class AALayerII {
 			);
 	static DiscretePacketInfo discretePacketInfo = new DiscretePacketInfo();
 	static ContinuousStreamInfo continuousStreamInfo = new ContinuousStreamInfo();
+	private static final Map<DeviceSession, ExecutorService> streamExecutors = new WeakHashMap<DeviceSession, ExecutorService>();
 	
 	/**
 	 * Hardware Range defines the valid range for the sensor hardware. This object is initialised 
@@ -158,6 +177,52 @@ public class AALayerII {
 		return continuousStreamInfo;
 	}
 	
+	/**
+	 * Sets the window in which the reads of single discrete sensors on the default session, e.g. getPulseRate() and
+	 * getOximeter() called by two threads, are merged into one request to the hardware.
+	 * See {@link #setCoalescingWindow(DeviceSession, int)}
+	 * @param window Window in milliseconds
+	 */
+	public static void setCoalescingWindow(int window)
+	{
+		setCoalescingWindow(DeviceLayerClass.getDefaultSession(), window);
+	}
+	
+	/**
+	 * Sets the window in which the reads of single discrete sensors on a session are merged into one request to the
+	 * hardware. Reads with the same timeout made within the window share one request and its response, which is
+	 * unpacked for each read, so concurrent reads take one round trip instead of one each, while a read made alone
+	 * is delayed by the window. Cancelling a merged read gives it up at once; the shared request is given up once
+	 * all its reads are. Initialised to 0, sending every read on its own.
+	 * @param session connection to the sensor hardware
+	 * @param window Window in milliseconds
+	 */
+	public static void setCoalescingWindow(DeviceSession session, int window)
+	{
+		RequestCoalescer.get(session).setWindow(window);
+	}
+	
+	/**
+	 * Returns the window in which reads of single discrete sensors on the default session are merged,
+	 * see {@link #setCoalescingWindow(DeviceSession, int)}
+	 * @return Window in milliseconds
+	 */
+	public static int getCoalescingWindow()
+	{
+		return getCoalescingWindow(DeviceLayerClass.getDefaultSession());
+	}
+	
+	/**
+	 * Returns the window in which reads of single discrete sensors on a session are merged,
+	 * see {@link #setCoalescingWindow(DeviceSession, int)}
+	 * @param session connection to the sensor hardware
+	 * @return Window in milliseconds
+	 */
+	public static int getCoalescingWindow(DeviceSession session)
+	{
+		return RequestCoalescer.get(session).getWindow();
+	}
+	
 	/**
 	 * Fetches a set of discrete sensor values as specified in the discretePacketInfo object.
 	 * Uses the current hardware range values for range validation.
@@ -212,48 +277,35 @@ public class AALayerII {
 	 */
 	public static SensorData getDiscrete() throws NoDeviceConnectedException, DataNotCollectedException
 	{
-		SensorData sd = AALayerI.getDiscrete();
-		if(sd==null)
-			return null;
-		
-		boolean reqt[]=discretePacketInfo.getRequirement();
-		if(reqt[Sensor.TEMPERATURE])
-		{ 
-			Temperature temp=sd.getTemperature();
-			if(temp!=null&&!STANDARD_TEMPERATURE_RANGE.equals(hardwareDataRange.getTemperatureRange()))				
-				temp.setValue(mapValue(temp.getValue(), hardwareDataRange.getTemperatureRange(), STANDARD_TEMPERATURE_RANGE));
-		}
-		if(reqt[Sensor.BLOODPRESSURE])
-		{ 
-			BloodPressure bp = sd.getBloodPressure();
-			if(bp!=null&&!STANDARD_DIASTOLIC_RANGE.equals(hardwareDataRange.getDiastolicRange()))
-				bp.setDiastolicValue(mapValue(bp.getDiastolicValue(), hardwareDataRange.getDiastolicRange(), STANDARD_DIASTOLIC_RANGE));
-			if(bp!=null&&!STANDARD_SYSTOLIC_RANGE.equals(hardwareDataRange.getSystolicRange()))
-				bp.setSystolicValue(mapValue(bp.getSystolicValue(), hardwareDataRange.getSystolicRange(), STANDARD_SYSTOLIC_RANGE));
-		}
-		if(reqt[Sensor.PULSERATE])
-		{
-			PulseRate pr = sd.getPulseRate();
-			if(pr!=null&&!STANDARD_PULSERATE_RANGE.equals(hardwareDataRange.getPulseRateRange()))
-				pr.setValue(mapValue(pr.getValue(), hardwareDataRange.getPulseRateRange(), STANDARD_PULSERATE_RANGE));
-			
-		}
-		if(reqt[Sensor.OXIMETER])
-		{
-			Oximeter oximeter = sd.getOximeter();
-			if(oximeter!=null&&!STANDARD_OXIMETER_RANGE.equals(hardwareDataRange.getOximeterRange()))
-				oximeter.setValue(mapValue(oximeter.getValue(), hardwareDataRange.getOximeterRange(), STANDARD_OXIMETER_RANGE));			
-		}
-		if(reqt[Sensor.GSR])
-		{
-			GSR gsr = sd.getGsr();
-			if(gsr!=null&&!STANDARD_GSR_CONDUCTANCE_RANGE.equals(hardwareDataRange.getGsrConductanceRange()))
-				gsr.setConductanceValue(mapValue(gsr.getConductanceValue(), hardwareDataRange.getGsrConductanceRange(), STANDARD_GSR_CONDUCTANCE_RANGE));
-			if(gsr!=null&&!STANDARD_GSR_RESISTANCE_RANGE.equals(hardwareDataRange.getGsrResistanceRange()))
-				gsr.setResistanceValue(mapValue(gsr.getResistanceValue(), hardwareDataRange.getGsrResistanceRange(), STANDARD_GSR_RESISTANCE_RANGE));
-		}
-		
-		return sd;
+		return getDiscrete(DeviceLayerClass.getDefaultSession(), discretePacketInfo, null);
+	}
+	
+	/**
+	 * Fetches every reading buffered by the hardware for the sensors, in one round trip.
+	 * Uses the current DiscretePacketInfo values for the sensors and
+	 * Uses the current hardware range values for range validation.
+	 * See {@link #getDiscreteBatch(DeviceSession, DiscretePacketInfo, SensorDataRange, Deadline)}
+	 * @return the series of each discrete sensor, indexed by sensor; null for the sensors not requested
+	 * @throws NoDeviceConnectedException
+	 * @throws DataNotCollectedException
+	 */
+	public static SensorSeries[] getDiscreteBatch() throws NoDeviceConnectedException, DataNotCollectedException
+	{
+		return getDiscreteBatch(DeviceLayerClass.getDefaultSession(), discretePacketInfo, null, null);
+	}
+	
+	/**
+	 * Fetches a set of discrete sensor values, finishing by the deadline; see {@link Deadline}.
+	 * Uses the current DiscretePacketInfo values for the sensors and
+	 * Uses the current hardware range values for range validation.
+	 * @param deadline deadline of the read, which may also be cancelled from another thread
+	 * @return an object of SensorData Class with the data values received by the deadline
+	 * @throws NoDeviceConnectedException
+	 * @throws DataNotCollectedException
+	 */
+	public static SensorData getDiscrete(Deadline deadline) throws NoDeviceConnectedException, DataNotCollectedException
+	{
+		return getDiscrete(DeviceLayerClass.getDefaultSession(), discretePacketInfo, null, deadline);
 	}
 	
 	/**
@@ -309,12 +361,57 @@ public class AALayerII {
 	 */
 	public static ECG getECG() throws NoDeviceConnectedException, DataNotCollectedException
 	{
-		ECG ecg= AALayerI.getECG();
-		if(ecg==null)
-			return ecg;
-		if(!STANDARD_ECG_RANGE.equals(hardwareDataRange.getEcgRange()))
-			ecg.setValueArray(mapValue(ecg.getValueArray(), hardwareDataRange.getEcgRange(), STANDARD_ECG_RANGE));
-		return ecg;
+		return getECG(DeviceLayerClass.getDefaultSession(), continuousStreamInfo, null);
+	}
+	
+	/**
+	 * Streams data values from the ECG sensor, handing them to the sink in chunks while they are being received,
+	 * e.g. for live display or for recordings of unbounded length.
+	 * Uses the current ContinuousStreamInfo values for the ECG sensor; the data length is not used, the stream
+	 * runs until it is stopped with {@link ContinuousStream#stop()} or ended by the hardware.
+	 * Uses the current hardware range values for range validation.
+	 * @param chunkSize number of samples handed to the sink at a time
+	 * @param sink receives the validated samples, mapped to the standard ECG range
+	 * @return the running stream
+	 * @throws NoDeviceConnectedException
+	 * @throws DataNotCollectedException if the stream could not be started
+	 */
+	public static ContinuousStream streamECG(int chunkSize, SampleSink sink) throws NoDeviceConnectedException, DataNotCollectedException
+	{
+		return streamECG(DeviceLayerClass.getDefaultSession(), continuousStreamInfo, null, chunkSize, sink);
+	}
+	
+	/**
+	 * Streams data values from the ECG sensor of the specified session, handing them to the sink in chunks while
+	 * they are being received. See {@link #streamECG(int, SampleSink)}
+	 * @param session connection to the sensor hardware
+	 * @param c an object of ContinuousStreamInfo class; the data length is not used
+	 * @param range valid range for ECG sensor hardware, the current hardware range if null
+	 * @param chunkSize number of samples handed to the sink at a time
+	 * @param sink receives the validated samples, mapped to the standard ECG range
+	 * @return the running stream
+	 * @throws NoDeviceConnectedException
+	 * @throws DataNotCollectedException if the stream could not be started
+	 */
+	public static ContinuousStream streamECG(DeviceSession session, ContinuousStreamInfo c, RangeOfValues<Float> range, 
+			int chunkSize, final SampleSink sink) throws NoDeviceConnectedException, DataNotCollectedException
+	{
+		final RangeOfValues<Float> ecgRange = (range!=null) ? range : hardwareDataRange.getEcgRange();
+		SampleSink mapping = sink;
+		if(!STANDARD_ECG_RANGE.equals(ecgRange))
+			mapping = new SampleSink() {
+				public void onSamples(float[] samples, int length) {
+					mapValue(samples, length, ecgRange, STANDARD_ECG_RANGE);
+					sink.onSamples(samples, length);
+				}
+				public void onEnd(boolean acknowledged) {
+					sink.onEnd(acknowledged);
+				}
+			};
+		ContinuousStream stream = AALayerI.streamFloatContinuous(session, c, ecgRange, chunkSize, mapping);
+		if(sink instanceof CreditSink)
+			((CreditSink) sink).attach(stream);
+		return stream;
 	}
 	
 	/**
@@ -339,12 +436,7 @@ public class AALayerII {
 	 */
 	public static Temperature getTemperature() throws NoDeviceConnectedException
 	{
-		try {
-			return getTemperature(String.valueOf(discretePacketInfo.getSensorIdentifier(Sensor.TEMPERATURE)), String.valueOf(discretePacketInfo.getSensorDataDelimiter()), discretePacketInfo.getDiscreteTimeout());
-		} catch (SensorNotDefinedException e) {
-			e.printStackTrace();
-			return null;
-		}
+		return getTemperature(DeviceLayerClass.getDefaultSession(), discretePacketInfo, null);
 	}
 	
 	/**
@@ -406,13 +498,8 @@ public class AALayerII {
 	 */
 	public static Temperature getTemperature(String sensorId, String delimiter, int timeout) throws NoDeviceConnectedException
 	{
-		Temperature temp = AALayerI.getTemperature(sensorId, delimiter, timeout);
-		if(temp==null)
-			return temp;
-		
-		if(!STANDARD_TEMPERATURE_RANGE.equals(hardwareDataRange.getTemperatureRange()))
-			temp.setValue(mapValue(temp.getValue(), hardwareDataRange.getTemperatureRange(), STANDARD_TEMPERATURE_RANGE));
-		return temp;
+		RangeOfValues<Float> range = hardwareDataRange.getTemperatureRange();
+		return toStandardRange(AALayerI.getTemperature(DeviceLayerClass.getDefaultSession(), sensorId, delimiter, range, timeout), range);
 	}
 	
 	/**
@@ -439,12 +526,7 @@ public class AALayerII {
 	 */
 	public static BloodPressure getBloodPressure() throws NoDeviceConnectedException
 	{
-		try {
-			return getBloodPressure(String.valueOf(discretePacketInfo.getSensorIdentifier(Sensor.BLOODPRESSURE)), String.valueOf(discretePacketInfo.getSensorDataDelimiter()), String.valueOf(discretePacketInfo.getMultiValueDelimiter()), discretePacketInfo.getDiscreteTimeout());
-		} catch (SensorNotDefinedException e) {
-			e.printStackTrace();
-			return null;
-		}
+		return getBloodPressure(DeviceLayerClass.getDefaultSession(), discretePacketInfo, null, null);
 	}
 	
 	/**
@@ -514,15 +596,9 @@ public class AALayerII {
 	 */
 	public static BloodPressure getBloodPressure(String sensorId, String dataDelimiter, String multiValueDelimiter, int timeout) throws NoDeviceConnectedException
 	{
-		BloodPressure bp = AALayerI.getBloodPressure(sensorId, dataDelimiter, multiValueDelimiter, timeout);
-		if(bp==null)
-			return bp;
-		
-		if(!STANDARD_DIASTOLIC_RANGE.equals(hardwareDataRange.getDiastolicRange()))
-			bp.setDiastolicValue(mapValue(bp.getDiastolicValue(), hardwareDataRange.getDiastolicRange(), STANDARD_DIASTOLIC_RANGE));
-		if(!STANDARD_SYSTOLIC_RANGE.equals(hardwareDataRange.getSystolicRange()))
-			bp.setSystolicValue(mapValue(bp.getSystolicValue(), hardwareDataRange.getSystolicRange(), STANDARD_SYSTOLIC_RANGE));
-		return bp;
+		RangeOfValues<Integer> sysrange = hardwareDataRange.getSystolicRange();
+		RangeOfValues<Integer> dirange = hardwareDataRange.getDiastolicRange();
+		return toStandardRange(AALayerI.getBloodPressure(DeviceLayerClass.getDefaultSession(), sensorId, dataDelimiter, multiValueDelimiter, sysrange, dirange, timeout), sysrange, dirange);
 	}
 	
 	/**
@@ -547,12 +623,7 @@ public class AALayerII {
 	 */
 	public static PulseRate getPulseRate() throws NoDeviceConnectedException
 	{
-		try {
-			return getPulseRate(String.valueOf(discretePacketInfo.getSensorIdentifier(Sensor.PULSERATE)), String.valueOf(discretePacketInfo.getSensorDataDelimiter()), discretePacketInfo.getDiscreteTimeout());
-		} catch (SensorNotDefinedException e) {
-			e.printStackTrace();
-			return null;
-		}
+		return getPulseRate(DeviceLayerClass.getDefaultSession(), discretePacketInfo, null);
 	}
 	
 	/**
@@ -614,13 +685,8 @@ public class AALayerII {
 	 */
 	public static PulseRate getPulseRate(String sensorId, String delimiter, int timeout) throws NoDeviceConnectedException
 	{
-		PulseRate pr= AALayerI.getPulseRate(sensorId, delimiter, timeout);
-		if(pr==null)
-			return pr;
-		
-		if(!STANDARD_PULSERATE_RANGE.equals(hardwareDataRange.getPulseRateRange()))
-			pr.setValue(mapValue(pr.getValue(), hardwareDataRange.getPulseRateRange(), STANDARD_PULSERATE_RANGE));
-		return pr;
+		RangeOfValues<Integer> range = hardwareDataRange.getPulseRateRange();
+		return toStandardRange(AALayerI.getPulseRate(DeviceLayerClass.getDefaultSession(), sensorId, delimiter, range, timeout), range);
 	}
 	
 	/**
@@ -645,12 +711,7 @@ public class AALayerII {
 	 */
 	public static Oximeter getOximeter() throws NoDeviceConnectedException
 	{
-		try {
-			return getOximeter(String.valueOf(discretePacketInfo.getSensorIdentifier(Sensor.OXIMETER)), String.valueOf(discretePacketInfo.getSensorDataDelimiter()), discretePacketInfo.getDiscreteTimeout());
-		} catch (SensorNotDefinedException e) {
-			e.printStackTrace();
-			return null;
-		}
+		return getOximeter(DeviceLayerClass.getDefaultSession(), discretePacketInfo, null);
 	}
 	
 	/**
@@ -712,13 +773,8 @@ public class AALayerII {
 	 */
 	public static Oximeter getOximeter(String sensorId, String delimiter, int timeout) throws NoDeviceConnectedException
 	{
-		Oximeter oximeter= AALayerI.getOximeter(sensorId, delimiter, timeout);
-		if(oximeter==null)
-			return oximeter;
-		
-		if(!STANDARD_OXIMETER_RANGE.equals(hardwareDataRange.getOximeterRange()))
-			oximeter.setValue(mapValue(oximeter.getValue(), hardwareDataRange.getOximeterRange(), STANDARD_OXIMETER_RANGE));
-		return oximeter;
+		RangeOfValues<Float> range = hardwareDataRange.getOximeterRange();
+		return toStandardRange(AALayerI.getOximeter(DeviceLayerClass.getDefaultSession(), sensorId, delimiter, range, timeout), range);
 	}
 	
 	/**
@@ -745,12 +801,7 @@ public class AALayerII {
 	 */
 	public static GSR getGSR() throws NoDeviceConnectedException
 	{
-		try {
-			return getGSR(String.valueOf(discretePacketInfo.getSensorIdentifier(Sensor.GSR)), String.valueOf(discretePacketInfo.getSensorDataDelimiter()), String.valueOf(discretePacketInfo.getMultiValueDelimiter()), discretePacketInfo.getDiscreteTimeout());
-		} catch (SensorNotDefinedException e) {
-			e.printStackTrace();
-			return null;
-		}
+		return getGSR(DeviceLayerClass.getDefaultSession(), discretePacketInfo, null, null);
 	}
 	
 	/**
@@ -820,17 +871,773 @@ public class AALayerII {
 	 */
 	public static GSR getGSR(String sensorId, String dataDelimiter, String multiValueDelimiter, int timeout) throws NoDeviceConnectedException
 	{
-		GSR gsr = AALayerI.getGSR(sensorId, dataDelimiter, multiValueDelimiter, timeout);
+		RangeOfValues<Float> conductanceRange = hardwareDataRange.getGsrConductanceRange();
+		RangeOfValues<Float> resistanceRange = hardwareDataRange.getGsrResistanceRange();
+		return toStandardRange(AALayerI.getGSR(DeviceLayerClass.getDefaultSession(), sensorId, dataDelimiter, multiValueDelimiter, conductanceRange, resistanceRange, timeout), conductanceRange, resistanceRange);
+	}
+	
+	/**
+	 * Requests medical data from the Temperature sensor without blocking the calling thread.
+	 * Uses the current hardware range values for range validation.
+	 * Rest of the specification is used from current DiscretePacketInfo object.
+	 * @return a future completed with an object of Temperature Class, or null if no valid value was received
+	 * @throws NoDeviceConnectedException
+	 */
+	public static SensorFuture<Temperature> getTemperatureAsync() throws NoDeviceConnectedException
+	{
+		return getTemperatureAsync(DeviceLayerClass.getDefaultSession(), discretePacketInfo, null);
+	}
+	
+	/**
+	 * Requests medical data from the Temperature sensor without blocking the calling thread.
+	 * Uses the current hardware range values for range validation.
+	 * @param sensorId sensor identifiers in the response packet
+	 * @param delimiter used to delimit beginning of data values from the sensor identifier in the response packet
+	 * @param timeout Timeout Duration (in milliseconds) till the request waits for the hardware 
+	 * to complete transmission.
+	 * @return a future completed with an object of Temperature Class, or null if no valid value was received
+	 * @throws NoDeviceConnectedException
+	 */
+	public static SensorFuture<Temperature> getTemperatureAsync(String sensorId, String delimiter, int timeout) throws NoDeviceConnectedException
+	{
+		return requestTemperature(DeviceLayerClass.getDefaultSession(), sensorId, delimiter, hardwareDataRange.getTemperatureRange(), timeout);
+	}
+	
+	private static SensorFuture<Temperature> requestTemperature(DeviceSession session, final String sensorId, final String delimiter, 
+			final RangeOfValues<Float> range, int timeout) throws NoDeviceConnectedException
+	{
+		final Deadline deadline = Deadline.none();
+		final SensorFuture<Temperature> future = new SensorFuture<Temperature>(deadline);
+		AALayerI.requestDiscrete(session, Sensor.TEMPERATURE, timeout, new ResponseListener() {
+			public void onResponse(String packet) {
+				future.set(toStandardRange(AALayerI.parseTemperature(packet, sensorId, delimiter, range), range));
+			}
+		}, deadline);
+		return future;
+	}
+	
+	private static SensorFuture<Temperature> requestTemperature(DeviceSession session, final PacketSchema schema, 
+			final RangeOfValues<Float> range, int timeout) throws NoDeviceConnectedException
+	{
+		final Deadline deadline = Deadline.none();
+		final SensorFuture<Temperature> future = new SensorFuture<Temperature>(deadline);
+		AALayerI.requestCoalesced(session, Sensor.TEMPERATURE, timeout, new ResponseListener() {
+			public void onResponse(String packet) {
+				future.set(toStandardRange(AALayerI.parseTemperature(packet, schema, range), range));
+			}
+		}, deadline);
+		return future;
+	}
+	
+	/**
+	 * Requests medical data from the Blood Pressure sensor without blocking the calling thread.
+	 * Uses the current hardware range values for range validation.
+	 * Rest of the specification is used from current DiscretePacketInfo object.
+	 * @return a future completed with an object of BloodPressure Class, or null if no valid value was received
+	 * @throws NoDeviceConnectedException
+	 */
+	public static SensorFuture<BloodPressure> getBloodPressureAsync() throws NoDeviceConnectedException
+	{
+		return getBloodPressureAsync(DeviceLayerClass.getDefaultSession(), discretePacketInfo, null, null);
+	}
+	
+	/**
+	 * Requests medical data from the Blood Pressure sensor without blocking the calling thread.
+	 * Uses the current hardware range values for range validation.
+	 * @param sensorId sensor identifiers in the response packet.
+	 * @param dataDelimiter used to delimit beginning of data values from the sensor identifier in the response packet
+	 * @param multiValueDelimiter used to delimit multiple values sent by the sensor in the response packet
+	 * @param timeout Timeout Duration (in milliseconds) till the request waits for the hardware 
+	 * to complete transmission.
+	 * @return a future completed with an object of BloodPressure Class, or null if no valid value was received
+	 * @throws NoDeviceConnectedException
+	 */
+	public static SensorFuture<BloodPressure> getBloodPressureAsync(String sensorId, String dataDelimiter, String multiValueDelimiter, int timeout) throws NoDeviceConnectedException
+	{
+		return requestBloodPressure(DeviceLayerClass.getDefaultSession(), sensorId, dataDelimiter, multiValueDelimiter, 
+				hardwareDataRange.getSystolicRange(), hardwareDataRange.getDiastolicRange(), timeout);
+	}
+	
+	private static SensorFuture<BloodPressure> requestBloodPressure(DeviceSession session, final String sensorId, final String dataDelimiter, 
+			final String multiValueDelimiter, final RangeOfValues<Integer> sysrange, final RangeOfValues<Integer> dirange, int timeout) 
+					throws NoDeviceConnectedException
+	{
+		final Deadline deadline = Deadline.none();
+		final SensorFuture<BloodPressure> future = new SensorFuture<BloodPressure>(deadline);
+		AALayerI.requestDiscrete(session, Sensor.BLOODPRESSURE, timeout, new ResponseListener() {
+			public void onResponse(String packet) {
+				future.set(toStandardRange(AALayerI.parseBloodPressure(packet, sensorId, dataDelimiter, multiValueDelimiter, sysrange, dirange), sysrange, dirange));
+			}
+		}, deadline);
+		return future;
+	}
+	
+	private static SensorFuture<BloodPressure> requestBloodPressure(DeviceSession session, final PacketSchema schema, 
+			final RangeOfValues<Integer> sysrange, final RangeOfValues<Integer> dirange, int timeout) throws NoDeviceConnectedException
+	{
+		final Deadline deadline = Deadline.none();
+		final SensorFuture<BloodPressure> future = new SensorFuture<BloodPressure>(deadline);
+		AALayerI.requestCoalesced(session, Sensor.BLOODPRESSURE, timeout, new ResponseListener() {
+			public void onResponse(String packet) {
+				future.set(toStandardRange(AALayerI.parseBloodPressure(packet, schema, sysrange, dirange), sysrange, dirange));
+			}
+		}, deadline);
+		return future;
+	}
+	
+	/**
+	 * Requests medical data from the Pulse Rate sensor without blocking the calling thread.
+	 * Uses the current hardware range values for range validation.
+	 * Rest of the specification is used from current DiscretePacketInfo object.
+	 * @return a future completed with an object of PulseRate Class, or null if no valid value was received
+	 * @throws NoDeviceConnectedException
+	 */
+	public static SensorFuture<PulseRate> getPulseRateAsync() throws NoDeviceConnectedException
+	{
+		return getPulseRateAsync(DeviceLayerClass.getDefaultSession(), discretePacketInfo, null);
+	}
+	
+	/**
+	 * Requests medical data from the Pulse Rate sensor without blocking the calling thread.
+	 * Uses the current hardware range values for range validation.
+	 * @param sensorId sensor identifiers in the response packet
+	 * @param delimiter used to delimit beginning of data values from the sensor identifier in the response packet
+	 * @param timeout Timeout Duration (in milliseconds) till the request waits for the hardware 
+	 * to complete transmission.
+	 * @return a future completed with an object of PulseRate Class, or null if no valid value was received
+	 * @throws NoDeviceConnectedException
+	 */
+	public static SensorFuture<PulseRate> getPulseRateAsync(String sensorId, String delimiter, int timeout) throws NoDeviceConnectedException
+	{
+		return requestPulseRate(DeviceLayerClass.getDefaultSession(), sensorId, delimiter, hardwareDataRange.getPulseRateRange(), timeout);
+	}
+	
+	private static SensorFuture<PulseRate> requestPulseRate(DeviceSession session, final String sensorId, final String delimiter, 
+			final RangeOfValues<Integer> range, int timeout) throws NoDeviceConnectedException
+	{
+		final Deadline deadline = Deadline.none();
+		final SensorFuture<PulseRate> future = new SensorFuture<PulseRate>(deadline);
+		AALayerI.requestDiscrete(session, Sensor.PULSERATE, timeout, new ResponseListener() {
+			public void onResponse(String packet) {
+				future.set(toStandardRange(AALayerI.parsePulseRate(packet, sensorId, delimiter, range), range));
+			}
+		}, deadline);
+		return future;
+	}
+	
+	private static SensorFuture<PulseRate> requestPulseRate(DeviceSession session, final PacketSchema schema, 
+			final RangeOfValues<Integer> range, int timeout) throws NoDeviceConnectedException
+	{
+		final Deadline deadline = Deadline.none();
+		final SensorFuture<PulseRate> future = new SensorFuture<PulseRate>(deadline);
+		AALayerI.requestCoalesced(session, Sensor.PULSERATE, timeout, new ResponseListener() {
+			public void onResponse(String packet) {
+				future.set(toStandardRange(AALayerI.parsePulseRate(packet, schema, range), range));
+			}
+		}, deadline);
+		return future;
+	}
+	
+	/**
+	 * Requests medical data from the Oximeter sensor without blocking the calling thread.
+	 * Uses the current hardware range values for range validation.
+	 * Rest of the specification is used from current DiscretePacketInfo object.
+	 * @return a future completed with an object of Oximeter Class, or null if no valid value was received
+	 * @throws NoDeviceConnectedException
+	 */
+	public static SensorFuture<Oximeter> getOximeterAsync() throws NoDeviceConnectedException
+	{
+		return getOximeterAsync(DeviceLayerClass.getDefaultSession(), discretePacketInfo, null);
+	}
+	
+	/**
+	 * Requests medical data from the Oximeter sensor without blocking the calling thread.
+	 * Uses the current hardware range values for range validation.
+	 * @param sensorId sensor identifiers in the response packet
+	 * @param delimiter used to delimit beginning of data values from the sensor identifier in the response packet
+	 * @param timeout Timeout Duration (in milliseconds) till the request waits for the hardware 
+	 * to complete transmission.
+	 * @return a future completed with an object of Oximeter Class, or null if no valid value was received
+	 * @throws NoDeviceConnectedException
+	 */
+	public static SensorFuture<Oximeter> getOximeterAsync(String sensorId, String delimiter, int timeout) throws NoDeviceConnectedException
+	{
+		return requestOximeter(DeviceLayerClass.getDefaultSession(), sensorId, delimiter, hardwareDataRange.getOximeterRange(), timeout);
+	}
+	
+	private static SensorFuture<Oximeter> requestOximeter(DeviceSession session, final String sensorId, final String delimiter, 
+			final RangeOfValues<Float> range, int timeout) throws NoDeviceConnectedException
+	{
+		final Deadline deadline = Deadline.none();
+		final SensorFuture<Oximeter> future = new SensorFuture<Oximeter>(deadline);
+		AALayerI.requestDiscrete(session, Sensor.OXIMETER, timeout, new ResponseListener() {
+			public void onResponse(String packet) {
+				future.set(toStandardRange(AALayerI.parseOximeter(packet, sensorId, delimiter, range), range));
+			}
+		}, deadline);
+		return future;
+	}
+	
+	private static SensorFuture<Oximeter> requestOximeter(DeviceSession session, final PacketSchema schema, 
+			final RangeOfValues<Float> range, int timeout) throws NoDeviceConnectedException
+	{
+		final Deadline deadline = Deadline.none();
+		final SensorFuture<Oximeter> future = new SensorFuture<Oximeter>(deadline);
+		AALayerI.requestCoalesced(session, Sensor.OXIMETER, timeout, new ResponseListener() {
+			public void onResponse(String packet) {
+				future.set(toStandardRange(AALayerI.parseOximeter(packet, schema, range), range));
+			}
+		}, deadline);
+		return future;
+	}
+	
+	/**
+	 * Requests medical data from the GSR sensor without blocking the calling thread.
+	 * Uses the current hardware range values for range validation.
+	 * Rest of the specification is used from current DiscretePacketInfo object.
+	 * @return a future completed with an object of GSR Class, or null if no valid value was received
+	 * @throws NoDeviceConnectedException
+	 */
+	public static SensorFuture<GSR> getGSRAsync() throws NoDeviceConnectedException
+	{
+		return getGSRAsync(DeviceLayerClass.getDefaultSession(), discretePacketInfo, null, null);
+	}
+	
+	/**
+	 * Requests medical data from the GSR sensor without blocking the calling thread.
+	 * Uses the current hardware range values for range validation.
+	 * @param sensorId sensor identifiers in the response packet.
+	 * @param dataDelimiter used to delimit beginning of data values from the sensor identifier in the response packet
+	 * @param multiValueDelimiter used to delimit multiple values sent by the sensor in the response packet
+	 * @param timeout Timeout Duration (in milliseconds) till the request waits for the hardware 
+	 * to complete transmission.
+	 * @return a future completed with an object of GSR Class, or null if no valid value was received
+	 * @throws NoDeviceConnectedException
+	 */
+	public static SensorFuture<GSR> getGSRAsync(String sensorId, String dataDelimiter, String multiValueDelimiter, int timeout) throws NoDeviceConnectedException
+	{
+		return requestGSR(DeviceLayerClass.getDefaultSession(), sensorId, dataDelimiter, multiValueDelimiter, 
+				hardwareDataRange.getGsrConductanceRange(), hardwareDataRange.getGsrResistanceRange(), timeout);
+	}
+	
+	private static SensorFuture<GSR> requestGSR(DeviceSession session, final String sensorId, final String dataDelimiter, 
+			final String multiValueDelimiter, final RangeOfValues<Float> conductanceRange, final RangeOfValues<Float> resistanceRange, int timeout) 
+					throws NoDeviceConnectedException
+	{
+		final Deadline deadline = Deadline.none();
+		final SensorFuture<GSR> future = new SensorFuture<GSR>(deadline);
+		AALayerI.requestDiscrete(session, Sensor.GSR, timeout, new ResponseListener() {
+			public void onResponse(String packet) {
+				future.set(toStandardRange(AALayerI.parseGSR(packet, sensorId, dataDelimiter, multiValueDelimiter, conductanceRange, resistanceRange), 
+						conductanceRange, resistanceRange));
+			}
+		}, deadline);
+		return future;
+	}
+	
+	private static SensorFuture<GSR> requestGSR(DeviceSession session, final PacketSchema schema, 
+			final RangeOfValues<Float> conductanceRange, final RangeOfValues<Float> resistanceRange, int timeout) throws NoDeviceConnectedException
+	{
+		final Deadline deadline = Deadline.none();
+		final SensorFuture<GSR> future = new SensorFuture<GSR>(deadline);
+		AALayerI.requestCoalesced(session, Sensor.GSR, timeout, new ResponseListener() {
+			public void onResponse(String packet) {
+				future.set(toStandardRange(AALayerI.parseGSR(packet, schema, conductanceRange, resistanceRange), conductanceRange, resistanceRange));
+			}
+		}, deadline);
+		return future;
+	}
+	
+	/**
+	 * Requests a set of discrete sensor values without blocking the calling thread.
+	 * Uses the current DiscretePacketInfo values for the sensors and
+	 * Uses the current hardware range values for range validation.
+	 * @return a future completed with an object of SensorData Class with data values populated as per requirement
+	 * @throws NoDeviceConnectedException
+	 * @throws DataNotCollectedException
+	 */
+	public static SensorFuture<SensorData> getDiscreteAsync() throws NoDeviceConnectedException, DataNotCollectedException
+	{
+		return getDiscreteAsync(DeviceLayerClass.getDefaultSession(), discretePacketInfo, null);
+	}
+	
+	/**
+	 * Requests a stream of data values from the ECG sensor without blocking the calling thread.
+	 * Uses the current ContinuousStreamInfo values for the ECG sensor
+	 * Uses the current hardware range values for range validation.
+	 * The stream is collected on a background thread; ECG requests are served one after the other.
+	 * @return a future completed with an object of ECG Class with populated data values
+	 */
+	public static SensorFuture<ECG> getECGAsync()
+	{
+		return getECGAsync(DeviceLayerClass.getDefaultSession(), continuousStreamInfo, null);
+	}
+	
+	/**
+	 * Fetches a set of discrete sensor values from the sensor hardware of the specified session.
+	 * The discretePacketInfo object is not modified, so concurrent requests may share it.
+	 * @param session connection to the sensor hardware, see {@link com.sensorstack.devicelayer.DeviceRegistry}
+	 * @param discretePacketInfo specifies the sensors requested and the packet format
+	 * @param range valid range of the sensors' hardware; the current hardware range is used for sensors whose
+	 * range is null, or for all sensors if range is null
+	 * @return an object of SensorData Class with data values populated as per requirement
+	 * @throws NoDeviceConnectedException
+	 * @throws DataNotCollectedException
+	 */
+	public static SensorData getDiscrete(DeviceSession session, DiscretePacketInfo discretePacketInfo, SensorDataRange range) 
+			throws NoDeviceConnectedException, DataNotCollectedException
+	{
+		return getDiscrete(session, discretePacketInfo, range, null);
+	}
+	
+	/**
+	 * Fetches a set of discrete sensor values from the sensor hardware of the specified session, finishing by the
+	 * deadline. Attempts are made as configured in discretePacketInfo, each waiting for at most the discrete
+	 * timeout and the time left; none is made once the deadline has passed or has been cancelled, see {@link Deadline}.
+	 * @param session connection to the sensor hardware
+	 * @param discretePacketInfo specifies the sensors requested and the packet format
+	 * @param range valid range of the sensors' hardware, see {@link #getDiscrete(DeviceSession, DiscretePacketInfo, SensorDataRange)}
+	 * @param deadline deadline of the read; none if null
+	 * @return an object of SensorData Class with the data values received by the deadline
+	 * @throws NoDeviceConnectedException
+	 * @throws DataNotCollectedException
+	 */
+	public static SensorData getDiscrete(DeviceSession session, DiscretePacketInfo discretePacketInfo, SensorDataRange range, 
+			Deadline deadline) throws NoDeviceConnectedException, DataNotCollectedException
+	{
+		SensorDataRange r = withHardwareRange(range);
+		return toStandardRange(AALayerI.getDiscrete(session, discretePacketInfo, r, deadline), r);
+	}
+	
+	/**
+	 * Requests a set of discrete sensor values from the sensor hardware of the specified session without blocking
+	 * the calling thread. See {@link #getDiscrete(DeviceSession, DiscretePacketInfo, SensorDataRange)}
+	 * @param session connection to the sensor hardware
+	 * @param discretePacketInfo specifies the sensors requested and the packet format
+	 * @param range valid range of the sensors' hardware, see {@link #getDiscrete(DeviceSession, DiscretePacketInfo, SensorDataRange)}
+	 * @return a future completed with an object of SensorData Class with data values populated as per requirement
+	 * @throws NoDeviceConnectedException
+	 * @throws DataNotCollectedException
+	 */
+	public static SensorFuture<SensorData> getDiscreteAsync(DeviceSession session, DiscretePacketInfo discretePacketInfo, SensorDataRange range) 
+			throws NoDeviceConnectedException, DataNotCollectedException
+	{
+		return getDiscreteAsync(session, discretePacketInfo, range, Deadline.none());
+	}
+	
+	/**
+	 * Requests a set of discrete sensor values from the sensor hardware of the specified session without blocking
+	 * the calling thread, finishing by the deadline. See {@link #getDiscrete(DeviceSession, DiscretePacketInfo, SensorDataRange, Deadline)}.
+	 * Cancelling the future cancels the deadline.
+	 * @param session connection to the sensor hardware
+	 * @param discretePacketInfo specifies the sensors requested and the packet format
+	 * @param range valid range of the sensors' hardware, see {@link #getDiscrete(DeviceSession, DiscretePacketInfo, SensorDataRange)}
+	 * @param deadline deadline of the read
+	 * @return a future completed with an object of SensorData Class with the data values received by the deadline
+	 * @throws NoDeviceConnectedException
+	 * @throws DataNotCollectedException
+	 */
+	public static SensorFuture<SensorData> getDiscreteAsync(DeviceSession session, DiscretePacketInfo discretePacketInfo, SensorDataRange range, 
+			Deadline deadline) throws NoDeviceConnectedException, DataNotCollectedException
+	{
+		final SensorDataRange r = withHardwareRange(range);
+		final SensorFuture<SensorData> future = new SensorFuture<SensorData>(deadline);
+		AALayerI.getDiscrete(session, discretePacketInfo, r, deadline, new AALayerI.DiscreteListener() {
+			public void onDiscrete(SensorData sd) {
+				future.set(toStandardRange(sd, r));
+			}
+			public void onError(Exception e) {
+				future.setException(e);
+			}
+		});
+		return future;
+	}
+	
+	/**
+	 * Fetches every reading the sensor hardware buffered for the sensors specified in discretePacketInfo, in one
+	 * round trip instead of one per reading. Each sensor's valid readings are returned as a series, oldest first;
+	 * sensors without a valid reading are requested again, up to the number of attempts configured.
+	 * Hardware without batch support sends one reading per sensor.
+	 * @param session connection to the sensor hardware
+	 * @param discretePacketInfo specifies the sensors requested and the packet format
+	 * @param range valid range of the sensors' hardware, see {@link #getDiscrete(DeviceSession, DiscretePacketInfo, SensorDataRange)}
+	 * @param deadline deadline of the read; none if null
+	 * @return the series of each discrete sensor, indexed by sensor as defined in the Sensor class; null for the 
+	 * sensors not requested
+	 * @throws NoDeviceConnectedException
+	 * @throws DataNotCollectedException
+	 */
+	public static SensorSeries[] getDiscreteBatch(DeviceSession session, DiscretePacketInfo discretePacketInfo, SensorDataRange range, 
+			Deadline deadline) throws NoDeviceConnectedException, DataNotCollectedException
+	{
+		SensorDataRange r = withHardwareRange(range);
+		return toStandardRange(AALayerI.getDiscreteBatch(session, discretePacketInfo, r, deadline), r);
+	}
+	
+	/**
+	 * Fetches every reading buffered for the sensors specified in discretePacketInfo from the sensor hardware of
+	 * the specified session. See {@link #getDiscreteBatch(DeviceSession, DiscretePacketInfo, SensorDataRange, Deadline)}
+	 * @return the series of each discrete sensor, indexed by sensor; null for the sensors not requested
+	 * @throws NoDeviceConnectedException
+	 * @throws DataNotCollectedException
+	 */
+	public static SensorSeries[] getDiscreteBatch(DeviceSession session, DiscretePacketInfo discretePacketInfo, SensorDataRange range) 
+			throws NoDeviceConnectedException, DataNotCollectedException
+	{
+		return getDiscreteBatch(session, discretePacketInfo, range, null);
+	}
+	
+	/**
+	 * Fetches a stream of data values from the ECG sensor of the specified session.
+	 * @param session connection to the sensor hardware
+	 * @param c an object of ContinuousStreamInfo class
+	 * @param range valid range for ECG sensor hardware, the current hardware range if null
+	 * @return an object of ECG Class with populated data values
+	 * @throws NoDeviceConnectedException
+	 * @throws DataNotCollectedException
+	 */
+	public static ECG getECG(DeviceSession session, ContinuousStreamInfo c, RangeOfValues<Float> range) 
+			throws NoDeviceConnectedException, DataNotCollectedException
+	{
+		if(range==null)
+			range=hardwareDataRange.getEcgRange();
+		return toStandardRange(AALayerI.getECG(session, c, range), range);
+	}
+	
+	/**
+	 * Requests a stream of data values from the ECG sensor of the specified session without blocking the calling
+	 * thread. The stream is collected on a background thread of the session; ECG requests to the same session are
+	 * served one after the other, requests to different sessions run concurrently.
+	 * @param session connection to the sensor hardware
+	 * @param c an object of ContinuousStreamInfo class
+	 * @param range valid range for ECG sensor hardware, the current hardware range if null
+	 * @return a future completed with an object of ECG Class with populated data values
+	 */
+	public static SensorFuture<ECG> getECGAsync(final DeviceSession session, final ContinuousStreamInfo c, final RangeOfValues<Float> range)
+	{
+		final SensorFuture<ECG> future = new SensorFuture<ECG>();
+		getStreamExecutor(session).execute(new Runnable() {
+			public void run() {
+				if(future.isCancelled())
+					return;
+				try {
+					future.set(getECG(session, c, range));
+				} catch (Exception e) {
+					future.setException(e);
+				}
+			}
+		});
+		return future;
+	}
+	
+	/**
+	 * Fetches medical data from the Temperature sensor of the specified session.
+	 * @param session connection to the sensor hardware
+	 * @param discretePacketInfo specifies the sensor identifier, delimiters and timeout
+	 * @param range valid range for Temperature sensor hardware, the current hardware range if null
+	 * @return an object of Temperature Class with populated data values
+	 * @throws NoDeviceConnectedException
+	 */
+	public static Temperature getTemperature(DeviceSession session, DiscretePacketInfo discretePacketInfo, RangeOfValues<Float> range) 
+			throws NoDeviceConnectedException
+	{
+		if(range==null)
+			range=hardwareDataRange.getTemperatureRange();
+		return toStandardRange(AALayerI.getTemperature(session, discretePacketInfo.getSchema(), range, discretePacketInfo.getDiscreteTimeout()), range);
+	}
+	
+	/**
+	 * Fetches medical data from the Blood Pressure sensor of the specified session.
+	 * @param session connection to the sensor hardware
+	 * @param discretePacketInfo specifies the sensor identifier, delimiters and timeout
+	 * @param sysrange valid range for Systolic Pressure, the current hardware range if null
+	 * @param dirange valid range for Diastolic Pressure, the current hardware range if null
+	 * @return an object of BloodPressure Class with populated data values
+	 * @throws NoDeviceConnectedException
+	 */
+	public static BloodPressure getBloodPressure(DeviceSession session, DiscretePacketInfo discretePacketInfo, 
+			RangeOfValues<Integer> sysrange, RangeOfValues<Integer> dirange) throws NoDeviceConnectedException
+	{
+		if(sysrange==null)
+			sysrange=hardwareDataRange.getSystolicRange();
+		if(dirange==null)
+			dirange=hardwareDataRange.getDiastolicRange();
+		return toStandardRange(AALayerI.getBloodPressure(session, discretePacketInfo.getSchema(), sysrange, dirange, discretePacketInfo.getDiscreteTimeout()), sysrange, dirange);
+	}
+	
+	/**
+	 * Fetches medical data from the Pulse Rate sensor of the specified session.
+	 * @param session connection to the sensor hardware
+	 * @param discretePacketInfo specifies the sensor identifier, delimiters and timeout
+	 * @param range valid range for Pulse Rate sensor hardware, the current hardware range if null
+	 * @return an object of PulseRate Class with populated data values
+	 * @throws NoDeviceConnectedException
+	 */
+	public static PulseRate getPulseRate(DeviceSession session, DiscretePacketInfo discretePacketInfo, RangeOfValues<Integer> range) 
+			throws NoDeviceConnectedException
+	{
+		if(range==null)
+			range=hardwareDataRange.getPulseRateRange();
+		return toStandardRange(AALayerI.getPulseRate(session, discretePacketInfo.getSchema(), range, discretePacketInfo.getDiscreteTimeout()), range);
+	}
+	
+	/**
+	 * Fetches medical data from the Oximeter sensor of the specified session.
+	 * @param session connection to the sensor hardware
+	 * @param discretePacketInfo specifies the sensor identifier, delimiters and timeout
+	 * @param range valid range for Oximeter sensor hardware, the current hardware range if null
+	 * @return an object of Oximeter Class with populated data values
+	 * @throws NoDeviceConnectedException
+	 */
+	public static Oximeter getOximeter(DeviceSession session, DiscretePacketInfo discretePacketInfo, RangeOfValues<Float> range) 
+			throws NoDeviceConnectedException
+	{
+		if(range==null)
+			range=hardwareDataRange.getOximeterRange();
+		return toStandardRange(AALayerI.getOximeter(session, discretePacketInfo.getSchema(), range, discretePacketInfo.getDiscreteTimeout()), range);
+	}
+	
+	/**
+	 * Fetches medical data from the GSR sensor of the specified session.
+	 * @param session connection to the sensor hardware
+	 * @param discretePacketInfo specifies the sensor identifier, delimiters and timeout
+	 * @param conductanceRange valid range for skin conductance, the current hardware range if null
+	 * @param resistanceRange valid range for skin resistance, the current hardware range if null
+	 * @return an object of GSR Class with populated data values
+	 * @throws NoDeviceConnectedException
+	 */
+	public static GSR getGSR(DeviceSession session, DiscretePacketInfo discretePacketInfo, 
+			RangeOfValues<Float> conductanceRange, RangeOfValues<Float> resistanceRange) throws NoDeviceConnectedException
+	{
+		if(conductanceRange==null)
+			conductanceRange=hardwareDataRange.getGsrConductanceRange();
+		if(resistanceRange==null)
+			resistanceRange=hardwareDataRange.getGsrResistanceRange();
+		return toStandardRange(AALayerI.getGSR(session, discretePacketInfo.getSchema(), conductanceRange, resistanceRange, discretePacketInfo.getDiscreteTimeout()), conductanceRange, resistanceRange);
+	}
+	
+	/**
+	 * Requests medical data from the Temperature sensor of the specified session without blocking the calling thread.
+	 * See {@link #getTemperature(DeviceSession, DiscretePacketInfo, RangeOfValues)}
+	 * @return a future completed with an object of Temperature Class, or null if no valid value was received
+	 * @throws NoDeviceConnectedException
+	 */
+	public static SensorFuture<Temperature> getTemperatureAsync(DeviceSession session, DiscretePacketInfo discretePacketInfo, RangeOfValues<Float> range) 
+			throws NoDeviceConnectedException
+	{
+		return requestTemperature(session, discretePacketInfo.getSchema(), (range!=null) ? range : hardwareDataRange.getTemperatureRange(), discretePacketInfo.getDiscreteTimeout());
+	}
+	
+	/**
+	 * Requests medical data from the Blood Pressure sensor of the specified session without blocking the calling thread.
+	 * See {@link #getBloodPressure(DeviceSession, DiscretePacketInfo, RangeOfValues, RangeOfValues)}
+	 * @return a future completed with an object of BloodPressure Class, or null if no valid value was received
+	 * @throws NoDeviceConnectedException
+	 */
+	public static SensorFuture<BloodPressure> getBloodPressureAsync(DeviceSession session, DiscretePacketInfo discretePacketInfo, 
+			RangeOfValues<Integer> sysrange, RangeOfValues<Integer> dirange) throws NoDeviceConnectedException
+	{
+		return requestBloodPressure(session, discretePacketInfo.getSchema(), (sysrange!=null) ? sysrange : hardwareDataRange.getSystolicRange(), 
+				(dirange!=null) ? dirange : hardwareDataRange.getDiastolicRange(), discretePacketInfo.getDiscreteTimeout());
+	}
+	
+	/**
+	 * Requests medical data from the Pulse Rate sensor of the specified session without blocking the calling thread.
+	 * See {@link #getPulseRate(DeviceSession, DiscretePacketInfo, RangeOfValues)}
+	 * @return a future completed with an object of PulseRate Class, or null if no valid value was received
+	 * @throws NoDeviceConnectedException
+	 */
+	public static SensorFuture<PulseRate> getPulseRateAsync(DeviceSession session, DiscretePacketInfo discretePacketInfo, RangeOfValues<Integer> range) 
+			throws NoDeviceConnectedException
+	{
+		return requestPulseRate(session, discretePacketInfo.getSchema(), (range!=null) ? range : hardwareDataRange.getPulseRateRange(), discretePacketInfo.getDiscreteTimeout());
+	}
+	
+	/**
+	 * Requests medical data from the Oximeter sensor of the specified session without blocking the calling thread.
+	 * See {@link #getOximeter(DeviceSession, DiscretePacketInfo, RangeOfValues)}
+	 * @return a future completed with an object of Oximeter Class, or null if no valid value was received
+	 * @throws NoDeviceConnectedException
+	 */
+	public static SensorFuture<Oximeter> getOximeterAsync(DeviceSession session, DiscretePacketInfo discretePacketInfo, RangeOfValues<Float> range) 
+			throws NoDeviceConnectedException
+	{
+		return requestOximeter(session, discretePacketInfo.getSchema(), (range!=null) ? range : hardwareDataRange.getOximeterRange(), discretePacketInfo.getDiscreteTimeout());
+	}
+	
+	/**
+	 * Requests medical data from the GSR sensor of the specified session without blocking the calling thread.
+	 * See {@link #getGSR(DeviceSession, DiscretePacketInfo, RangeOfValues, RangeOfValues)}
+	 * @return a future completed with an object of GSR Class, or null if no valid value was received
+	 * @throws NoDeviceConnectedException
+	 */
+	public static SensorFuture<GSR> getGSRAsync(DeviceSession session, DiscretePacketInfo discretePacketInfo, 
+			RangeOfValues<Float> conductanceRange, RangeOfValues<Float> resistanceRange) throws NoDeviceConnectedException
+	{
+		return requestGSR(session, discretePacketInfo.getSchema(), (conductanceRange!=null) ? conductanceRange : hardwareDataRange.getGsrConductanceRange(), 
+				(resistanceRange!=null) ? resistanceRange : hardwareDataRange.getGsrResistanceRange(), discretePacketInfo.getDiscreteTimeout());
+	}
+	
+	/*
+	 * One thread per session, as a link carries one continuous stream at a time; it exits when idle
+	 */
+	private static ExecutorService getStreamExecutor(final DeviceSession session)
+	{
+		synchronized(streamExecutors){
+			ExecutorService executor = streamExecutors.get(session);
+			if(executor==null)
+			{
+				ThreadPoolExecutor pool = new ThreadPoolExecutor(1, 1, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), 
+						new ThreadFactory() {
+							public Thread newThread(Runnable r) {
+								Thread t = new Thread(r, "AALayerII-stream-" + session.getName());
+								t.setDaemon(true);
+								return t;
+							}
+						});
+				pool.allowCoreThreadTimeOut(true);
+				executor = pool;
+				streamExecutors.put(session, executor);
+			}
+			return executor;
+		}
+	}
+	
+	/*
+	 * Returns the range with the current hardware range filled in for sensors whose range is null
+	 */
+	private static SensorDataRange withHardwareRange(SensorDataRange range)
+	{
+		if(range==null || range==hardwareDataRange)
+			return hardwareDataRange;
+		SensorDataRange r = hardwareDataRange;
+		return new SensorDataRange(
+				(range.getTemperatureRange()!=null) ? range.getTemperatureRange() : r.getTemperatureRange(),
+				(range.getSystolicRange()!=null) ? range.getSystolicRange() : r.getSystolicRange(),
+				(range.getDiastolicRange()!=null) ? range.getDiastolicRange() : r.getDiastolicRange(),
+				(range.getPulseRateRange()!=null) ? range.getPulseRateRange() : r.getPulseRateRange(),
+				(range.getOximeterRange()!=null) ? range.getOximeterRange() : r.getOximeterRange(),
+				(range.getGsrConductanceRange()!=null) ? range.getGsrConductanceRange() : r.getGsrConductanceRange(),
+				(range.getGsrResistanceRange()!=null) ? range.getGsrResistanceRange() : r.getGsrResistanceRange(),
+				(range.getEcgRange()!=null) ? range.getEcgRange() : r.getEcgRange()
+				);
+	}
+	
+	private static Temperature toStandardRange(Temperature temp, RangeOfValues<Float> range)
+	{
+		if(temp!=null&&!STANDARD_TEMPERATURE_RANGE.equals(range))
+			temp.setValue(mapValue(temp.getValue(), range, STANDARD_TEMPERATURE_RANGE));
+		return temp;
+	}
+	
+	private static BloodPressure toStandardRange(BloodPressure bp, RangeOfValues<Integer> sysrange, RangeOfValues<Integer> dirange)
+	{
+		if(bp==null)
+			return bp;
+		if(!STANDARD_DIASTOLIC_RANGE.equals(dirange))
+			bp.setDiastolicValue(mapValue(bp.getDiastolicValue(), dirange, STANDARD_DIASTOLIC_RANGE));
+		if(!STANDARD_SYSTOLIC_RANGE.equals(sysrange))
+			bp.setSystolicValue(mapValue(bp.getSystolicValue(), sysrange, STANDARD_SYSTOLIC_RANGE));
+		return bp;
+	}
+	
+	private static PulseRate toStandardRange(PulseRate pr, RangeOfValues<Integer> range)
+	{
+		if(pr!=null&&!STANDARD_PULSERATE_RANGE.equals(range))
+			pr.setValue(mapValue(pr.getValue(), range, STANDARD_PULSERATE_RANGE));
+		return pr;
+	}
+	
+	private static Oximeter toStandardRange(Oximeter oximeter, RangeOfValues<Float> range)
+	{
+		if(oximeter!=null&&!STANDARD_OXIMETER_RANGE.equals(range))
+			oximeter.setValue(mapValue(oximeter.getValue(), range, STANDARD_OXIMETER_RANGE));
+		return oximeter;
+	}
+	
+	private static GSR toStandardRange(GSR gsr, RangeOfValues<Float> conductanceRange, RangeOfValues<Float> resistanceRange)
+	{
 		if(gsr==null)
 			return gsr;
-		
-		if(!STANDARD_GSR_CONDUCTANCE_RANGE.equals(hardwareDataRange.getGsrConductanceRange()))
-			gsr.setConductanceValue(mapValue(gsr.getConductanceValue(), hardwareDataRange.getGsrConductanceRange(), STANDARD_GSR_CONDUCTANCE_RANGE));
-		if(!STANDARD_GSR_RESISTANCE_RANGE.equals(hardwareDataRange.getGsrResistanceRange()))
-			gsr.setResistanceValue(mapValue(gsr.getResistanceValue(), hardwareDataRange.getGsrResistanceRange(), STANDARD_GSR_RESISTANCE_RANGE));
+		if(!STANDARD_GSR_CONDUCTANCE_RANGE.equals(conductanceRange))
+			gsr.setConductanceValue(mapValue(gsr.getConductanceValue(), conductanceRange, STANDARD_GSR_CONDUCTANCE_RANGE));
+		if(!STANDARD_GSR_RESISTANCE_RANGE.equals(resistanceRange))
+			gsr.setResistanceValue(mapValue(gsr.getResistanceValue(), resistanceRange, STANDARD_GSR_RESISTANCE_RANGE));
 		return gsr;
 	}
 	
+	/*
+	 * Maps the values actually collected; the requirement flags of the DiscretePacketInfo name the sensors
+	 * requested, not those answered, so they cannot be used here.
+	 */
+	private static SensorData toStandardRange(SensorData sd, SensorDataRange range)
+	{
+		if(sd==null)
+			return sd;
+		boolean collected[]=sd.getResponse();
+		try {
+			if(collected[Sensor.TEMPERATURE])
+				toStandardRange(sd.getTemperature(), range.getTemperatureRange());
+			if(collected[Sensor.BLOODPRESSURE])
+				toStandardRange(sd.getBloodPressure(), range.getSystolicRange(), range.getDiastolicRange());
+			if(collected[Sensor.PULSERATE])
+				toStandardRange(sd.getPulseRate(), range.getPulseRateRange());
+			if(collected[Sensor.OXIMETER])
+				toStandardRange(sd.getOximeter(), range.getOximeterRange());
+			if(collected[Sensor.GSR])
+				toStandardRange(sd.getGsr(), range.getGsrConductanceRange(), range.getGsrResistanceRange());
+		} catch (DataNotCollectedException e) {
+			//not reached, only collected values are mapped
+			e.printStackTrace();
+		}
+		return sd;
+	}
+	
+	private static SensorSeries[] toStandardRange(SensorSeries series[], SensorDataRange range)
+	{
+		for(int i=0;i<series.length;i++)
+		{
+			SensorSeries s = series[i];
+			if(s==null)
+				continue;
+			int n = s.getLength();
+			switch(i)
+			{
+				case Sensor.TEMPERATURE:
+					if(!STANDARD_TEMPERATURE_RANGE.equals(range.getTemperatureRange()))
+						mapValue(s.getValues(0), n, range.getTemperatureRange(), STANDARD_TEMPERATURE_RANGE);
+					break;
+				case Sensor.BLOODPRESSURE:
+					if(!STANDARD_SYSTOLIC_RANGE.equals(range.getSystolicRange()))
+						mapIntValues(s.getValues(0), n, range.getSystolicRange(), STANDARD_SYSTOLIC_RANGE);
+					if(!STANDARD_DIASTOLIC_RANGE.equals(range.getDiastolicRange()))
+						mapIntValues(s.getValues(1), n, range.getDiastolicRange(), STANDARD_DIASTOLIC_RANGE);
+					break;
+				case Sensor.PULSERATE:
+					if(!STANDARD_PULSERATE_RANGE.equals(range.getPulseRateRange()))
+						mapIntValues(s.getValues(0), n, range.getPulseRateRange(), STANDARD_PULSERATE_RANGE);
+					break;
+				case Sensor.OXIMETER:
+					if(!STANDARD_OXIMETER_RANGE.equals(range.getOximeterRange()))
+						mapValue(s.getValues(0), n, range.getOximeterRange(), STANDARD_OXIMETER_RANGE);
+					break;
+				case Sensor.GSR:
+					if(!STANDARD_GSR_CONDUCTANCE_RANGE.equals(range.getGsrConductanceRange()))
+						mapValue(s.getValues(0), n, range.getGsrConductanceRange(), STANDARD_GSR_CONDUCTANCE_RANGE);
+					if(!STANDARD_GSR_RESISTANCE_RANGE.equals(range.getGsrResistanceRange()))
+						mapValue(s.getValues(1), n, range.getGsrResistanceRange(), STANDARD_GSR_RESISTANCE_RANGE);
+					break;
+			}
+		}
+		return series;
+	}
+	
+	private static ECG toStandardRange(ECG ecg, RangeOfValues<Float> range)
+	{
+		if(ecg!=null&&!STANDARD_ECG_RANGE.equals(range))
+			mapValue(ecg.getSamples(), ecg.getLength(), range, STANDARD_ECG_RANGE);
+		return ecg;
+	}
 	
 	private static float mapValue(float value, RangeOfValues<Float> input, RangeOfValues<Float> output)
 	{
@@ -860,16 +1667,22 @@ public class AALayerII {
 		return newValue;
 	}
 	
-	private static Float[] mapValue(Float[] value, RangeOfValues<Float> input, RangeOfValues<Float> output)
+	//maps the first length values, whole numbers held as floats, in place as mapValue(int, ...) maps a single value
+	private static void mapIntValues(float value[], int length, RangeOfValues<Integer> input, RangeOfValues<Integer> output)
+	{
+		for(int i=0; i<length; i++)
+			value[i] = mapValue(Math.round(value[i]), input, output);
+	}
+	
+	//maps the first length values in place
+	private static void mapValue(float value[], int length, RangeOfValues<Float> input, RangeOfValues<Float> output)
 	{
 		float inputRange = input.getUpperLimit() - input.getLowerLimit();
 		float outputRange = output.getUpperLimit()-output.getLowerLimit();
 		float outputLL = output.getLowerLimit();
 		float inputLL = input.getLowerLimit();
-		Float newValue[] = new Float[value.length];
-		for(int i=0; i<value.length; i++)
-			newValue[i] = outputLL + (value[i]-inputLL)*outputRange/inputRange;
-		return newValue;
+		for(int i=0; i<length; i++)
+			value[i] = outputLL + (value[i]-inputLL)*outputRange/inputRange;
 	}
 	
 	/**
@@ -880,10 +1693,27 @@ public class AALayerII {
 	 * @throws SensorNotDefinedException
 	 */
 	public static void getMetadata(int sensorNum, HashMap<String, String> metadata) throws NoDeviceConnectedException, SensorNotDefinedException
+	{
+		getMetadata(DeviceLayerClass.getDefaultSession(), sensorNum, metadata, discretePacketInfo, continuousStreamInfo);
+	}
+	
+	/**
+	 * Fetches metadata values from the sensor hardware of the specified session.
+	 * @param session connection to the sensor hardware
+	 * @param sensorNum Indicates the sensor whose metadata is requested
+	 * @param metadata Defines what is needed
+	 * @param discretePacketInfo packet format of discrete sensors; only used if sensorNum is a discrete sensor
+	 * @param continuousStreamInfo packet format of the continuous sensor; only used if sensorNum is a continuous sensor
+	 * @throws NoDeviceConnectedException
+	 * @throws SensorNotDefinedException
+	 */
+	public static void getMetadata(DeviceSession session, int sensorNum, HashMap<String, String> metadata, 
+			DiscretePacketInfo discretePacketInfo, ContinuousStreamInfo continuousStreamInfo) 
+					throws NoDeviceConnectedException, SensorNotDefinedException
 	{
 		if(sensorNum < Sensor.NUM_DISCRETE)
 		{
-			AALayerI.getMetadata(sensorNum, 
+			AALayerI.getMetadata(session, sensorNum, 
 				metadata, 
 				String.valueOf(discretePacketInfo.getSensorIdentifier(sensorNum)), 
 				String.valueOf(discretePacketInfo.getSensorDataDelimiter()), 
@@ -892,7 +1722,7 @@ public class AALayerII {
 		}
 		else
 		{
-			AALayerI.getMetadata(sensorNum, 
+			AALayerI.getMetadata(session, sensorNum, 
 					metadata, 
 					String.valueOf(continuousStreamInfo.getSensorIdentifier()), 
 					String.valueOf(continuousStreamInfo.getSensorDataDelimiter()), 
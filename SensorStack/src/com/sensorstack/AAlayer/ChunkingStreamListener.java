@@ -0,0 +1,91 @@
+package com.sensorstack.AAlayer;
+
+import com.sensorstack.devicelayer.BinaryFrame;
+import com.sensorstack.devicelayer.Frame;
+import com.sensorstack.devicelayer.StreamListener;
+import com.sensorstack.sensors.RangeOfValues;
+
+/**
+ * Parses the frames of a continuous stream, one sample per text frame or a block of samples per binary frame,
+ * drops values outside the hardware range and hands the rest on in chunks of fixed size. The chunk and frame
+ * buffers are reused, so a stream of any length is processed in constant memory.
+ * Delta compressed blocks are decoded against the last sample of the previous block; after a lost or corrupt
+ * block, blocks are dropped until the next keyframe.
+ */
+class ChunkingStreamListener implements StreamListener {
+	private final float chunk[];
+	private int count = 0;
+	private final float lower;
+	private final float upper;
+	private final SampleSink sink;
+	private final BinaryFrame binary = new BinaryFrame();
+	private final int deltas[] = new int[BinaryFrame.MAX_PAYLOAD];
+	private boolean synced = false;		//previous delta block received
+	private int sequence;				//sequence number expected next
+	private int previous;				//last sample of the previous delta block
+
+	ChunkingStreamListener(int chunkSize, RangeOfValues<Float> range, SampleSink sink) {
+		this.chunk = new float[chunkSize];
+		this.lower = range.getLowerLimit();
+		this.upper = range.getUpperLimit();
+		this.sink = sink;
+	}
+
+	public void onFrame(Frame frame) {
+		if(BinaryFrame.isBinary(frame))
+		{
+			if(!binary.decode(frame))
+			{
+				synced = false;	//corrupt block
+				return;
+			}
+			if(binary.getType() == BinaryFrame.TYPE_SAMPLES_INT16)
+			{
+				for(int i=0;i<binary.getLength()/2;i++)
+					add(binary.getInt16(i) / BinaryFrame.INT16_SCALE);
+			}
+			else if(binary.getType() == BinaryFrame.TYPE_SAMPLES_FLOAT32)
+			{
+				for(int i=0;i<binary.getLength()/4;i++)
+					add(binary.getFloat(i));
+			}
+			else if(binary.getType() == BinaryFrame.TYPE_SAMPLES_KEY || binary.getType() == BinaryFrame.TYPE_SAMPLES_DELTA)
+				addDeltas();
+			return;
+		}
+		add(DiscretePacketParser.parseFloat(frame, 0, frame.length()));
+	}
+
+	private void addDeltas() {
+		int n = -1;
+		if(binary.getType() == BinaryFrame.TYPE_SAMPLES_KEY || (synced && binary.getSequence() == sequence))
+			n = binary.getDeltaSamples(previous, deltas);
+		synced = (n >= 0);
+		if(!synced)
+			return;
+		sequence = (binary.getSequence() + 1) & 0xff;
+		if(n > 0)
+			previous = deltas[n-1];
+		for(int i=0;i<n;i++)
+			add(deltas[i] / BinaryFrame.INT16_SCALE);
+	}
+
+	private void add(float value) {
+		if(!(value<=upper && value>=lower))		//also true for lines which are not a number
+			return;
+		chunk[count++] = value;
+		if(count == chunk.length)
+		{
+			sink.onSamples(chunk, count);
+			count = 0;
+		}
+	}
+
+	public void onEnd(boolean acknowledged) {
+		if(count > 0)
+			sink.onSamples(chunk, count);
+		count = 0;
+		synced = false;
+		sink.onEnd(acknowledged);
+	}
+}
@@ -0,0 +1,144 @@
+package com.sensorstack.AAlayer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sensorstack.devicelayer.ContinuousStream;
+
+/**
+ * Flow control between a continuous stream and a consumer slower than the hardware. The consumer grants credits,
+ * one per sample it is ready to take, and the sink hands on at most as many samples as it holds credits:
+ * <pre>
+ * SampleRing ring = new SampleRing(4096);
+ * CreditSink credits = new CreditSink(ring, CreditSink.PAUSE, 250);
+ * credits.grant(4096);
+ * ContinuousStream stream = AALayerII.streamECG(32, credits);
+ * ...
+ * int n = ring.read(buffer, 0, buffer.length);
+ * credits.grant(n);		//room for as many samples as were taken out
+ * </pre>
+ * When the credits run short the sink either drops the samples it has no credit for ({@link #DROP}), or pauses the
+ * hardware ({@link #PAUSE}) once the credits fall to the reserve and resumes it when the consumer has granted
+ * twice the reserve. The reserve should cover the samples still arriving while the pause request travels,
+ * about the sampling rate times the round trip time of the link; samples beyond it are dropped as well.
+ * Either way the memory used stays bounded by the credits granted, and every sample dropped is counted, see
+ * {@link #getDropped()}. Streams started by {@link AALayerII#streamECG(int, SampleSink)} are attached to the sink
+ * for pausing automatically.
+ */
+public class CreditSink implements SampleSink {
+	/**
+	 * Policy: keep the hardware streaming and drop samples without credit
+	 */
+	public static final int DROP = 0;
+	/**
+	 * Policy: pause the hardware while credits are short
+	 */
+	public static final int PAUSE = 1;
+
+	private final SampleSink sink;
+	private final int policy;
+	private final int reserve;
+	private final AtomicLong credits = new AtomicLong(0);	//granted by the consumer, taken by the producer
+	private volatile long dropped = 0;		//only written by the producer
+	private volatile long pauses = 0;			//only written under the lock
+	private volatile ContinuousStream stream = null;
+	private boolean pausing = false;		//guarded by this
+
+	/**
+	 * Constructor to set the policy
+	 * @param sink Receives the samples credits have been granted for
+	 * @param policy {@link #DROP} or {@link #PAUSE}
+	 * @param reserve Credits left when the hardware is paused; not used for DROP
+	 */
+	public CreditSink(SampleSink sink, int policy, int reserve) {
+		if(policy != DROP && policy != PAUSE)
+			throw new IllegalArgumentException("Unknown policy " + policy);
+		this.sink = sink;
+		this.policy = policy;
+		this.reserve = Math.max(reserve, 0);
+	}
+
+	/*
+	 * Sets the stream to pause, once it has been started
+	 */
+	void attach(ContinuousStream stream) {
+		this.stream = stream;
+		if(policy == PAUSE && credits.get() <= reserve)
+			pause();
+	}
+
+	/**
+	 * Consumer side: allows the specified number of further samples to be handed on
+	 * @param samples Number of samples the consumer is ready to take
+	 */
+	public void grant(int samples) {
+		if(samples <= 0)
+			return;
+		long c = credits.addAndGet(samples);
+		if(policy == PAUSE && c > 2L * reserve)
+			resume();
+	}
+
+	/**
+	 * Producer side: hands on the samples credits are held for and drops the rest
+	 */
+	public void onSamples(float samples[], int length) {
+		long c = credits.get();
+		int n = (int) Math.min(length, c);
+		if(n < length)
+			dropped += length - n;
+		if(n > 0)
+		{
+			//only the producer takes credits, so they cannot fall below what was read
+			c = credits.addAndGet(-n);
+			sink.onSamples(samples, n);
+		}
+		if(policy == PAUSE && c <= reserve)
+			pause();
+	}
+
+	public void onEnd(boolean acknowledged) {
+		sink.onEnd(acknowledged);
+	}
+
+	/**
+	 * Returns the number of samples which may still be handed on
+	 */
+	public long getCredits() {
+		return credits.get();
+	}
+
+	/**
+	 * Returns the number of samples dropped for lack of credits
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Returns the number of times the hardware has been paused
+	 */
+	public long getPauseCount() {
+		return pauses;
+	}
+
+	private synchronized void pause() {
+		ContinuousStream s = stream;
+		//checked again under the lock, as the consumer may have granted credits meanwhile and found nothing to resume
+		if(pausing || s == null || credits.get() > reserve)
+			return;
+		if(s.pause())
+		{
+			pausing = true;
+			pauses++;
+		}
+	}
+
+	private synchronized void resume() {
+		ContinuousStream s = stream;
+		//checked again under the lock, as the producer may have taken credits meanwhile
+		if(!pausing || s == null || credits.get() <= 2L * reserve)
+			return;
+		if(s.resume())
+			pausing = false;
+	}
+}
@@ -0,0 +1,439 @@
+package com.sensorstack.AAlayer;
+
+import com.sensorstack.PacketSchema;
+import com.sensorstack.devicelayer.BinaryFrame;
+import com.sensorstack.sensors.BloodPressure;
+import com.sensorstack.sensors.DataNotCollectedException;
+import com.sensorstack.sensors.GSR;
+import com.sensorstack.sensors.Oximeter;
+import com.sensorstack.sensors.PulseRate;
+import com.sensorstack.sensors.RangeOfValues;
+import com.sensorstack.sensors.Sensor;
+import com.sensorstack.sensors.SensorData;
+import com.sensorstack.sensors.SensorDataRange;
+import com.sensorstack.sensors.SensorSeries;
+import com.sensorstack.sensors.SensorNotDefinedException;
+import com.sensorstack.sensors.Temperature;
+
+/**
+ * Unpacks a discrete response packet in a single walk over its characters.
+ * Packet design: SensorId|dataDelimiter|value[|multiValueDelimiter|value]|sensorDelimiter|SensorId|...
+ * The packet is walked from its end, so the latest valid value of a sensor is found first and earlier values of
+ * that sensor are skipped. Numbers are parsed in place; apart from the sensor objects handed to SensorData
+ * only a scratch array is allocated, and the delimiters are matched literally rather than as regular expressions.
+ * Delimiters, identifiers and the number and type of the values of each sensor are taken from a
+ * {@link PacketSchema}, in which a character is looked up without comparing it with every identifier.
+ * Binary responses ({@link BinaryFrame}) are recognised by their first byte and read without any number parsing.
+ */
+final class DiscretePacketParser {
+	private static final int INVALID = Integer.MIN_VALUE;
+
+	private DiscretePacketParser() {
+	}
+
+	/**
+	 * Fills sd with the valid values of the requested sensors found in the response and clears the
+	 * requirement of every sensor collected.
+	 * @param request Requirement of each discrete sensor, cleared for the sensors collected
+	 * @throws DataNotCollectedException if a requested sensor has no identifier
+	 */
+	static void parse(SensorData sd, String response, PacketSchema schema, boolean request[], SensorDataRange range)
+			throws DataNotCollectedException
+	{
+		for(int i=0;i<Sensor.NUM_DISCRETE;i++)
+			if(request[i] && !schema.isDefined(i))
+				throw new DataNotCollectedException("Sensor Identifier is not defined for "+Sensor.sensorName(i)+" sensor");
+		if(BinaryFrame.isBinary(response))
+		{
+			parseBinary(sd, response, request, range);
+			return;
+		}
+
+		char dataDelimiter = schema.getDataDelimiter();
+		float values[] = new float[2];
+		for(int j=response.length()-2;j>=0;j--)
+		{
+			if(response.charAt(j+1) != dataDelimiter)
+				continue;
+			int sensors = schema.getSensors(response.charAt(j));
+			for(int i=0;sensors!=0;i++,sensors>>>=1)
+			{
+				if((sensors & 1) == 0 || !request[i])
+					continue;
+				if(extract(response, j, schema, i, values) && store(sd, i, values[0], values[1], range))
+					request[i] = false;
+			}
+		}
+	}
+
+	/**
+	 * Finds the last value of a sensor before a position of the response, for walking its values from the end.
+	 * The values are parsed as the schema defines them for the sensor but not validated. A binary response holds one
+	 * value per sensor.
+	 * @param end Position to search back from; the length of the response to start with
+	 * @param values Filled with the values of the sensor, see {@link PacketSchema#getArity(int)}
+	 * @return position of the sensor identifier of the value, from which the next search starts; -1 if the
+	 * response holds no further value of the sensor
+	 */
+	static int previousValue(String response, PacketSchema schema, int sensor, int end, float values[])
+	{
+		if(BinaryFrame.isBinary(response))
+		{
+			float binary[] = (end == response.length()) ? binaryValues(response, sensor) : null;
+			if(binary == null)
+				return -1;
+			System.arraycopy(binary, 0, values, 0, binary.length);
+			return 0;
+		}
+		char id = schema.getIdentifier(sensor);
+		if(id == '\0')
+			return -1;
+		char dataDelimiter = schema.getDataDelimiter();
+		for(int j=Math.min(end, response.length()-1)-1;j>=0;j--)
+		{
+			if(response.charAt(j) == id && response.charAt(j+1) == dataDelimiter && extract(response, j, schema, sensor, values))
+				return j;
+		}
+		return -1;
+	}
+
+	/*
+	 * Parses the values of a sensor whose identifier is at position j. A value ends at the next sensor delimiter
+	 * or at the next occurrence of its own sensor identifier.
+	 */
+	private static boolean extract(String s, int j, PacketSchema schema, int sensor, float values[])
+	{
+		char id = s.charAt(j);
+		char dataDelimiter = schema.getDataDelimiter();
+		char sensorDelimiter = schema.getSensorDelimiter();
+		int start = j + 2;
+		int n = s.length();
+		int end = start;
+		while(end < n)
+		{
+			char c = s.charAt(end);
+			if(c == sensorDelimiter || (c == id && end+1 < n && s.charAt(end+1) == dataDelimiter))
+				break;
+			end++;
+		}
+		int type = PacketSchema.getType(sensor);
+		if(PacketSchema.getArity(sensor) == 1)
+		{
+			values[0] = parseValue(s, start, end, type);
+			values[1] = 0;
+			return !Float.isNaN(values[0]);
+		}
+		char multiValueDelimiter = schema.getMultiValueDelimiter();
+		int split = indexOf(s, multiValueDelimiter, start, end);
+		if(split < 0)
+			return false;
+		values[0] = parseValue(s, start, split, type);
+		values[1] = parseValue(s, split + 1, fieldEnd(s, multiValueDelimiter, split + 1, end), type);
+		return !Float.isNaN(values[0]) && !Float.isNaN(values[1]);
+	}
+
+	private static float parseValue(String s, int start, int end, int type)
+	{
+		if(type == PacketSchema.FLOAT)
+			return parseFloat(s, start, end);
+		int value = parseInt(s, start, end);
+		return (value == INVALID) ? Float.NaN : value;
+	}
+
+	/*
+	 * Validates the values of a sensor and sets them in sd; second is only used by two-valued sensors
+	 */
+	private static boolean store(SensorData sd, int sensor, float first, float second, SensorDataRange range)
+	{
+		if(!isValid(sensor, first, second, range))
+			return false;
+		switch(sensor)
+		{
+			case Sensor.TEMPERATURE:
+			{
+				Temperature temp = new Temperature();
+				temp.setValue(first);
+				try {
+					sd.setTemperature(temp);
+				} catch (SensorNotDefinedException e) {
+					e.printStackTrace();
+					return false;
+				}
+				return true;
+			}
+			case Sensor.BLOODPRESSURE:
+			{
+				BloodPressure bp = new BloodPressure();
+				bp.setSystolicValue(Math.round(first));
+				bp.setDiastolicValue(Math.round(second));
+				sd.setBloodPressure(bp);
+				return true;
+			}
+			case Sensor.PULSERATE:
+			{
+				PulseRate pr = new PulseRate();
+				pr.setValue(Math.round(first));
+				sd.setPulseRate(pr);
+				return true;
+			}
+			case Sensor.OXIMETER:
+			{
+				Oximeter oxi = new Oximeter();
+				oxi.setValue(first);
+				sd.setOximeter(oxi);
+				return true;
+			}
+			case Sensor.GSR:
+			{
+				GSR gsr = new GSR();
+				gsr.setConductanceValue(first);
+				gsr.setResistanceValue(second);
+				sd.setGsr(gsr);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Returns true if the values of a sensor are within its range; values of integer sensors are rounded first
+	 */
+	private static boolean isValid(int sensor, float first, float second, SensorDataRange range)
+	{
+		switch(sensor)
+		{
+			case Sensor.TEMPERATURE:
+				return isValid(first, range.getTemperatureRange());
+			case Sensor.BLOODPRESSURE:
+				return !Float.isNaN(first) && !Float.isNaN(second) && isValid(Math.round(first), range.getSystolicRange())
+						&& isValid(Math.round(second), range.getDiastolicRange());
+			case Sensor.PULSERATE:
+				return !Float.isNaN(first) && isValid(Math.round(first), range.getPulseRateRange());
+			case Sensor.OXIMETER:
+				return isValid(first, range.getOximeterRange());
+			case Sensor.GSR:
+				return isValid(first, range.getGsrConductanceRange()) && isValid(second, range.getGsrResistanceRange());
+		}
+		return false;
+	}
+
+	/**
+	 * Adds every valid reading of the requested sensors found in a batch response to their series, in the order
+	 * of the response, and clears the requirement of every sensor with at least one reading.
+	 * A binary response holds one reading per sensor.
+	 * @param series Series of each discrete sensor, by sensor; only those requested are used
+	 * @param request Requirement of each discrete sensor, cleared for the sensors collected
+	 * @throws DataNotCollectedException if a requested sensor has no identifier
+	 */
+	static void parseSeries(SensorSeries series[], String response, PacketSchema schema, boolean request[], 
+			SensorDataRange range) throws DataNotCollectedException
+	{
+		for(int i=0;i<Sensor.NUM_DISCRETE;i++)
+			if(request[i] && !schema.isDefined(i))
+				throw new DataNotCollectedException("Sensor Identifier is not defined for "+Sensor.sensorName(i)+" sensor");
+		int collected = 0;		//bit mask of the sensors given a reading
+		if(BinaryFrame.isBinary(response))
+		{
+			for(int i=0;i<Sensor.NUM_DISCRETE;i++)
+			{
+				float values[] = request[i] ? binaryValues(response, i) : null;
+				if(values != null && isValid(i, values[0], (values.length > 1) ? values[1] : 0, range))
+				{
+					series[i].add(values[0], (values.length > 1) ? values[1] : 0);
+					collected |= 1 << i;
+				}
+			}
+		}
+		else
+		{
+			char dataDelimiter = schema.getDataDelimiter();
+			float values[] = new float[2];
+			int n = response.length();
+			for(int j=0;j+1<n;j++)
+			{
+				if(response.charAt(j+1) != dataDelimiter)
+					continue;
+				int sensors = schema.getSensors(response.charAt(j));
+				for(int i=0;sensors!=0;i++,sensors>>>=1)
+				{
+					if((sensors & 1) == 0 || !request[i])
+						continue;
+					if(extract(response, j, schema, i, values) && isValid(i, values[0], values[1], range))
+					{
+						series[i].add(values[0], values[1]);
+						collected |= 1 << i;
+					}
+				}
+			}
+		}
+		long now = System.currentTimeMillis();
+		for(int i=0;i<Sensor.NUM_DISCRETE;i++)
+		{
+			if((collected & (1 << i)) == 0)
+				continue;
+			series[i].setTime(now);
+			request[i] = false;
+		}
+	}
+
+	/*
+	 * Binary form of parse(): the values of the sensors are read from a TYPE_VALUES frame
+	 */
+	private static void parseBinary(SensorData sd, String response, boolean request[], SensorDataRange range)
+	{
+		BinaryFrame frame = new BinaryFrame();
+		if(!frame.decode(response) || frame.getType() != BinaryFrame.TYPE_VALUES)
+			return;			//corrupt, the sensors stay required and are requested again
+		int index = 0;
+		for(int i=0;i<Sensor.NUM_DISCRETE;i++)
+		{
+			if((frame.getSensor() & (1 << i)) == 0)
+				continue;
+			int n = BinaryFrame.getValueCount(i);
+			if((index + n) * 4 > frame.getLength())
+				return;
+			if(request[i] && store(sd, i, frame.getFloat(index), (n > 1) ? frame.getFloat(index + 1) : 0, range))
+				request[i] = false;
+			index += n;
+		}
+	}
+
+	/**
+	 * Returns the values of one sensor in a binary discrete response
+	 * @return the values, see {@link BinaryFrame#getValueCount(int)}; null if the frame is corrupt or does not
+	 * hold the sensor
+	 */
+	static float[] binaryValues(String response, int sensor)
+	{
+		BinaryFrame frame = new BinaryFrame();
+		if(!frame.decode(response) || frame.getType() != BinaryFrame.TYPE_VALUES
+				|| (frame.getSensor() & (1 << sensor)) == 0)
+			return null;
+		int index = 0;
+		for(int i=0;i<sensor;i++)
+			if((frame.getSensor() & (1 << i)) != 0)
+				index += BinaryFrame.getValueCount(i);
+		float values[] = new float[BinaryFrame.getValueCount(sensor)];
+		if((index + values.length) * 4 > frame.getLength())
+			return null;
+		for(int k=0;k<values.length;k++)
+			values[k] = frame.getFloat(index + k);
+		return values;
+	}
+
+	private static int indexOf(String s, char c, int start, int end) {
+		for(int k=start;k<end;k++)
+			if(s.charAt(k) == c)
+				return k;
+		return -1;
+	}
+
+	private static int fieldEnd(String s, char delimiter, int start, int end) {
+		int k = indexOf(s, delimiter, start, end);
+		return (k < 0) ? end : k;
+	}
+
+	/**
+	 * Parses a decimal integer as Integer.parseInt() does
+	 * @return the value, INVALID if the characters are not an int or the value is Integer.MIN_VALUE
+	 */
+	static int parseInt(CharSequence s, int start, int end) {
+		if(start >= end)
+			return INVALID;
+		boolean negative = false;
+		char c = s.charAt(start);
+		if(c == '-' || c == '+')
+		{
+			negative = (c == '-');
+			if(++start == end)
+				return INVALID;
+		}
+		long value = 0;
+		for(int k=start;k<end;k++)
+		{
+			int digit = s.charAt(k) - '0';
+			if(digit < 0 || digit > 9)
+				return INVALID;
+			value = value*10 + digit;
+			if(value > Integer.MAX_VALUE)
+				return INVALID;
+		}
+		return (int) (negative ? -value : value);
+	}
+
+	/**
+	 * Parses a decimal number with optional fraction and exponent, surrounded by optional white space,
+	 * as sent by the hardware
+	 * @return the value, NaN if the characters are not a number
+	 */
+	static float parseFloat(CharSequence s, int start, int end) {
+		while(start < end && s.charAt(start) <= ' ')
+			start++;
+		while(end > start && s.charAt(end-1) <= ' ')
+			end--;
+		if(start >= end)
+			return Float.NaN;
+		int k = start;
+		boolean negative = false;
+		char c = s.charAt(k);
+		if(c == '-' || c == '+')
+		{
+			negative = (c == '-');
+			k++;
+		}
+		long mantissa = 0;
+		int scale = 0;			//power of ten applied to the mantissa
+		int digits = 0;
+		boolean point = false;
+		for(;k<end;k++)
+		{
+			c = s.charAt(k);
+			if(c >= '0' && c <= '9')
+			{
+				if(mantissa < 100000000000000000L)
+				{
+					mantissa = mantissa*10 + (c - '0');
+					if(point)
+						scale--;
+				}
+				else if(!point)
+					scale++;		//digits beyond long precision
+				digits++;
+			}
+			else if(c == '.' && !point)
+				point = true;
+			else
+				break;
+		}
+		if(digits == 0)
+			return Float.NaN;
+		if(k < end && (s.charAt(k) == 'e' || s.charAt(k) == 'E'))
+		{
+			int exponent = parseInt(s, k+1, end);
+			if(exponent == INVALID)
+				return Float.NaN;
+			scale += Math.max(-400, Math.min(400, exponent));
+			k = end;
+		}
+		if(k < end && (s.charAt(k) == 'f' || s.charAt(k) == 'F' || s.charAt(k) == 'd' || s.charAt(k) == 'D'))
+			k++;
+		if(k != end)
+			return Float.NaN;
+		double value = mantissa;
+		if(scale < 0)
+			value = value / Math.pow(10, -scale);
+		else if(scale > 0)
+			value = value * Math.pow(10, scale);
+		return (float) (negative ? -value : value);
+	}
+
+	private static boolean isValid(float value, RangeOfValues<Float> r)
+	{
+		return value<=r.getUpperLimit() && value>=r.getLowerLimit();
+	}
+
+	private static boolean isValid(int value, RangeOfValues<Integer> r)
+	{
+		return value<=r.getUpperLimit() && value>=r.getLowerLimit();
+	}
+}
@@ -0,0 +1,255 @@
+package com.sensorstack.AAlayer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.sensorstack.devicelayer.Deadline;
+import com.sensorstack.devicelayer.DeviceSession;
+import com.sensorstack.devicelayer.NoDeviceConnectedException;
+import com.sensorstack.devicelayer.ResponseListener;
+
+/**
+ * Merges the requests for single discrete sensors made on a session within a short window into one request byte.
+ * The first request of a window opens a flight, which the requests with the same timeout arriving until the window
+ * closes join, also for the same sensor; the flight then sends one request byte with the bits of all its sensors
+ * and hands the response packet to every caller, each unpacking its own sensor from it. A request with another
+ * timeout is sent on its own. Concurrent reads of several sensors thus take one round trip on the link instead of
+ * one each.
+ * A caller whose deadline is cancelled leaves its flight at once and gets an empty packet; a flight all of whose
+ * callers left is withdrawn before it is sent, or gives up its request on the link, as a single request does.
+ * The window is set per session and is 0, sending every request on its own, until set.
+ */
+final class RequestCoalescer {
+	/**
+	 * Window (in milliseconds) of a session until set; requests are not merged
+	 */
+	static final int DEFAULT_WINDOW = 0;
+	private static final int TIMER_KEEP_ALIVE = 60;		//seconds an idle timer thread is kept
+
+	private static final Map<DeviceSession, RequestCoalescer> coalescers = new WeakHashMap<DeviceSession, RequestCoalescer>();
+
+	private final DeviceSession session;
+	private volatile int window = DEFAULT_WINDOW;
+	private ScheduledThreadPoolExecutor timer = null;	//sends the flights of the session, guarded by this
+	private Flight open = null;		//flight accepting requests, guarded by this
+
+	private RequestCoalescer(DeviceSession session) {
+		this.session = session;
+	}
+
+	/**
+	 * Returns the coalescer of a session
+	 */
+	static RequestCoalescer get(DeviceSession session) {
+		synchronized(coalescers){
+			RequestCoalescer c = coalescers.get(session);
+			if(c == null)
+			{
+				c = new RequestCoalescer(session);
+				coalescers.put(session, c);
+			}
+			return c;
+		}
+	}
+
+	int getWindow() {
+		return window;
+	}
+
+	void setWindow(int window) {
+		this.window = Math.max(window, 0);
+	}
+
+	/**
+	 * Requests a single discrete sensor and waits for the response packet
+	 * @param sensorNum Sensor as defined in the Sensor class
+	 * @param timeout Timeout period in milliseconds
+	 * @return Response packet, which may hold further sensors; empty if nothing was received within the timeout
+	 * @throws NoDeviceConnectedException
+	 */
+	String request(int sensorNum, int timeout) throws NoDeviceConnectedException {
+		int w = window;
+		if(w <= 0)
+			return session.getDiscretePacket((byte) (1 << sensorNum), timeout);
+		final SensorFuture<String> response = new SensorFuture<String>();
+		request(sensorNum, timeout, new ResponseListener() {
+			public void onResponse(String packet) {
+				response.set(packet);
+			}
+		}, null);
+		try {
+			//the flight answers within the window and its timeout, which is ours; the bound only guards the wait
+			return response.get(2 * ((long) timeout + w), TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			e.printStackTrace();
+		} catch (TimeoutException e) {
+			e.printStackTrace();
+		}
+		return "";
+	}
+
+	/**
+	 * Requests a single discrete sensor without waiting for the response packet
+	 * @param sensorNum Sensor as defined in the Sensor class
+	 * @param timeout Timeout period in milliseconds
+	 * @param listener Receives the response packet, which may hold further sensors
+	 * @param deadline Deadline of the request, see {@link Deadline}; none if null
+	 * @throws NoDeviceConnectedException
+	 */
+	void request(int sensorNum, int timeout, ResponseListener listener, Deadline deadline) throws NoDeviceConnectedException {
+		int w = window;
+		if(deadline != null)
+			timeout = deadline.limit(timeout);
+		if(w <= 0 || timeout <= 0)
+		{
+			session.getDiscretePacket((byte) (1 << sensorNum), timeout, listener, deadline);
+			return;
+		}
+		if(!session.isConnected())
+			throw new NoDeviceConnectedException("No Device Connected");
+		boolean cancelled;
+		synchronized(this){
+			if(open == null)
+			{
+				open = new Flight(timeout);
+				timer().schedule(open, w, TimeUnit.MILLISECONDS);
+			}
+			if(open.timeout != timeout)
+				cancelled = false;
+			else
+			{
+				Caller caller = new Caller(sensorNum, listener, deadline);
+				cancelled = deadline != null && !deadline.register(caller);
+				if(!cancelled)
+				{
+					open.join(caller);
+					return;
+				}
+			}
+		}
+		if(cancelled)
+			listener.onResponse("");		//cancelled meanwhile
+		else
+			session.getDiscretePacket((byte) (1 << sensorNum), timeout, listener, deadline);
+	}
+
+	/*
+	 * Returns the timer of the session, whose thread exits when idle; must be called holding this
+	 */
+	private ScheduledThreadPoolExecutor timer() {
+		if(timer == null)
+		{
+			timer = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "RequestCoalescer-" + session.getName());
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			timer.setKeepAliveTime(TIMER_KEEP_ALIVE, TimeUnit.SECONDS);
+			timer.allowCoreThreadTimeOut(true);
+		}
+		return timer;
+	}
+
+	/*
+	 * Request of one caller in a flight; run when the caller's deadline is cancelled
+	 */
+	private class Caller implements Runnable {
+		private final int sensorNum;
+		private final ResponseListener listener;
+		private final Deadline deadline;		//null if the caller cannot cancel
+		private Flight flight;					//guarded by the coalescer
+		private boolean done = false;			//guarded by the coalescer
+
+		Caller(int sensorNum, ResponseListener listener, Deadline deadline) {
+			this.sensorNum = sensorNum;
+			this.listener = listener;
+			this.deadline = deadline;
+		}
+
+		public void run() {
+			Deadline abandon;
+			synchronized(RequestCoalescer.this){
+				if(done)
+					return;
+				done = true;
+				abandon = flight.leave(this);
+			}
+			if(abandon != null)
+				abandon.cancel();
+			listener.onResponse("");
+		}
+	}
+
+	/*
+	 * Requests merged into one request byte; callers join while it is open and leave when cancelled
+	 */
+	private class Flight implements Runnable, ResponseListener {
+		private final int timeout;
+		private final List<Caller> callers = new ArrayList<Caller>();	//guarded by the coalescer
+		private final Deadline deadline = Deadline.none();				//cancelled once all callers have left
+		private boolean sent = false;									//guarded by the coalescer
+
+		Flight(int timeout) {
+			this.timeout = timeout;
+		}
+
+		void join(Caller caller) {
+			callers.add(caller);
+			caller.flight = this;
+		}
+
+		/*
+		 * Removes a cancelled caller; returns the deadline giving up the request if it was sent and no caller is left
+		 */
+		Deadline leave(Caller caller) {
+			callers.remove(caller);
+			return (sent && callers.isEmpty()) ? deadline : null;
+		}
+
+		public void run() {
+			int sensors = 0;
+			synchronized(RequestCoalescer.this){
+				if(open == this)
+					open = null;
+				sent = true;
+				for(int i=0;i<callers.size();i++)
+					sensors |= 1 << callers.get(i).sensorNum;
+			}
+			if(sensors == 0)
+				return;			//every caller left within the window
+			try {
+				session.getDiscretePacket((byte) sensors, timeout, this, deadline);
+			} catch (NoDeviceConnectedException e) {
+				onResponse("");		//disconnected within the window
+			}
+		}
+
+		public void onResponse(String packet) {
+			List<Caller> answered;
+			synchronized(RequestCoalescer.this){
+				answered = new ArrayList<Caller>(callers);
+				callers.clear();
+				for(int i=0;i<answered.size();i++)
+					answered.get(i).done = true;
+			}
+			for(int i=0;i<answered.size();i++)
+			{
+				Caller caller = answered.get(i);
+				if(caller.deadline != null)
+					caller.deadline.unregister(caller);
+				caller.listener.onResponse(packet);
+			}
+		}
+	}
+}
@@ -0,0 +1,181 @@
+package com.sensorstack.AAlayer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single-producer/single-consumer ring of samples between the thread reading the sensor hardware and one
+ * consumer thread, e.g. a UI thread drawing the ECG waveform:
+ * <pre>
+ * SampleRing ring = new SampleRing(4096);
+ * ContinuousStream stream = AALayerII.streamECG(32, ring);
+ * ...
+ * int n = ring.read(buffer, 0, buffer.length);	//whatever has arrived, never blocks
+ * </pre>
+ * The producer and the consumer each own one sequence counter and only publish it to the other side, so the
+ * consumer reads concurrently with acquisition and neither side takes a lock. The producer never waits: when
+ * the consumer falls behind and the ring is full, new samples are dropped and counted, see {@link #getDropped()}.
+ */
+public class SampleRing implements SampleSink {
+	/**
+	 * Default capacity in samples; 16 s of ECG at 250 Hz
+	 */
+	public static final int DEFAULT_CAPACITY = 4096;
+
+	private final float ring[];
+	private final int mask;
+	private final AtomicLong head = new AtomicLong(0);	//samples written, only advanced by the producer
+	private final AtomicLong tail = new AtomicLong(0);	//samples read, only advanced by the consumer
+	private long cachedTail = 0;		//producer's last view of tail
+	private long cachedHead = 0;		//consumer's last view of head
+	private volatile long dropped = 0;	//only written by the producer
+	private volatile boolean ended = false;
+	private volatile boolean acknowledged = false;
+	private volatile Thread waiter = null;
+
+	/**
+	 * Constructor for a ring of {@link #DEFAULT_CAPACITY} samples
+	 */
+	public SampleRing() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor to set the capacity
+	 * @param capacity Minimum number of samples held; rounded up to a power of two
+	 */
+	public SampleRing(int capacity) {
+		int size = 1;
+		while(size < capacity)
+			size <<= 1;
+		ring = new float[size];
+		mask = size - 1;
+	}
+
+	/**
+	 * Producer side: appends samples, dropping those which do not fit
+	 */
+	public void onSamples(float samples[], int length) {
+		long h = head.get();
+		int free = ring.length - (int) (h - cachedTail);
+		if(free < length)
+		{
+			cachedTail = tail.get();
+			free = ring.length - (int) (h - cachedTail);
+		}
+		int n = Math.min(length, free);
+		if(n < length)
+			dropped += length - n;
+		int index = (int) (h & mask);
+		int first = Math.min(n, ring.length - index);
+		System.arraycopy(samples, 0, ring, index, first);
+		System.arraycopy(samples, first, ring, 0, n - first);
+		//volatile store: publishes the samples, and is ordered before the check for a parked consumer
+		head.set(h + n);
+		Thread w = waiter;
+		if(w != null)
+			LockSupport.unpark(w);
+	}
+
+	/**
+	 * Producer side: marks the end of the stream
+	 */
+	public void onEnd(boolean acknowledged) {
+		this.acknowledged = acknowledged;
+		ended = true;
+		Thread w = waiter;
+		if(w != null)
+			LockSupport.unpark(w);
+	}
+
+	/**
+	 * Consumer side: copies the samples available, without waiting
+	 * @param dest Receives the samples
+	 * @param offset Index in dest of the first sample
+	 * @param length Maximum number of samples to copy
+	 * @return Number of samples copied, 0 if none are available
+	 */
+	public int read(float dest[], int offset, int length) {
+		long t = tail.get();
+		int available = (int) (cachedHead - t);
+		if(available < length)
+		{
+			cachedHead = head.get();
+			available = (int) (cachedHead - t);
+		}
+		int n = Math.min(length, available);
+		if(n <= 0)
+			return 0;
+		int index = (int) (t & mask);
+		int first = Math.min(n, ring.length - index);
+		System.arraycopy(ring, index, dest, offset, first);
+		System.arraycopy(ring, 0, dest, offset + first, n - first);
+		tail.lazySet(t + n);		//ordered store, the producer only needs to see it eventually
+		return n;
+	}
+
+	/**
+	 * Consumer side: copies the samples available, waiting up to the timeout if there are none
+	 * @param dest Receives the samples
+	 * @param offset Index in dest of the first sample
+	 * @param length Maximum number of samples to copy
+	 * @param timeout Maximum time to wait
+	 * @param unit Unit of timeout
+	 * @return Number of samples copied, 0 on timeout, -1 if the stream has ended and all samples have been read
+	 * @throws InterruptedException if the consumer thread is interrupted while waiting
+	 */
+	public int read(float dest[], int offset, int length, long timeout, TimeUnit unit) throws InterruptedException {
+		long deadline = System.nanoTime() + unit.toNanos(timeout);
+		while(true)
+		{
+			int n = read(dest, offset, length);
+			if(n > 0)
+				return n;
+			if(ended)
+			{
+				//samples published before the end are visible once ended is
+				n = read(dest, offset, length);
+				return (n > 0) ? n : -1;
+			}
+			long remaining = deadline - System.nanoTime();
+			if(remaining <= 0)
+				return 0;
+			waiter = Thread.currentThread();
+			//checked again after announcing the wait, so that a sample published meanwhile is not missed
+			if(head.get() == tail.get() && !ended)
+				LockSupport.parkNanos(this, remaining);
+			waiter = null;
+			if(Thread.interrupted())
+				throw new InterruptedException();
+		}
+	}
+
+	/**
+	 * Returns the number of samples waiting to be read
+	 */
+	public int available() {
+		return (int) (head.get() - tail.get());
+	}
+
+	/**
+	 * Returns the number of samples dropped because the ring was full
+	 */
+	public long getDropped() {
+		return dropped;
+	}
+
+	/**
+	 * Returns true once the stream has ended; samples may still be waiting to be read
+	 */
+	public boolean isEnded() {
+		return ended;
+	}
+
+	/**
+	 * Returns true if the stream ended with the stop ack from the hardware
+	 */
+	public boolean isAcknowledged() {
+		return acknowledged;
+	}
+}
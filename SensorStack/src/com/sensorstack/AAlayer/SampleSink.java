@@ -0,0 +1,23 @@
+package com.sensorstack.AAlayer;
+
+/**
+ * Receives the samples of a continuous data sensor in chunks while the stream is running,
+ * see {@link AALayerII#streamECG(int, SampleSink)}.
+ * Both methods are called on the thread reading the sensor hardware and must return quickly.
+ */
+public interface SampleSink {
+	/**
+	 * Called every time a chunk is full, and once more with the remaining samples when the stream ends
+	 * @param samples Validated samples mapped to the standard range. The buffer is reused for the next
+	 * chunk, so the samples must be copied if they are needed after this method returns.
+	 * @param length Number of samples in the chunk
+	 */
+	void onSamples(float samples[], int length);
+
+	/**
+	 * Called once after the last chunk, when the stream has ended
+	 * @param acknowledged true if the hardware acknowledged the end of the stream, false if it was cut short,
+	 * e.g. because the connection was lost
+	 */
+	void onEnd(boolean acknowledged);
+}
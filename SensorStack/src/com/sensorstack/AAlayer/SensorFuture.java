@@ -0,0 +1,139 @@
+package com.sensorstack.AAlayer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import com.sensorstack.devicelayer.Deadline;
+
+/**
+ * Result of an asynchronous sensor read, e.g. {@link AALayerII#getTemperatureAsync()}.
+ * The future is completed from the thread reading the sensor hardware, so no thread needs to wait for it.
+ * Like the blocking methods, a read which did not get a valid value completes with null.
+ * @param <T> Type of sensor data
+ */
+public class SensorFuture<T> implements Future<T> {
+
+	/**
+	 * Notified when a SensorFuture completes
+	 * @param <T> Type of sensor data
+	 */
+	public interface Listener<T> {
+		/**
+		 * Called once the future is done. Called on the thread completing the future, which may be the thread
+		 * reading the sensor hardware, so implementations must return quickly.
+		 * @param future The completed future
+		 */
+		void onComplete(SensorFuture<T> future);
+	}
+
+	private T value = null;
+	private Throwable error = null;
+	private boolean done = false;
+	private boolean cancelled = false;
+	private List<Listener<T>> listeners = new ArrayList<Listener<T>>();
+	private final Deadline deadline;		//cancelled with the future, null if the read cannot be cancelled
+
+	SensorFuture() {
+		this(null);
+	}
+
+	/*
+	 * Future of a read made with the deadline, so that cancelling the future cancels the read
+	 */
+	SensorFuture(Deadline deadline) {
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Registers a listener for completion of the future. If the future is already done the listener is called
+	 * immediately on the calling thread.
+	 * @param listener Listener to be notified
+	 */
+	public void addListener(Listener<T> listener) {
+		synchronized (this) {
+			if(!done)
+			{
+				listeners.add(listener);
+				return;
+			}
+		}
+		listener.onComplete(this);
+	}
+
+	/**
+	 * Stops waiting for the result. Requests of a discrete read still in progress are given up, see
+	 * {@link Deadline#cancel()}; other reads run to their end and their result is discarded.
+	 */
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		if(!complete(null, null, true))
+			return false;
+		if(deadline != null)
+			deadline.cancel();
+		return true;
+	}
+
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	public synchronized boolean isDone() {
+		return done;
+	}
+
+	public synchronized T get() throws InterruptedException, ExecutionException {
+		while(!done)
+			wait();
+		return result();
+	}
+
+	public synchronized T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+		while(!done)
+		{
+			long remaining = deadline - System.currentTimeMillis();
+			if(remaining <= 0)
+				throw new TimeoutException();
+			wait(remaining);
+		}
+		return result();
+	}
+
+	boolean set(T value) {
+		return complete(value, null, false);
+	}
+
+	boolean setException(Throwable error) {
+		return complete(null, error, false);
+	}
+
+	private boolean complete(T value, Throwable error, boolean cancelled) {
+		List<Listener<T>> toNotify;
+		synchronized (this) {
+			if(done)
+				return false;
+			this.value = value;
+			this.error = error;
+			this.cancelled = cancelled;
+			done = true;
+			notifyAll();
+			toNotify = listeners;
+			listeners = null;
+		}
+		for(Listener<T> listener : toNotify)
+			listener.onComplete(this);
+		return true;
+	}
+
+	private T result() throws ExecutionException {
+		if(cancelled)
+			throw new CancellationException();
+		if(error != null)
+			throw new ExecutionException(error);
+		return value;
+	}
+}
@@ -0,0 +1,186 @@
+package com.sensorstack;
+
+import java.util.Arrays;
+
+import com.sensorstack.sensors.Sensor;
+
+/**
+ * AdaptiveRetryPolicy waits for a response only as long as its sensors have been seen to need: the timeout of an
+ * attempt is a high percentile (by default the 99th) of the round trips recently observed for the requested
+ * sensors plus a margin, never more than the timeout set in the {@link DiscretePacketInfo}. Until a sensor has
+ * {@link #MIN_SAMPLES} round trips the configured timeout is used. Responses arriving after their attempt timed out
+ * are still counted, and every timeout doubles the timeout of the sensors it hit until one of them answers, so the
+ * timeout follows the link when its latency rises.
+ * A sensor which failed in its last {@link #DEFAULT_FAILURE_LIMIT} attempts, over all reads, is requested only once
+ * per read, waiting for the full configured timeout, so a flaky sensor does not hold up the other sensors of the
+ * read with its retries; one valid value brings it back to the full number of attempts.
+ * The observations are kept per policy, so the DiscretePacketInfo of each hardware unit should have a policy of its own.
+ * A policy is thread safe and may be used by concurrent reads.
+ */
+public class AdaptiveRetryPolicy implements RetryPolicy {
+	/**
+	 * Number of round trips kept per sensor
+	 */
+	public static final int WINDOW = 64;
+	/**
+	 * Number of round trips of a sensor needed before its timeout is adapted
+	 */
+	public static final int MIN_SAMPLES = 8;
+	public static final double DEFAULT_PERCENTILE = 0.99;
+	public static final int DEFAULT_MARGIN = 50;		//ms
+	public static final int DEFAULT_FAILURE_LIMIT = 3;
+
+	private final double percentile;
+	private final int margin;
+	private final int failureLimit;
+
+	private final long roundTrips[][] = new long[Sensor.NUM_DISCRETE][WINDOW];		//ring per sensor
+	private final int samples[] = new int[Sensor.NUM_DISCRETE];		//round trips observed, up to WINDOW
+	private final int next[] = new int[Sensor.NUM_DISCRETE];			//position of the next round trip in the ring
+	private final int failures[] = new int[Sensor.NUM_DISCRETE];		//consecutive failed attempts
+	private final int backoff[] = new int[Sensor.NUM_DISCRETE];		//least timeout since the last timeout, 0 if none
+	private final long sorted[] = new long[WINDOW];
+
+	/**
+	 * Constructor with the 99th percentile, a margin of 50 ms and a failure limit of 3
+	 */
+	public AdaptiveRetryPolicy() {
+		this(DEFAULT_PERCENTILE, DEFAULT_MARGIN, DEFAULT_FAILURE_LIMIT);
+	}
+
+	/**
+	 * Constructor
+	 * @param percentile Percentile of the observed round trips taken as the timeout, between 0 and 1
+	 * @param margin Milliseconds added to the percentile
+	 * @param failureLimit Number of consecutive failed attempts after which a sensor is requested once per read
+	 */
+	public AdaptiveRetryPolicy(double percentile, int margin, int failureLimit) {
+		if(percentile <= 0 || percentile > 1)
+			throw new IllegalArgumentException("Percentile must be in (0, 1]");
+		this.percentile = percentile;
+		this.margin = margin;
+		this.failureLimit = Math.max(failureLimit, 1);
+	}
+
+	/**
+	 * Returns the timeout a response of a sensor is waited for
+	 * @param sensor Sensor as defined in the Sensor class
+	 * @param limit Timeout used until enough round trips were observed, and the upper bound of the timeout
+	 * @return Timeout in milliseconds
+	 */
+	public synchronized int getTimeout(int sensor, int limit) {
+		int n = samples[sensor];
+		if(n < MIN_SAMPLES)
+			return limit;
+		System.arraycopy(roundTrips[sensor], 0, sorted, 0, n);
+		Arrays.sort(sorted, 0, n);
+		int index = Math.max((int) Math.ceil(percentile * n) - 1, 0);
+		long timeout = Math.max(sorted[index] + margin, backoff[sensor]);
+		return (int) Math.max(Math.min(timeout, limit), 1);
+	}
+
+	/**
+	 * Returns the number of consecutive failed attempts of a sensor
+	 * @param sensor Sensor as defined in the Sensor class
+	 */
+	public synchronized int getFailures(int sensor) {
+		return failures[sensor];
+	}
+
+	/**
+	 * Returns true if a sensor failed in its last attempts and is requested only once per read
+	 * @param sensor Sensor as defined in the Sensor class
+	 */
+	public synchronized boolean isFailing(int sensor) {
+		return failures[sensor] >= failureLimit;
+	}
+
+	/**
+	 * Forgets all observations
+	 */
+	public synchronized void reset() {
+		Arrays.fill(samples, 0);
+		Arrays.fill(next, 0);
+		Arrays.fill(failures, 0);
+		Arrays.fill(backoff, 0);
+	}
+
+	/*
+	 * Records the outcome of an attempt which waited timeout ms, up to limit ms
+	 */
+	private synchronized void record(int requested, int collected, long roundTrip, int timeout, int limit) {
+		for(int i=0;i<Sensor.NUM_DISCRETE;i++)
+		{
+			if((requested & (1 << i)) == 0)
+				continue;
+			if((collected & (1 << i)) == 0)
+			{
+				failures[i]++;
+				if(roundTrip < 0)
+					backoff[i] = Math.min(Math.max(2 * timeout, backoff[i]), limit);
+				continue;
+			}
+			failures[i] = 0;
+			backoff[i] = 0;
+			if(roundTrip >= 0)
+				add(i, roundTrip);
+		}
+	}
+
+	/*
+	 * Records the round trip of a response which arrived after its attempt timed out
+	 */
+	private synchronized void recordLate(int requested, long roundTrip) {
+		for(int i=0;i<Sensor.NUM_DISCRETE;i++)
+			if((requested & (1 << i)) != 0)
+				add(i, roundTrip);
+	}
+
+	private void add(int sensor, long roundTrip) {
+		roundTrips[sensor][next[sensor]] = roundTrip;
+		next[sensor] = (next[sensor] + 1) % WINDOW;
+		if(samples[sensor] < WINDOW)
+			samples[sensor]++;
+	}
+
+	public Attempts begin(DiscretePacketInfo info) {
+		final int limit = info.getDiscreteTimeout();
+		final int remaining[] = new int[Sensor.NUM_DISCRETE];		//attempts left per sensor in this read
+		final boolean failing[] = new boolean[Sensor.NUM_DISCRETE];	//given one attempt at the full timeout
+		for(int i=0;i<Sensor.NUM_DISCRETE;i++)
+		{
+			failing[i] = isFailing(i);
+			remaining[i] = failing[i] ? 1 : info.getAttempts();
+		}
+		return new Attempts() {
+			private int timeout = limit;
+
+			public int next(int missing) {
+				int request = 0;
+				timeout = 0;
+				for(int i=0;i<Sensor.NUM_DISCRETE;i++)
+				{
+					if((missing & (1 << i)) == 0 || remaining[i] <= 0)
+						continue;
+					remaining[i]--;
+					request |= 1 << i;
+					//one response answers all of them
+					timeout = Math.max(timeout, failing[i] ? limit : AdaptiveRetryPolicy.this.getTimeout(i, limit));
+				}
+				return request;
+			}
+
+			public int getTimeout() {
+				return timeout;
+			}
+
+			public void done(int requested, int collected, long roundTrip) {
+				record(requested, collected, roundTrip, timeout, limit);
+			}
+
+			public void late(int requested, long roundTrip) {
+				recordLate(requested, roundTrip);
+			}
+		};
+	}
+}
@@ -61,6 +61,10 @@ public class ContinuousStreamInfo {
 	 * Initialised to '%'
 	 */
 	private char multiValueDelimiter = '%';
+	/***
+	 * Compiled form of the stream format, null until needed or after the format was changed
+	 */
+	private PacketSchema schema;
 	
 	public int getSamplingRate() {
 		return samplingRate;
@@ -97,36 +101,51 @@ public class ContinuousStreamInfo {
 	}
 	public void setStopAck(char stopAck) {
 		this.stopAck = stopAck;
+		schema = null;
 	}
 	public byte getStop() {
 		return stop;
 	}
 	public void setStop(byte stop) {
 		this.stop = stop;
+		schema = null;
 	}
 	public char getMultiValueDelimiter() {
 		return multiValueDelimiter;
 	}
 	public void setMultiValueDelimiter(char multiValueDelimiter) {
 		this.multiValueDelimiter = multiValueDelimiter;
+		schema = null;
 	}
 	public int getSensorNum() {
 		return sensorNum;
 	}
 	public void setSensorNum(int sensorNum) {
 		this.sensorNum = sensorNum;
+		schema = null;
 	}
 	public char getSensorIdentifier() {
 		return sensorIdentifier;
 	}
 	public void setSensorIdentifier(char sensorIdentifier) {
 		this.sensorIdentifier = sensorIdentifier;
+		schema = null;
 	}
 	public char getSensorDataDelimiter() {
 		return sensorDataDelimiter;
 	}
 	public void setSensorDataDelimiter(char sensorDataDelimiter) {
 		this.sensorDataDelimiter = sensorDataDelimiter;
+		schema = null;
+	}
+	/***
+	 * Returns the stream format compiled for the parsers, compiled again only after it was changed
+	 * @return Schema of the stream
+	 */
+	public PacketSchema getSchema() {
+		PacketSchema s = schema;
+		if(s == null)
+			schema = s = new PacketSchema(this);
+		return s;
 	}
-	
 }
@@ -25,6 +25,11 @@ public class DiscretePacketInfo {
 	 * Initialised to 5.
 	 */
 	private int numAttempts = 5;		//number of numAttempts for requesting data from h/w per request
+	/**
+	 * Policy deciding the attempts of a read within the timeout and number of attempts above.
+	 * Initialised to a FixedRetryPolicy.
+	 */
+	private RetryPolicy retryPolicy = new FixedRetryPolicy();
 	
 	//variables for unpacking response packet
 	/**
@@ -50,6 +55,11 @@ public class DiscretePacketInfo {
 
 	//private char packetStartDelimiter='S';  //not used yet
 	
+	/**
+	 * Compiled form of the packet format, null until needed or after the format was changed
+	 */
+	private PacketSchema schema;
+	
 	public void setRequirement(int sensorId, boolean val) throws SensorNotDefinedException
 	{
 		if(sensorId>=0&&sensorId<Sensor.NUM_DISCRETE)
@@ -94,12 +104,25 @@ public class DiscretePacketInfo {
 		this.numAttempts = numAttempts;
 	}
 
+	public RetryPolicy getRetryPolicy() {
+		return retryPolicy;
+	}
+
+	/**
+	 * Sets the policy deciding the attempts of a read, e.g. an {@link AdaptiveRetryPolicy}
+	 * @param retryPolicy Policy; null restores the FixedRetryPolicy
+	 */
+	public void setRetryPolicy(RetryPolicy retryPolicy) {
+		this.retryPolicy = (retryPolicy != null) ? retryPolicy : new FixedRetryPolicy();
+	}
+
 	public char getSensorDelimiter() {
 		return sensorDelimiter;
 	}
 
 	public void setSensorDelimiter(char sensorDelimiter) {
 		this.sensorDelimiter = sensorDelimiter;
+		schema = null;
 	}
 
 	public char getSensorDataDelimiter() {
@@ -108,6 +131,7 @@ public class DiscretePacketInfo {
 
 	public void setSensorDataDelimiter(char sensorDataDelimiter) {
 		this.sensorDataDelimiter = sensorDataDelimiter;
+		schema = null;
 	}
 
 	public char[] getSensorIdentifier() {
@@ -122,6 +146,7 @@ public class DiscretePacketInfo {
 
 	public void setSensorIdentifier(char sensorIdentifier[]) {
 		this.sensorIdentifier = sensorIdentifier;
+		schema = null;
 	}
 
 	/*public char getPacketStartDelimiter() {
@@ -138,5 +163,18 @@ public class DiscretePacketInfo {
 
 	public void setMultiValueDelimiter(char multiValueDelimiter) {
 		this.multiValueDelimiter = multiValueDelimiter;
+		schema = null;
+	}
+
+	/**
+	 * Returns the packet format compiled for the parsers. It is compiled again only after the delimiters or
+	 * identifiers were changed, also when the array returned by getSensorIdentifier() was written to.
+	 * @return Schema of the discrete sensors
+	 */
+	public PacketSchema getSchema() {
+		PacketSchema s = schema;
+		if(s == null || !s.hasIdentifiers(sensorIdentifier))
+			schema = s = new PacketSchema(this);
+		return s;
 	}
 }
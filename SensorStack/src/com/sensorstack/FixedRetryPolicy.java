@@ -0,0 +1,34 @@
+package com.sensorstack;
+
+/**
+ * FixedRetryPolicy requests all missing sensors in every attempt and waits the same time for each response:
+ * the number of attempts and the timeout set in the {@link DiscretePacketInfo}.
+ * It is the default policy of a DiscretePacketInfo.
+ */
+public class FixedRetryPolicy implements RetryPolicy {
+
+	public Attempts begin(DiscretePacketInfo info) {
+		final int attempts = info.getAttempts();
+		final int timeout = info.getDiscreteTimeout();
+		return new Attempts() {
+			private int remaining = attempts;
+
+			public int next(int missing) {
+				if(remaining <= 0)
+					return 0;
+				remaining--;
+				return missing;
+			}
+
+			public int getTimeout() {
+				return timeout;
+			}
+
+			public void done(int requested, int collected, long roundTrip) {
+			}
+
+			public void late(int requested, long roundTrip) {
+			}
+		};
+	}
+}
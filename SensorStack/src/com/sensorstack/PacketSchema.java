@@ -0,0 +1,166 @@
+package com.sensorstack;
+
+import com.sensorstack.sensors.Sensor;
+
+/**
+ * PacketSchema is the compiled form of a {@link DiscretePacketInfo} or a {@link ContinuousStreamInfo}: what the
+ * parsers need to unpack a response, worked out once instead of on every request.
+ * It holds the delimiters, the identifier of each sensor and a lookup table from identifier character to sensors,
+ * and for a stream its start and stop bytes and stop ack. The number and type of the values of each sensor are
+ * fixed by the hardware protocol.
+ * A schema is immutable; the info objects compile a new one when they are changed, see
+ * {@link DiscretePacketInfo#getSchema()} and {@link ContinuousStreamInfo#getSchema()}.
+ */
+public final class PacketSchema {
+	/**
+	 * Numeric type of values sent as whole numbers
+	 */
+	public static final int INT = 0;
+	/**
+	 * Numeric type of values sent as decimal numbers
+	 */
+	public static final int FLOAT = 1;
+
+	private static final int SENSORS = Sensor.ECG + 1;
+	private static final int ARITY[] = {1, 2, 1, 1, 2, 1};
+	private static final int TYPE[] = {FLOAT, INT, INT, FLOAT, FLOAT, FLOAT};
+
+	private final char dataDelimiter;
+	private final char sensorDelimiter;
+	private final char multiValueDelimiter;
+	private final char identifier[] = new char[SENSORS];		//by sensor, '\0' if not defined
+	private final int sensors[] = new int[256];				//by identifier, bit mask of the sensors using it
+	private final byte start;
+	private final byte stop;
+	private final String stopAck;
+
+	/*
+	 * Compiles the packet format of the discrete sensors
+	 */
+	PacketSchema(DiscretePacketInfo p) {
+		dataDelimiter = p.getSensorDataDelimiter();
+		sensorDelimiter = p.getSensorDelimiter();
+		multiValueDelimiter = p.getMultiValueDelimiter();
+		char id[] = p.getSensorIdentifier();
+		for(int i=0;i<Sensor.NUM_DISCRETE && i<id.length;i++)
+			define(i, id[i]);
+		start = 0;
+		stop = 0;
+		stopAck = null;
+	}
+
+	/*
+	 * Compiles the packet format of a continuous stream; its metadata is sent like a discrete packet of one sensor
+	 */
+	PacketSchema(ContinuousStreamInfo c) {
+		dataDelimiter = c.getSensorDataDelimiter();
+		sensorDelimiter = '\0';
+		multiValueDelimiter = c.getMultiValueDelimiter();
+		int sensor = c.getSensorNum();
+		if(sensor >= 0 && sensor < SENSORS)
+			define(sensor, c.getSensorIdentifier());
+		start = (byte) (1 << sensor);
+		stop = c.getStop();
+		stopAck = String.valueOf(c.getStopAck());
+	}
+
+	private void define(int sensor, char id) {
+		identifier[sensor] = id;
+		if(id != '\0' && id < sensors.length)
+			sensors[id] |= 1 << sensor;
+	}
+
+	/*
+	 * Returns true if the schema was compiled from these identifiers, see DiscretePacketInfo.getSchema()
+	 */
+	boolean hasIdentifiers(char id[]) {
+		for(int i=0;i<Sensor.NUM_DISCRETE;i++)
+			if(identifier[i] != ((i < id.length) ? id[i] : '\0'))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns the character between the identifier of a sensor and its values
+	 */
+	public char getDataDelimiter() {
+		return dataDelimiter;
+	}
+
+	/**
+	 * Returns the character between the data of two sensors
+	 */
+	public char getSensorDelimiter() {
+		return sensorDelimiter;
+	}
+
+	/**
+	 * Returns the character between the values of a sensor sending several
+	 */
+	public char getMultiValueDelimiter() {
+		return multiValueDelimiter;
+	}
+
+	/**
+	 * Returns the identifier of a sensor in the response packet
+	 * @param sensor Sensor as defined in the Sensor class
+	 * @return the identifier, '\0' if it is not defined
+	 */
+	public char getIdentifier(int sensor) {
+		return (sensor >= 0 && sensor < SENSORS) ? identifier[sensor] : '\0';
+	}
+
+	/**
+	 * Returns true if the identifier of a sensor is defined
+	 * @param sensor Sensor as defined in the Sensor class
+	 */
+	public boolean isDefined(int sensor) {
+		return getIdentifier(sensor) != '\0';
+	}
+
+	/**
+	 * Returns the sensors identified by a character of the response packet
+	 * @param id Character read from the response packet
+	 * @return Bit mask with bit i set for sensor i, 0 if the character identifies no sensor
+	 */
+	public int getSensors(char id) {
+		return (id < sensors.length) ? sensors[id] : 0;
+	}
+
+	/**
+	 * Returns the number of values a sensor sends, e.g. 2 for the systolic and diastolic blood pressure
+	 * @param sensor Sensor as defined in the Sensor class
+	 */
+	public static int getArity(int sensor) {
+		return ARITY[sensor];
+	}
+
+	/**
+	 * Returns the numeric type of the values of a sensor, {@link #INT} or {@link #FLOAT}
+	 * @param sensor Sensor as defined in the Sensor class
+	 */
+	public static int getType(int sensor) {
+		return TYPE[sensor];
+	}
+
+	/**
+	 * Returns the byte starting the stream, 0 for the schema of discrete sensors
+	 */
+	public byte getStartByte() {
+		return start;
+	}
+
+	/**
+	 * Returns the byte stopping the stream, 0 for the schema of discrete sensors
+	 */
+	public byte getStopByte() {
+		return stop;
+	}
+
+	/**
+	 * Returns the acknowledgement of the stop byte, null for the schema of discrete sensors
+	 */
+	public String getStopAck() {
+		return stopAck;
+	}
+}
@@ -0,0 +1,48 @@
+package com.sensorstack;
+
+/**
+ * RetryPolicy decides the attempts of a discrete read: which sensors are requested again and how long each
+ * response is waited for. A policy may learn from the outcomes of all reads made with it, while the state of one
+ * read is kept in the {@link Attempts} it begins, so concurrent reads never share a counter.
+ * See {@link DiscretePacketInfo#setRetryPolicy(RetryPolicy)}.
+ */
+public interface RetryPolicy {
+	/**
+	 * Begins a read
+	 * @param info Packet info of the read, giving the configured timeout and number of attempts
+	 * @return State of the read
+	 */
+	Attempts begin(DiscretePacketInfo info);
+
+	/**
+	 * State of the attempts of one read
+	 */
+	interface Attempts {
+		/**
+		 * Chooses the sensors of the next attempt
+		 * @param missing Bit mask of the requested sensors without a valid value yet, bit i for sensor i
+		 * @return Bit mask of the sensors to request, a subset of missing; 0 to end the read
+		 */
+		int next(int missing);
+
+		/**
+		 * Returns the timeout (in milliseconds) of the attempt chosen by the last call of next()
+		 */
+		int getTimeout();
+
+		/**
+		 * Reports the outcome of the attempt chosen by the last call of next()
+		 * @param requested Bit mask of the sensors requested
+		 * @param collected Bit mask of the requested sensors which got a valid value
+		 * @param roundTrip Milliseconds from sending the request to receiving the response, -1 if there was none
+		 */
+		void done(int requested, int collected, long roundTrip);
+
+		/**
+		 * Reports a response which arrived after its attempt had timed out, and was dropped
+		 * @param requested Bit mask of the sensors requested by the attempt
+		 * @param roundTrip Milliseconds from sending the request to receiving the response
+		 */
+		void late(int requested, long roundTrip);
+	}
+}
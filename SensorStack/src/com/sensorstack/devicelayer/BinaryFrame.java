@@ -0,0 +1,375 @@
+package com.sensorstack.devicelayer;
+
+import com.sensorstack.sensors.Sensor;
+
+/**
+ * Binary frame format, used instead of text lines once a session has negotiated it, see
+ * {@link DeviceSession#negotiateBinaryFraming(int)}. A frame is
+ * <pre>
+ * STX | type | sensor | length | payload (length bytes) | CRC-16 (little-endian)
+ * </pre>
+ * where the CRC (CCITT, initial value 0xFFFF) covers type to the end of the payload. Numbers in the payload are
+ * little-endian int16 or float32. The frame is byte-stuffed so that it contains no line terminator and no STX
+ * but the first: '\n', '\r', STX and ESC are sent as ESC followed by the byte XOR 0x20. It is then terminated by
+ * '\n' like a text line, so it passes every transport, the receive buffers, capture and replay unchanged, and a
+ * frame starting with STX is told apart from a text line by its first byte. As STX only ever starts a frame, a
+ * receiver resynchronizes on it when noise has garbled or swallowed a line terminator, see
+ * {@link #indexOfStart(Frame, int)}. Control replies (the negotiation ack and the stop ack) stay text.
+ * Frame types:
+ * <ul>
+ * <li>{@link #TYPE_VALUES}: reply to a discrete request; sensor is the request byte, the payload holds the float32
+ * values of each sensor requested in order of sensor number, see {@link #getValueCount(int)}</li>
+ * <li>{@link #TYPE_SAMPLES_INT16}: block of stream samples of the sensor, in units of 1/{@link #INT16_SCALE}</li>
+ * <li>{@link #TYPE_SAMPLES_FLOAT32}: block of stream samples of the sensor</li>
+ * <li>{@link #TYPE_SAMPLES_KEY} and {@link #TYPE_SAMPLES_DELTA}: compressed block of stream samples, in units of
+ * 1/{@link #INT16_SCALE}, sent by hardware which acknowledged with {@link #NEGOTIATE_ACK_COMPRESSED}. The payload
+ * is a sequence number (1 byte, counting frames of the stream), then zig-zag varints: in a keyframe the first
+ * sample followed by the differences between successive samples, in a delta frame only differences, the first
+ * one taken from the last sample of the previous frame. A slowly changing signal like ECG takes one or two bytes
+ * per sample. A receiver which missed a frame (gap in the sequence or failed CRC) drops delta frames until the
+ * next keyframe, which the hardware sends periodically.</li>
+ * </ul>
+ * An instance decodes one frame at a time into a reusable payload buffer.
+ */
+public final class BinaryFrame {
+	public static final int TYPE_VALUES = 'V';
+	public static final int TYPE_SAMPLES_INT16 = 'S';
+	public static final int TYPE_SAMPLES_FLOAT32 = 'F';
+	public static final int TYPE_SAMPLES_KEY = 'K';
+	public static final int TYPE_SAMPLES_DELTA = 'D';
+	/**
+	 * Scale of int16 samples: a sample of n stands for n / INT16_SCALE
+	 */
+	public static final float INT16_SCALE = 1000f;
+	/**
+	 * Request byte asking the hardware to switch to binary frames: metadata bit without a sensor
+	 */
+	public static final byte NEGOTIATE = (byte) 0xC0;
+	/**
+	 * Text reply of hardware which switched to binary frames
+	 */
+	public static final String NEGOTIATE_ACK = "B1";
+	/**
+	 * Text reply of hardware which switched to binary frames and sends streams compressed
+	 */
+	public static final String NEGOTIATE_ACK_COMPRESSED = "B2";
+	/**
+	 * Maximum payload length in bytes
+	 */
+	public static final int MAX_PAYLOAD = 255;
+
+	static final char STX = 0x02;
+	static final char ESC = 0x1B;
+	private static final int CRC_TABLE[] = new int[256];
+
+	static {
+		for(int i=0;i<256;i++)
+		{
+			int crc = i << 8;
+			for(int bit=0;bit<8;bit++)
+				crc = ((crc & 0x8000) != 0) ? (crc << 1) ^ 0x1021 : crc << 1;
+			CRC_TABLE[i] = crc & 0xffff;
+		}
+	}
+
+	private int type;
+	private int sensor;
+	private int length;
+	private final byte payload[] = new byte[MAX_PAYLOAD];
+	private final byte raw[] = new byte[MAX_PAYLOAD + 5];	//unstuffed type to CRC
+
+	/**
+	 * Returns true if the frame is a binary frame rather than a text line
+	 */
+	public static boolean isBinary(CharSequence frame) {
+		return frame.length() > 0 && frame.charAt(0) == STX;
+	}
+
+	/**
+	 * Decodes a binary frame
+	 * @param frame Frame as received, without its terminator
+	 * @return false if it is not a well-formed binary frame or fails the CRC
+	 */
+	public boolean decode(CharSequence frame) {
+		int n = frame.length();
+		if(n == 0 || frame.charAt(0) != STX)
+			return false;
+		int count = 0;
+		for(int i=1;i<n;i++)
+		{
+			int b = frame.charAt(i);
+			if(b == ESC)
+			{
+				if(++i == n)
+					return false;
+				b = frame.charAt(i) ^ 0x20;
+			}
+			if(count == raw.length)
+				return false;
+			raw[count++] = (byte) b;
+		}
+		return unpack(count);
+	}
+
+	/**
+	 * Decodes a binary frame straight from the buffer of a received frame
+	 * @param frame Frame as received, without its terminator
+	 * @return false if it is not a well-formed binary frame or fails the CRC
+	 */
+	public boolean decode(Frame frame) {
+		byte buffer[] = frame.getBuffer();
+		int i = frame.getOffset();
+		int end = i + frame.getLength();
+		if(i == end || buffer[i] != STX)
+			return false;
+		int count = 0;
+		for(i++;i<end;i++)
+		{
+			byte b = buffer[i];
+			if(b == ESC)
+			{
+				if(++i == end)
+					return false;
+				b = (byte) (buffer[i] ^ 0x20);
+			}
+			if(count == raw.length)
+				return false;
+			raw[count++] = b;
+		}
+		return unpack(count);
+	}
+
+	/**
+	 * Checks the length and CRC of a binary frame without decoding it
+	 * @param frame Frame as received, without its terminator
+	 * @return false if it is not a well-formed binary frame or fails the CRC
+	 */
+	public static boolean isIntact(Frame frame) {
+		byte buffer[] = frame.getBuffer();
+		int i = frame.getOffset();
+		int end = i + frame.getLength();
+		if(i == end || buffer[i] != STX)
+			return false;
+		int crc = 0xffff;
+		int count = 0;
+		int length = -1;
+		int previous2 = 0;		//the last two bytes are the CRC received, so bytes enter the CRC two steps late
+		int previous1 = 0;
+		for(i++;i<end;i++)
+		{
+			int b = buffer[i];
+			if(b == ESC)
+			{
+				if(++i == end)
+					return false;
+				b = buffer[i] ^ 0x20;
+			}
+			b &= 0xff;
+			if(count >= 2)
+				crc = ((crc << 8) ^ CRC_TABLE[((crc >>> 8) ^ previous2) & 0xff]) & 0xffff;
+			if(count == 2)
+				length = b;
+			previous2 = previous1;
+			previous1 = b;
+			count++;
+		}
+		return count >= 5 && length == count - 5 && crc == (previous2 | previous1 << 8);
+	}
+
+	/**
+	 * Returns the position of the next STX in a frame, where a binary frame starts
+	 * @param frame Frame as received
+	 * @param from Position to search from
+	 * @return Position of the STX, -1 if there is none
+	 */
+	public static int indexOfStart(Frame frame, int from) {
+		byte buffer[] = frame.getBuffer();
+		int offset = frame.getOffset();
+		for(int i=from;i<frame.getLength();i++)
+			if(buffer[offset + i] == STX)
+				return i;
+		return -1;
+	}
+
+	/*
+	 * Checks the unstuffed bytes in raw and takes over the header and payload
+	 */
+	private boolean unpack(int count) {
+		if(count < 5 || (raw[2] & 0xff) != count - 5)
+			return false;
+		int crc = (raw[count-2] & 0xff) | (raw[count-1] & 0xff) << 8;
+		if(crc16(raw, 0, count - 2) != crc)
+			return false;
+		type = raw[0] & 0xff;
+		sensor = raw[1] & 0xff;
+		length = count - 5;
+		System.arraycopy(raw, 3, payload, 0, length);
+		return true;
+	}
+
+	public int getType() {
+		return type;
+	}
+
+	public int getSensor() {
+		return sensor;
+	}
+
+	/**
+	 * Returns the payload length in bytes
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the float32 at the specified position of the payload
+	 * @param index Position in floats, from 0 to getLength()/4-1
+	 */
+	public float getFloat(int index) {
+		int k = index * 4;
+		int bits = (payload[k] & 0xff) | (payload[k+1] & 0xff) << 8 | (payload[k+2] & 0xff) << 16 | payload[k+3] << 24;
+		return Float.intBitsToFloat(bits);
+	}
+
+	/**
+	 * Returns the int16 at the specified position of the payload
+	 * @param index Position in int16s, from 0 to getLength()/2-1
+	 */
+	public int getInt16(int index) {
+		int k = index * 2;
+		return (short) ((payload[k] & 0xff) | payload[k+1] << 8);
+	}
+
+	/**
+	 * Returns the sequence number of a {@link #TYPE_SAMPLES_KEY} or {@link #TYPE_SAMPLES_DELTA} frame
+	 */
+	public int getSequence() {
+		return (length > 0) ? payload[0] & 0xff : -1;
+	}
+
+	/**
+	 * Decodes the samples of a {@link #TYPE_SAMPLES_KEY} or {@link #TYPE_SAMPLES_DELTA} frame
+	 * @param previous Last sample of the previous frame; not used for a keyframe
+	 * @param dest Receives the samples in units of 1/INT16_SCALE; MAX_PAYLOAD samples always fit
+	 * @return Number of samples, -1 if the payload is malformed
+	 */
+	public int getDeltaSamples(int previous, int dest[]) {
+		int count = 0;
+		int sample = previous;
+		boolean key = (type == TYPE_SAMPLES_KEY);
+		int i = 1;
+		while(i < length)
+		{
+			int v = 0;
+			int shift = 0;
+			int b;
+			do {
+				if(i == length || shift > 28)
+					return -1;
+				b = payload[i++];
+				v |= (b & 0x7f) << shift;
+				shift += 7;
+			} while((b & 0x80) != 0);
+			v = (v >>> 1) ^ -(v & 1);		//zig-zag
+			sample = (key && count == 0) ? v : sample + v;
+			dest[count++] = sample;
+		}
+		return count;
+	}
+
+	/**
+	 * Encodes a compressed block of samples, as sent by the hardware
+	 * @param key true for a keyframe
+	 * @param sensor Sensor streaming
+	 * @param sequence Number of the frame in the stream, modulo 256
+	 * @param samples Samples in units of 1/INT16_SCALE
+	 * @param count Number of samples, small enough for the encoded block to fit MAX_PAYLOAD
+	 * @param previous Last sample of the previous frame; not used for a keyframe
+	 * @return Stuffed frame without its terminator, see {@link #encode(int, int, byte[], int)}
+	 */
+	public static String encodeDelta(boolean key, int sensor, int sequence, int samples[], int count, int previous) {
+		byte payload[] = new byte[MAX_PAYLOAD];
+		int n = 0;
+		payload[n++] = (byte) sequence;
+		for(int i=0;i<count;i++)
+		{
+			int v = (key && i == 0) ? samples[0] : samples[i] - previous;
+			previous = samples[i];
+			v = (v << 1) ^ (v >> 31);		//zig-zag
+			while((v & ~0x7f) != 0)
+			{
+				payload[n++] = (byte) ((v & 0x7f) | 0x80);
+				v >>>= 7;
+			}
+			payload[n++] = (byte) v;
+		}
+		return encode(key ? TYPE_SAMPLES_KEY : TYPE_SAMPLES_DELTA, sensor, payload, n);
+	}
+
+	/**
+	 * Returns the number of values a discrete sensor has in a {@link #TYPE_VALUES} frame: two for blood pressure
+	 * (systolic, diastolic) and GSR (conductance, resistance), one for the others
+	 */
+	public static int getValueCount(int sensor) {
+		return (sensor == Sensor.BLOODPRESSURE || sensor == Sensor.GSR) ? 2 : 1;
+	}
+
+	/**
+	 * Encodes a frame, as sent by the hardware
+	 * @param type Frame type
+	 * @param sensor Sensor field
+	 * @param payload Payload, see {@link #putFloat(byte[], int, float)} and {@link #putInt16(byte[], int, int)}
+	 * @param length Payload length in bytes, at most MAX_PAYLOAD
+	 * @return Stuffed frame without its terminator, one char per byte
+	 */
+	public static String encode(int type, int sensor, byte payload[], int length) {
+		byte raw[] = new byte[length + 5];
+		raw[0] = (byte) type;
+		raw[1] = (byte) sensor;
+		raw[2] = (byte) length;
+		System.arraycopy(payload, 0, raw, 3, length);
+		int crc = crc16(raw, 0, length + 3);
+		raw[length+3] = (byte) crc;
+		raw[length+4] = (byte) (crc >>> 8);
+		byte out[] = new byte[2 * raw.length + 1];
+		int n = 0;
+		out[n++] = STX;
+		for(int i=0;i<raw.length;i++)
+		{
+			int b = raw[i] & 0xff;
+			if(b == '\n' || b == '\r' || b == STX || b == ESC)
+			{
+				out[n++] = ESC;
+				b ^= 0x20;
+			}
+			out[n++] = (byte) b;
+		}
+		return new String(out, 0, n, Frame.CHARSET);
+	}
+
+	public static void putFloat(byte buffer[], int index, float value) {
+		int bits = Float.floatToIntBits(value);
+		int k = index * 4;
+		buffer[k] = (byte) bits;
+		buffer[k+1] = (byte) (bits >>> 8);
+		buffer[k+2] = (byte) (bits >>> 16);
+		buffer[k+3] = (byte) (bits >>> 24);
+	}
+
+	public static void putInt16(byte buffer[], int index, int value) {
+		int k = index * 2;
+		buffer[k] = (byte) value;
+		buffer[k+1] = (byte) (value >>> 8);
+	}
+
+	/*
+	 * CRC-16/CCITT-FALSE: polynomial 0x1021, initial value 0xFFFF, a byte at a time
+	 */
+	static int crc16(byte data[], int offset, int length) {
+		int crc = 0xffff;
+		for(int i=offset;i<offset+length;i++)
+			crc = ((crc << 8) ^ CRC_TABLE[((crc >>> 8) ^ data[i]) & 0xff]) & 0xffff;
+		return crc;
+	}
+}
@@ -14,11 +14,10 @@ package com.sensorstack.devicelayer;
  * See the License for the specific language governing permissions and
  * limitations under the License.
  */
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.util.Random;
 import java.util.UUID;
 
 import android.bluetooth.BluetoothAdapter;
@@ -53,7 +52,23 @@ public class BluetoothService {
   //  private AcceptThread mInsecureAcceptThread;
     private ConnectThread mConnectThread;
     private ConnectedThread mConnectedThread;
+    private ReconnectThread mReconnectThread;
     int mState;
+    // Bytes read from the hardware, waiting to be picked up by BluetoothTransport as lines.
+    // Replaced for every connection, so that a closing ConnectedThread cannot end the next one's stream.
+    private volatile FrameRingBuffer mFrames = new FrameRingBuffer();
+    // Device of the last connection, reconnected to when the link drops
+    private BluetoothDevice mLastDevice = null;
+    // The link dropped and the listener has not been told that it is back
+    private boolean mLinkDown = false;
+    private volatile ReconnectingTransport.LinkListener mLinkListener = null;
+
+    // Reconnect attempts after the link drops, before the connection is given up as lost. The delay
+    // before each attempt doubles from RECONNECT_BASE_DELAY up to RECONNECT_MAX_DELAY (in milliseconds),
+    // so a short radio dropout is bridged quickly and a device out of range is not hammered.
+    static final int RECONNECT_ATTEMPTS = 8;
+    static final int RECONNECT_BASE_DELAY = 250;
+    static final int RECONNECT_MAX_DELAY = 8000;
 
     // Constants that indicate the current connection state
     static final int STATE_NONE = 0;       // we're doing nothing
@@ -61,12 +76,20 @@ public class BluetoothService {
     static final int STATE_CONNECTING = 2; // now initiating an outgoing connection
     static final int STATE_CONNECTED = 3;  // now connected to a remote device
     static final int STATE_LOST = 4;		 // Connection is lost
+    static final int STATE_RECONNECTING = 5; // connection dropped, reconnecting to the same device
     
     void setHandler(Handler handler)
     {
     	mHandler=handler;
     }
 
+    /**
+     * Set the listener told when the connection drops and when it is restored
+     */
+    void setLinkListener(ReconnectingTransport.LinkListener listener) {
+        mLinkListener = listener;
+    }
+
     /**
      * Constructor. Prepares a new BluetoothConnect session.
      * @param context  The UI Activity Context
@@ -137,6 +160,9 @@ public class BluetoothService {
         // Cancel any thread currently running a connection
         if (mConnectedThread != null) {mConnectedThread.cancel(); mConnectedThread = null;}
 
+        // Cancel any thread restoring a dropped connection; requests waiting for it go to the new one
+        if (mReconnectThread != null) {mReconnectThread.cancel(); mReconnectThread = null;}
+
         // Start the thread to connect with the given device
         mConnectThread = new ConnectThread(device);
         mConnectThread.start();
@@ -169,7 +195,17 @@ public class BluetoothService {
         }
 */
         // Start the thread to manage the connection and perform transmissions
-        mConnectedThread = new ConnectedThread(socket, socketType);
+        mLastDevice = device;
+        if (mLinkDown) {
+            // Restoring a dropped connection: readers keep waiting on the same ring. Bytes left over
+            // from the old link are dropped, as the pending requests are written again.
+            mFrames.clear();
+        } else {
+            // A new connection starts on a new ring; readers of the old one get the end of stream
+            mFrames.close();
+            mFrames = new FrameRingBuffer();
+        }
+        mConnectedThread = new ConnectedThread(socket, socketType, mFrames);
         mConnectedThread.start();
 
         // Send the name of the connected device back to the UI Activity
@@ -197,6 +233,16 @@ public class BluetoothService {
             mConnectedThread.cancel();
             mConnectedThread = null;
         }
+
+        if (mReconnectThread != null) {
+            mReconnectThread.cancel();
+            mReconnectThread = null;
+        }
+
+        // Requests waiting for a dropped connection to come back will not get a response
+        mLastDevice = null;
+        mLinkDown = false;
+        mFrames.close();
 /*
         if (mSecureAcceptThread != null) {
             mSecureAcceptThread.cancel();
@@ -228,10 +274,39 @@ public class BluetoothService {
         r.write(out);
     }
 
+    /**
+     * Return the next line read from the hardware
+     * @param timeout Timeout period in milliseconds
+     * @return The line read, null if nothing arrived within the timeout
+     * @throws IOException if the connection was lost and all lines have been read
+     */
+    String readFrame(int timeout) throws IOException, InterruptedException {
+        return mFrames.readFrame(timeout);
+    }
+
+    /**
+     * Copy the next line read from the hardware into a reusable frame
+     * @param frame Receives the line
+     * @param timeout Timeout period in milliseconds
+     * @return false if nothing arrived within the timeout
+     * @throws IOException if the connection was lost and all lines have been read
+     */
+    boolean readFrame(Frame frame, int timeout) throws IOException, InterruptedException {
+        return mFrames.readFrame(frame, timeout);
+    }
+
     /**
      * Indicate that the connection attempt failed and notify the UI Activity.
      */
     private void connectionFailed() {
+        // A dropped connection was being replaced and will not come back
+        synchronized (this) {
+            if (mLinkDown) {
+                mLinkDown = false;
+                mFrames.close();
+            }
+        }
+
         // Send a failure message back to the Activity
         Message msg = mHandler.obtainMessage(DeviceLayerClass.MESSAGE_TOAST);
         Bundle bundle = new Bundle();
@@ -260,6 +335,34 @@ public class BluetoothService {
         setState(STATE_LOST);
     }
 
+    /**
+     * Start the ReconnectThread after the connection of the given thread dropped.
+     * @param lost  The ConnectedThread whose connection dropped
+     * @return false if the connection is not to be restored
+     */
+    private synchronized boolean reconnect(ConnectedThread lost) {
+        if (mConnectedThread != lost || mLastDevice == null || RECONNECT_ATTEMPTS <= 0) return false;
+        mConnectedThread = null;
+        mLinkDown = true;
+        mReconnectThread = new ReconnectThread(mLastDevice);
+        mReconnectThread.start();
+        setState(STATE_RECONNECTING);
+        return true;
+    }
+
+    /**
+     * Tell the link listener that the connection dropped earlier is back, so that it writes its
+     * requests again. Called without holding the service lock, as the listener writes to the service.
+     */
+    private void linkRestored() {
+        synchronized (this) {
+            if (!mLinkDown) return;
+            mLinkDown = false;
+        }
+        ReconnectingTransport.LinkListener listener = mLinkListener;
+        if (listener != null) listener.onLinkRestored();
+    }
+
     /**
      * This thread runs while listening for incoming connections. It behaves
      * like a server-side client. It runs until a connection is accepted
@@ -403,6 +506,7 @@ public class BluetoothService {
 
             // Start the connected thread
             connected(mmSocket, mmDevice, mSocketType);
+            linkRestored();
         }
 
         public void cancel() {
@@ -422,9 +526,10 @@ public class BluetoothService {
         private final BluetoothSocket mmSocket;
         private final InputStream mmInStream;
         private final OutputStream mmOutStream;
-        private final BufferedReader mmBuffReader;
+        private final FrameRingBuffer mmFrames;
+        private volatile boolean mmCancelled = false;
 
-        public ConnectedThread(BluetoothSocket socket, String socketType) {
+        public ConnectedThread(BluetoothSocket socket, String socketType, FrameRingBuffer frames) {
             Log.d(TAG, "create ConnectedThread: " + socketType);
             mmSocket = socket;
             InputStream tmpIn = null;
@@ -439,63 +544,45 @@ public class BluetoothService {
 
             mmInStream = tmpIn;
             mmOutStream = tmpOut;
-            mmBuffReader = new BufferedReader(new InputStreamReader(mmInStream));
-           
+            mmFrames = frames;
         }
 
         public void run() {
             Log.i(TAG, "BEGIN mConnectedThread");
-            //byte[] buffer = new byte[1024];
-            //int bytes;
-            
-            String line;
+            byte[] buffer = new byte[1024];
+            int bytes;
 
-            // Keep listening to the InputStream while connected
+            // Keep listening to the InputStream while connected. The stream is drained as soon as data
+            // arrives, independent of the requests written, and cut into lines by mmFrames.
             while (true) {
                 try {
                     // Read from the InputStream
-                	synchronized (DeviceLayerClass.requestLock) {
-                		//while(mmBuffReader.readLine()!=null);
-						DeviceLayerClass.requestLock.wait();
-					}
-                	if(!DeviceLayerClass.isContinuous())
-                	{
-                		synchronized(DeviceLayerClass.responseLock){
-                		
-                			//Log.e("BluetoothService","Inside reading");
-                			line = mmBuffReader.readLine();
-                			Log.e("BluetoothService",line);
-                			DeviceLayerClass.readDiscrete=line;
-                			DeviceLayerClass.responseLock.notifyAll();
-                		}
-                		//Log.e("BluetoothService","out of synchronized block");
-                	}
-                	else
-                	{
-                		synchronized(DeviceLayerClass.responseLock){
-                    		
-                			for(;DeviceLayerClass.writeIndex<DeviceLayerClass.readContinuous.length;DeviceLayerClass.writeIndex++)
-                				DeviceLayerClass.readContinuous[DeviceLayerClass.writeIndex] = mmBuffReader.readLine();
-                			DeviceLayerClass.responseLock.notifyAll();
-                			//while(!(line=mmBuffReader.readLine()).equals("!!"));
-                				//Log.e("Problem: ",line);
-                		}
-                		while(!(line=mmBuffReader.readLine()).equals(DeviceLayerClass.stopAck));
-                	}
-                   
+                    bytes = mmInStream.read(buffer);
+                    if (bytes < 0)
+                        throw new IOException("End of stream");
+                    mmFrames.write(buffer, 0, bytes);
+
                 	//@AA@ handler not reqd for readMessage - to be handled by waiting thread
                 	//mHandler.obtainMessage(DeviceLayerClass.MESSAGE_READ, line).sendToTarget();
                 } catch (IOException e) {
+                    if (mmCancelled) {
+                        // Closed on purpose, the connection was stopped or replaced
+                        mmFrames.close();
+                        break;
+                    }
                     Log.e(TAG, "disconnected", e);
+                    if (reconnect(this)) {
+                        // mmFrames stays open, so readers wait for the connection to come back
+                        ReconnectingTransport.LinkListener listener = mLinkListener;
+                        if (listener != null) listener.onLinkDown();
+                        break;
+                    }
+                    mmFrames.close();
                     connectionLost();
                     // Start the service over to restart listening mode
            //         BluetoothService.this.start();
                     break;
                 }
-                catch (InterruptedException e) {
-					// TODO Auto-generated catch block
-					e.printStackTrace();
-				}
             }
         }
 
@@ -516,6 +603,7 @@ public class BluetoothService {
         }
 
         public void cancel() {
+            mmCancelled = true;
             try {
                 mmSocket.close();
             } catch (IOException e) {
@@ -523,4 +611,87 @@ public class BluetoothService {
             }
         }
     }
+
+    /**
+     * This thread runs after an established connection dropped. It connects
+     * to the same device again, waiting longer after every failed attempt,
+     * and gives the connection up as lost after RECONNECT_ATTEMPTS attempts.
+     */
+    private class ReconnectThread extends Thread {
+        private final BluetoothDevice mmDevice;
+        private final Random mmRandom = new Random();
+        private volatile BluetoothSocket mmSocket = null;
+        private volatile boolean mmCancelled = false;
+
+        public ReconnectThread(BluetoothDevice device) {
+            mmDevice = device;
+        }
+
+        public void run() {
+            Log.i(TAG, "BEGIN mReconnectThread");
+            setName("ReconnectThread");
+
+            long delay = RECONNECT_BASE_DELAY;
+            for (int attempt = 1; attempt <= RECONNECT_ATTEMPTS; attempt++) {
+                // Sleep between half and all of the current delay, so that several
+                // phones dropped by the same interference do not retry in lockstep
+                long half = delay / 2;
+                try {
+                    Thread.sleep(half + (long) (mmRandom.nextDouble() * half));
+                } catch (InterruptedException e) {
+                    return;
+                }
+                delay = Math.min(delay * 2, RECONNECT_MAX_DELAY);
+                if (mmCancelled) return;
+
+                BluetoothSocket socket = null;
+                try {
+                    socket = mmDevice.createInsecureRfcommSocketToServiceRecord(MY_UUID);
+                    mmSocket = socket;
+                    if (mmCancelled) throw new IOException("Reconnect cancelled");
+                    mAdapter.cancelDiscovery();
+                    socket.connect();
+                } catch (IOException e) {
+                    Log.w(TAG, "reconnect attempt " + attempt + " failed", e);
+                    close(socket);
+                    if (mmCancelled) return;
+                    continue;
+                }
+
+                synchronized (BluetoothService.this) {
+                    if (mmCancelled) {
+                        close(socket);
+                        return;
+                    }
+                    mReconnectThread = null;
+                    connected(socket, mmDevice, "Reconnect");
+                }
+                linkRestored();
+                return;
+            }
+
+            synchronized (BluetoothService.this) {
+                if (mmCancelled) return;
+                mReconnectThread = null;
+                mLinkDown = false;
+                mFrames.close();
+            }
+            connectionLost();
+        }
+
+        private void close(BluetoothSocket socket) {
+            if (socket == null) return;
+            try {
+                socket.close();
+            } catch (IOException e) {
+                Log.e(TAG, "close() of reconnect socket failed", e);
+            }
+        }
+
+        public void cancel() {
+            mmCancelled = true;
+            interrupt();
+            close(mmSocket);
+        }
+    }
 }
@@ -0,0 +1,42 @@
+package com.sensorstack.devicelayer;
+
+import java.io.IOException;
+
+/**
+ * Transport over the RFCOMM link managed by {@link BluetoothService}.
+ * The connection itself is established through DeviceLayerActivity and DeviceListActivity. When the radio
+ * link drops, the service reconnects to the same device by itself, see {@link ReconnectingTransport}.
+ */
+class BluetoothTransport implements ReconnectingTransport {
+
+	private final BluetoothService service;
+
+	BluetoothTransport(BluetoothService service) {
+		this.service = service;
+	}
+
+	public void open() throws IOException {
+		if(service.getState() != BluetoothService.STATE_CONNECTED)
+			throw new IOException("Bluetooth device not connected");
+	}
+
+	public void write(byte data) throws IOException {
+		service.write(data);
+	}
+
+	public String readFrame(int timeout) throws IOException, InterruptedException {
+		return service.readFrame(timeout);
+	}
+
+	public boolean readFrame(Frame frame, int timeout) throws IOException, InterruptedException {
+		return service.readFrame(frame, timeout);
+	}
+
+	public void setLinkListener(LinkListener listener) {
+		service.setLinkListener(listener);
+	}
+
+	public void close() {
+		service.stop();
+	}
+}
@@ -0,0 +1,132 @@
+package com.sensorstack.devicelayer;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import android.util.Log;
+
+/**
+ * Records the traffic of a session to a capture file: every request byte written to the hardware and every frame
+ * read from it, with the time it passed the pipeline in nanoseconds. The capture is played back by
+ * {@link ReplayTransport}, e.g. to reproduce a field issue without the hardware:
+ * <pre>
+ * DeviceLayerClass.startCapture(new File(dir, "ward4.cap"));
+ * ...
+ * DeviceLayerClass.stopCapture();
+ * </pre>
+ * File layout, all numbers big-endian: the header MAGIC (4 bytes), VERSION (1 byte) and the wall clock time of the
+ * start of the capture (8 bytes, milliseconds), followed by one record per event. A record is its type
+ * (REQUEST or FRAME, 1 byte), the nanoseconds since the previous record as a varint, then for REQUEST the request
+ * byte and for FRAME the length of the frame as a varint and its bytes. Varints hold 7 bits per byte, least
+ * significant group first, with the top bit set on all but the last byte.
+ * If the file cannot be written, the capture stops and the session carries on.
+ */
+public class CaptureTap {
+	private static final String TAG = "CaptureTap";
+	static final int MAGIC = 0x53534350;		//"SSCP"
+	static final int VERSION = 1;
+	static final int REQUEST = 1;
+	static final int FRAME = 2;
+
+	private final OutputStream out;
+	private long last;				//System.nanoTime() of the previous record
+	private long records = 0;
+	private boolean closed = false;
+
+	/**
+	 * Constructor to create the capture file, replacing an existing one
+	 * @param file Capture file
+	 * @throws IOException if the file cannot be created
+	 */
+	public CaptureTap(File file) throws IOException {
+		out = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024);
+		writeInt(MAGIC);
+		out.write(VERSION);
+		long start = System.currentTimeMillis();
+		writeInt((int) (start >>> 32));
+		writeInt((int) start);
+		last = System.nanoTime();
+	}
+
+	/*
+	 * Records a request byte written to the hardware
+	 */
+	synchronized void request(byte data) {
+		if(closed)
+			return;
+		try {
+			header(REQUEST);
+			out.write(data);
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/*
+	 * Records a frame read from the hardware
+	 */
+	synchronized void frame(Frame frame) {
+		if(closed)
+			return;
+		try {
+			header(FRAME);
+			writeVarint(frame.getLength());
+			out.write(frame.getBuffer(), frame.getOffset(), frame.getLength());
+		} catch (IOException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Returns the number of requests and frames recorded
+	 */
+	public synchronized long getRecordCount() {
+		return records;
+	}
+
+	/**
+	 * Writes the records still buffered and closes the file. Further traffic is not recorded.
+	 */
+	public synchronized void close() {
+		if(closed)
+			return;
+		closed = true;
+		try {
+			out.close();
+		} catch (IOException e) {
+			Log.e(TAG, "capture not closed", e);
+		}
+	}
+
+	private void header(int type) throws IOException {
+		long now = System.nanoTime();
+		out.write(type);
+		writeVarint(now - last);
+		last = now;
+		records++;
+	}
+
+	private void fail(IOException e) {
+		Log.e(TAG, "capture stopped", e);
+		close();
+	}
+
+	private void writeInt(int v) throws IOException {
+		out.write(v >>> 24);
+		out.write(v >>> 16);
+		out.write(v >>> 8);
+		out.write(v);
+	}
+
+	private void writeVarint(long v) throws IOException {
+		while((v & ~0x7fL) != 0)
+		{
+			out.write((int) ((v & 0x7f) | 0x80));
+			v >>>= 7;
+		}
+		out.write((int) v);
+	}
+}
@@ -0,0 +1,205 @@
+package com.sensorstack.devicelayer;
+
+import java.io.IOException;
+
+import android.util.Log;
+
+/**
+ * Continuous stream running on the link, as returned by
+ * {@link DeviceSession#openContinuousStream(byte, byte, String, int, StreamListener)}.
+ * Frames are handed to the listener until the hardware sends the stop ack or {@link #stop()} is called.
+ * Discrete requests made while the stream is open wait until it has ended.
+ * A consumer which cannot keep up may {@link #pause()} the hardware and {@link #resume()} it later; the stream
+ * stays open in between, and the samples the hardware would have sent meanwhile are not sent at all.
+ */
+public class ContinuousStream {
+	private static final String TAG = "ContinuousStream";
+
+	private final RequestPipeline pipeline;
+	private final byte start;
+	private final byte stop;
+	private final String stopAck;
+	private final int timeout;
+	private final StreamListener listener;
+	private volatile boolean ending = false;		//end() has been called; read for every frame
+	private boolean ended = false;		//the listener has been told
+	private boolean acknowledged = false;
+	private boolean stopping = false;
+	private boolean paused = false;
+	private int pauseAcks = 0;			//stop acks still expected for pauses, not ending the stream
+
+	ContinuousStream(RequestPipeline pipeline, byte start, byte stop, String stopAck, int timeout, StreamListener listener) {
+		this.pipeline = pipeline;
+		this.start = start;
+		this.stop = stop;
+		this.stopAck = stopAck;
+		this.timeout = timeout;
+		this.listener = listener;
+	}
+
+	/**
+	 * Sends the stop byte and waits for the stop ack, for at most the timeout the stream was opened with.
+	 * The stream has ended when this method returns, also if the ack did not arrive; in that case the link drains
+	 * the rest of the stream before discrete requests continue, see {@link RequestPipeline}.
+	 * @return true if the hardware acknowledged the stop
+	 */
+	public boolean stop() {
+		synchronized (this) {
+			if(ended || stopping)
+				return awaitEnd();
+			stopping = true;
+		}
+		try {
+			pipeline.write(stop);
+		} catch (IOException e) {
+			//link broken, no ack will come
+			Log.e(TAG, "stop not sent", e);
+			pipeline.linkLost();
+			end(false);
+			return false;
+		}
+		boolean acknowledged = awaitEnd();
+		if(!acknowledged)
+			end(false, true);
+		return acknowledged;
+	}
+
+	/**
+	 * Asks the hardware to stop sending, without ending the stream. Frames already on their way are still handed
+	 * to the listener; the stop ack of the pause is not.
+	 * @return false if the stream is stopping or has ended, or the link broke
+	 */
+	public boolean pause() {
+		synchronized (this) {
+			if(ending || stopping || paused)
+				return !ending && !stopping;
+			paused = true;
+			pauseAcks++;
+		}
+		return write(stop);
+	}
+
+	/**
+	 * Asks the hardware to send again after {@link #pause()}
+	 * @return false if the stream is stopping or has ended, or the link broke
+	 */
+	public boolean resume() {
+		synchronized (this) {
+			if(ending || stopping || !paused)
+				return !ending && !stopping;
+			paused = false;
+		}
+		return write(start);
+	}
+
+	/**
+	 * Returns true while the stream is paused, see {@link #pause()}
+	 */
+	public synchronized boolean isPaused() {
+		return paused;
+	}
+
+	private boolean write(byte data) {
+		try {
+			pipeline.write(data);
+			return true;
+		} catch (IOException e) {
+			//link broken, the stream is over
+			Log.e(TAG, "request not sent", e);
+			pipeline.linkLost();
+			end(false);
+			return false;
+		}
+	}
+
+	/**
+	 * Returns true until the stream has ended
+	 */
+	public synchronized boolean isOpen() {
+		return !ended;
+	}
+
+	/*
+	 * Byte to write again once a dropped link is restored: the hardware is asked to resume streaming, or to stop
+	 * if stop() or pause() was called meanwhile. Acks expected from the old link are lost with it.
+	 */
+	synchronized byte getResumeByte() {
+		pauseAcks = (paused && !stopping) ? 1 : 0;
+		return (stopping || paused) ? stop : start;
+	}
+
+	byte getStopByte() {
+		return stop;
+	}
+
+	int getTimeout() {
+		return timeout;
+	}
+
+	/*
+	 * Waits up to the timeout for the stream to end; true if it ended with the ack
+	 */
+	private synchronized boolean awaitEnd() {
+		long deadline = System.currentTimeMillis() + timeout;
+		try {
+			while(!ended)
+			{
+				long remaining = deadline - System.currentTimeMillis();
+				if(remaining <= 0)
+					return false;
+				wait(remaining);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+		return acknowledged;
+	}
+
+	/*
+	 * Called by the pipeline's reader thread for every frame while the stream is routed here
+	 */
+	void onFrame(Frame frame) {
+		if(frame.contentEquals(stopAck))
+		{
+			synchronized (this) {
+				if(pauseAcks > 0)
+				{
+					pauseAcks--;		//acks arrive in the order of the stop bytes
+					return;
+				}
+			}
+			end(true);
+		}
+		else if(!ending)
+			listener.onFrame(frame);
+	}
+
+	/*
+	 * Ends the stream once: stops the routing of frames, then notifies the listener before stop() returns
+	 */
+	void end(boolean acknowledged) {
+		end(acknowledged, false);
+	}
+
+	/*
+	 * drain: the hardware may still be streaming, so the pipeline discards frames until the link is quiet
+	 */
+	private void end(boolean acknowledged, boolean drain) {
+		synchronized (this) {
+			if(ending)
+				return;
+			ending = true;
+		}
+		pipeline.closeStream(this, drain);
+		try {
+			listener.onEnd(acknowledged);
+		} finally {
+			synchronized (this) {
+				ended = true;
+				this.acknowledged = acknowledged;
+				notifyAll();
+			}
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package com.sensorstack.devicelayer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Absolute deadline for a read from the sensor hardware, which the caller may also cancel before it passes.
+ * The same deadline is passed down through every attempt and every request a read makes, so the read finishes
+ * by the deadline however many attempts it is configured for:
+ * <pre>
+ * Deadline deadline = Deadline.after(1500);
+ * SensorData sd = AALayerII.getDiscrete(deadline);		//another thread may call deadline.cancel()
+ * </pre>
+ * Each request waits for the shorter of its own timeout and the time left. No further attempt is made once the
+ * deadline has passed or has been cancelled. Cancelling gives up on the requests in progress at once: a request
+ * not yet written to the link is withdrawn, and a request already written frees its pipeline slot, its late
+ * response being dropped, see {@link RequestPipeline}.
+ */
+public class Deadline {
+	private final long time;		//System.currentTimeMillis() at which the deadline passes
+	private boolean cancelled = false;
+	private final List<Runnable> onCancel = new ArrayList<Runnable>();
+
+	private Deadline(long time) {
+		this.time = time;
+	}
+
+	/**
+	 * Returns a deadline passing the specified time from now
+	 * @param millis Time from now in milliseconds
+	 */
+	public static Deadline after(long millis) {
+		return new Deadline(System.currentTimeMillis() + millis);
+	}
+
+	/**
+	 * Returns a deadline passing at the specified time
+	 * @param time Time as returned by System.currentTimeMillis()
+	 */
+	public static Deadline at(long time) {
+		return new Deadline(time);
+	}
+
+	/**
+	 * Returns a deadline which never passes but can be cancelled
+	 */
+	public static Deadline none() {
+		return new Deadline(Long.MAX_VALUE);
+	}
+
+	/**
+	 * Cancels the read: its requests in progress are given up and no further ones are made
+	 */
+	public void cancel() {
+		List<Runnable> actions;
+		synchronized (this) {
+			if(cancelled)
+				return;
+			cancelled = true;
+			actions = new ArrayList<Runnable>(onCancel);
+			onCancel.clear();
+		}
+		for(Runnable action : actions)
+			action.run();
+	}
+
+	public synchronized boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * Returns true once the deadline has passed or has been cancelled
+	 */
+	public boolean isOver() {
+		return remaining() <= 0;
+	}
+
+	/**
+	 * Returns the time left in milliseconds, 0 if the deadline has passed or has been cancelled
+	 */
+	public synchronized long remaining() {
+		if(cancelled)
+			return 0;
+		return Math.max(time - System.currentTimeMillis(), 0);
+	}
+
+	/**
+	 * Returns the shorter of a timeout and the time left
+	 * @param timeout Timeout period in milliseconds
+	 */
+	public int limit(int timeout) {
+		return (int) Math.min(timeout, remaining());
+	}
+
+	/**
+	 * Registers an action run on cancellation, e.g. to give up a request shared by several reads. The action is
+	 * run once, on the thread cancelling, and must return quickly.
+	 * @param action Action to run
+	 * @return false, without registering, if the deadline has already been cancelled
+	 */
+	public synchronized boolean register(Runnable action) {
+		if(cancelled)
+			return false;
+		onCancel.add(action);
+		return true;
+	}
+
+	/**
+	 * Removes an action registered with {@link #register(Runnable)}
+	 * @param action Action to remove
+	 */
+	public synchronized void unregister(Runnable action) {
+		onCancel.remove(action);
+	}
+
+	public String toString() {
+		if(isCancelled())
+			return "Deadline[cancelled]";
+		return (time == Long.MAX_VALUE) ? "Deadline[none]" : "Deadline[" + remaining() + " ms left]";
+	}
+}
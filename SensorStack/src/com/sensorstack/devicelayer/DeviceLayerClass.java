@@ -1,9 +1,13 @@
 package com.sensorstack.devicelayer;
 
+import java.io.File;
+import java.io.IOException;
+
 import android.bluetooth.BluetoothAdapter;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbManager;
 import android.os.Handler;
 import android.os.Message;
 import android.util.Log;
@@ -16,20 +20,12 @@ import android.util.Log;
 public class DeviceLayerClass{
 
 	private static int currentMode = -1;
-	private static boolean isConnected = false;
 	static BluetoothAdapter mBluetoothAdapter = null;		//similarly add adapters for other modes of connectivity as well
 	UsbDevice mUsbDevice = null;
 	
 	private static BluetoothService bluetoothService = null;
-	static String readDiscrete = new String();
-	static final Object responseLock = new Object();			//
-	static final Object requestLock = new Object();
-	static String readContinuous[];
-	static int writeIndex;
-	static String stopAck; //Continuous stream StopAck received from h/w
+	private static final DeviceSession defaultSession = new DeviceSession("default");	//connection used by the static methods
 
-	private static volatile boolean isContinuous = false;
-	
 	// Message types sent from the BluetoothService Handler
 	static final int MESSAGE_STATE_CHANGE = 1;
 	static final int MESSAGE_READ = 2;
@@ -52,6 +48,9 @@ public class DeviceLayerClass{
 					break;
 				case BluetoothService.STATE_CONNECTING:
 					break;
+				case BluetoothService.STATE_RECONNECTING:
+					//still connected as far as callers are concerned, requests wait for the link
+					break;
 				case BluetoothService.STATE_FAILED:
 				case BluetoothService.STATE_LOST:
 					DeviceLayerClass.setConnected(false);
@@ -114,6 +113,8 @@ public class DeviceLayerClass{
 					setResult(RESULT_CANCELED);
 					*/
 				return context.getPackageManager().hasSystemFeature(PackageManager.FEATURE_WIFI);
+			case Mode.EMULATOR:
+				return true;
 			default:
 				throw new ModeNotSupportedException();
 		}
@@ -124,6 +125,136 @@ public class DeviceLayerClass{
 	}
 	static void setBluetoothService(BluetoothService btService) {
 		DeviceLayerClass.bluetoothService = btService;
+		defaultSession.setTransport(new BluetoothTransport(btService));
+	}
+	
+	static Transport getTransport() {
+		return defaultSession.getTransport();
+	}
+	
+	/**
+	 * Returns the session used by the static methods of this class, i.e. the connection established through
+	 * DeviceLayerActivity or {@link #connect(Transport)}. Further sensor hardware units are connected through
+	 * {@link DeviceRegistry}.
+	 * @return Default session
+	 */
+	public static DeviceSession getDefaultSession()
+	{
+		return defaultSession;
+	}
+	
+	/**
+	 * Connects to the sensor hardware over the specified transport, replacing the current one.
+	 * Used for modes of connectivity which do not need the DeviceLayerActivity connection phase,
+	 * e.g. {@link TcpTransport} for {@link Mode#WIFI} or {@link LoopbackTransport} to run against a sensor emulator.
+	 * @param transport Channel to the sensor hardware
+	 * @throws IOException if the transport cannot be opened
+	 */
+	public static void connect(Transport transport) throws IOException
+	{
+		defaultSession.connect(transport);
+	}
+	
+	/**
+	 * Connects to a sensor emulator over a loopback link instead of sensor hardware, replacing the current
+	 * transport. See {@link SensorEmulator}
+	 * @param emulator Emulator answering the requests
+	 */
+	public static void connectEmulator(SensorEmulator emulator)
+	{
+		try {
+			connect(new LoopbackTransport(emulator));
+		} catch (IOException e) {
+			//a loopback link always opens
+			e.printStackTrace();
+		}
+		setCurrentMode(Mode.EMULATOR);
+	}
+	
+	/**
+	 * Connects to a sensor kit attached over USB, replacing the current transport. See {@link UsbTransport}
+	 * @param manager USB service of the android device
+	 * @param device Sensor kit, for which the application has been granted permission
+	 * @param baudRate Baud rate of the line, {@link UsbTransport#DEFAULT_BAUD_RATE} for CDC-ACM devices
+	 * @throws IOException if the device cannot be opened as a serial port
+	 */
+	public static void connectUsb(UsbManager manager, UsbDevice device, int baudRate) throws IOException
+	{
+		connect(new UsbTransport(manager, device, baudRate));
+		setCurrentMode(Mode.USB);
+	}
+	
+	/**
+	 * Asks the hardware of the default session to send binary frames instead of text lines.
+	 * See {@link DeviceSession#negotiateBinaryFraming(int)}
+	 * @param timeout Timeout period in milliseconds for the ack
+	 * @return true if the hardware switched to binary frames
+	 * @throws NoDeviceConnectedException
+	 */
+	public static boolean negotiateBinaryFraming(int timeout) throws NoDeviceConnectedException
+	{
+		return defaultSession.negotiateBinaryFraming(timeout);
+	}
+	
+	/**
+	 * Starts recording the traffic of the default session to a capture file, which can be played back by
+	 * {@link ReplayTransport}. See {@link DeviceSession#startCapture(File)}
+	 * @param file Capture file, replaced if it exists
+	 * @throws IOException if the file cannot be created
+	 */
+	public static void startCapture(File file) throws IOException
+	{
+		defaultSession.startCapture(file);
+	}
+	
+	/**
+	 * Stops recording the traffic of the default session
+	 */
+	public static void stopCapture()
+	{
+		defaultSession.stopCapture();
+	}
+	
+	/**
+	 * Starts probing the link of the default session. See {@link DeviceSession#startLinkMonitor(int)}
+	 * @param interval Interval between probes in milliseconds
+	 * @return The monitor, see {@link LinkMonitor}
+	 */
+	public static LinkMonitor startLinkMonitor(int interval)
+	{
+		return defaultSession.startLinkMonitor(interval);
+	}
+	
+	/**
+	 * Stops probing the link of the default session
+	 */
+	public static void stopLinkMonitor()
+	{
+		defaultSession.stopLinkMonitor();
+	}
+	
+	/**
+	 * Closes the current transport. Subsequent requests throw NoDeviceConnectedException until connected again.
+	 */
+	public static void disconnect()
+	{
+		defaultSession.disconnect();
+	}
+	
+	/**
+	 * Sets the number of discrete requests which may be outstanding on the link at the same time.
+	 * Requests made concurrently from several threads are written to the hardware without waiting for the
+	 * previous responses, and responses are matched back to their requests in order.
+	 * Initialised to 1, i.e. a request is written only after the previous one has been answered or timed out.
+	 * @param depth Maximum number of outstanding discrete requests, at least 1
+	 */
+	public static void setPipelineDepth(int depth)
+	{
+		defaultSession.setPipelineDepth(depth);
+	}
+	
+	public static int getPipelineDepth() {
+		return defaultSession.getPipelineDepth();
 	}
 
 	/* Only Device layer class can read mode
@@ -136,57 +267,71 @@ public class DeviceLayerClass{
 	}
 
 	public static boolean isConnected() {
-		return isConnected;
+		return defaultSession.isConnected();
 	}
 
 	static void setConnected(boolean isConnected) {
-		DeviceLayerClass.isConnected = isConnected;
+		defaultSession.setConnected(isConnected);
 	}
 	
 	
 	/* getDiscretePacket() at DLC (device layer class) is called from the AA-I layer whenever a 
 	 * request for a discrete data packet from h/w is made.
-	 * The function checks if device is connected, sends request byte and waits for signal from connected thread
-	 * Finally, the read line is returned to the caller.
+	 * The request is queued in the pipeline of the default session, see DeviceSession.
 	 */
 	/**
 	 * Fetches a response packet from the hardware within a timeout period for multiple discrete sensors
 	 * @param requestByte Request byte sent to the hardware specifying the kind of data requested
 	 * @param timeout Timeout period in milliseconds
-	 * @return Response packet received from the sensor hardware
+	 * @return Response packet received from the sensor hardware, empty if nothing was received within the timeout
 	 * @throws NoDeviceConnectedException
 	 */
 	public static String getDiscretePacket(byte requestByte, int timeout) throws NoDeviceConnectedException
 	{
-		setContinuous(false);
-		if(!isConnected())
-			throw new NoDeviceConnectedException("No Device Connected");
-		switch(currentMode)
-		{
-			case Mode.BLUETOOTH:
-				synchronized(responseLock){
-					try {
-						//Log.e("DeviceLayerClass","Waiting for pkt");
-						readDiscrete="";
-						synchronized (requestLock) {
-							//bluetoothService.write(requestByte.getBytes());
-							bluetoothService.write(requestByte);
-							requestLock.notifyAll();
-						}
-						responseLock.wait(timeout);
-						//Log.e("DeviceLayerClass","the wait is over");
-						return readDiscrete;
-					} catch (Exception e) {
-						e.printStackTrace();
-					}
-				}
-				break;
-				
-			case Mode.USB:
-			case Mode.WIFI:
-				break;					
-		}
-		return readDiscrete;
+		return defaultSession.getDiscretePacket(requestByte, timeout);
+	}
+
+	/**
+	 * Fetches a response packet from the hardware for multiple discrete sensors, within the timeout period and
+	 * before the deadline. See {@link DeviceSession#getDiscretePacket(byte, int, Deadline)}
+	 * @param requestByte Request byte sent to the hardware specifying the kind of data requested
+	 * @param timeout Timeout period in milliseconds
+	 * @param deadline Deadline of the read the request is part of, see {@link Deadline}; none if null
+	 * @return Response packet received from the sensor hardware, empty if nothing was received in time
+	 * @throws NoDeviceConnectedException
+	 */
+	public static String getDiscretePacket(byte requestByte, int timeout, Deadline deadline) throws NoDeviceConnectedException
+	{
+		return defaultSession.getDiscretePacket(requestByte, timeout, deadline);
+	}
+	
+	/**
+	 * Requests a response packet from the hardware for multiple discrete sensors without blocking the calling thread.
+	 * The listener is called on the thread reading the transport once the response has arrived or the timeout 
+	 * period has expired, so many requests can be outstanding without a waiting thread for each of them.
+	 * @param requestByte Request byte sent to the hardware specifying the kind of data requested
+	 * @param timeout Timeout period in milliseconds
+	 * @param listener Receives the response packet, see {@link ResponseListener}
+	 * @throws NoDeviceConnectedException
+	 */
+	public static void getDiscretePacket(byte requestByte, int timeout, ResponseListener listener) throws NoDeviceConnectedException
+	{
+		defaultSession.getDiscretePacket(requestByte, timeout, listener);
+	}
+
+	/**
+	 * Requests a response packet from the hardware for multiple discrete sensors without blocking the calling
+	 * thread, within the timeout period and before the deadline.
+	 * See {@link DeviceSession#getDiscretePacket(byte, int, ResponseListener, Deadline)}
+	 * @param requestByte Request byte sent to the hardware specifying the kind of data requested
+	 * @param timeout Timeout period in milliseconds
+	 * @param listener Receives the response packet, see {@link ResponseListener}
+	 * @param deadline Deadline of the read the request is part of, see {@link Deadline}; none if null
+	 * @throws NoDeviceConnectedException
+	 */
+	public static void getDiscretePacket(byte requestByte, int timeout, ResponseListener listener, Deadline deadline) throws NoDeviceConnectedException
+	{
+		defaultSession.getDiscretePacket(requestByte, timeout, listener, deadline);
 	}
 	
 	/**
@@ -196,49 +341,29 @@ public class DeviceLayerClass{
 	 * @param stopAck Byte received from hardware as an acknowledgement to the stop byte
 	 * @param numLines Specifies the length of data buffer
 	 * @param timeout Timeout period in milliseconds
-	 * @return Response buffer received from the sensor hardware
+	 * @return Response buffer received from the sensor hardware, shorter than numLines if the timeout expired
 	 * @throws NoDeviceConnectedException
 	 */
 	public static String[] getContinuousPacket(byte start, byte stop, String stopAck, int numLines, int timeout) throws NoDeviceConnectedException
 	{
-		setContinuous(true);
-		DeviceLayerClass.stopAck=stopAck;
-		if(!isConnected())
-			throw new NoDeviceConnectedException("No Device Connected");
-		switch(currentMode)
-		{
-			case Mode.BLUETOOTH:
-				
-				synchronized(responseLock){
-					try {
-						readContinuous=new String[numLines];
-						writeIndex=0;
-						synchronized (requestLock) {
-							bluetoothService.write(start);
-							requestLock.notifyAll();
-						}
-						responseLock.wait(timeout);
-						bluetoothService.write(stop);
-						return readContinuous;
-					} catch (InterruptedException e) {
-						e.printStackTrace();
-					}
-				}
-				break;
-				
-			case Mode.USB:
-			case Mode.WIFI:
-				break;					
-		}
-		return readContinuous;
+		return defaultSession.getContinuousPacket(start, stop, stopAck, numLines, timeout);
 	}
-
-	static boolean isContinuous() {
-		return isContinuous;
-	}
-
-	static void setContinuous(boolean isContinuous) {
-		DeviceLayerClass.isContinuous = isContinuous;
+	
+	/**
+	 * Starts a response stream from the hardware for a particular continuous data sensor and hands its frames to
+	 * the listener as they arrive, until the hardware sends the stop ack or the stream is stopped.
+	 * @param start Request byte sent to the hardware requesting to start streaming data of the specified sensor
+	 * @param stop Byte sent to the hardware requesting it to stop streaming
+	 * @param stopAck Byte received from hardware as an acknowledgement to the stop byte
+	 * @param timeout Timeout period in milliseconds for the link to become free, and for the stop ack once the
+	 * stream is stopped
+	 * @param listener Receives the frames of the stream, see {@link StreamListener}
+	 * @return The running stream, null if it could not be started
+	 * @throws NoDeviceConnectedException
+	 */
+	public static ContinuousStream openContinuousStream(byte start, byte stop, String stopAck, int timeout, StreamListener listener) throws NoDeviceConnectedException
+	{
+		return defaultSession.openContinuousStream(start, stop, stopAck, timeout, listener);
 	}
 	
 }
@@ -0,0 +1,109 @@
+package com.sensorstack.devicelayer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Keeps the sessions to several sensor hardware units connected at the same time, e.g. a gateway polling the kits
+ * of a ward. Each session has its own transport and reader thread, see {@link DeviceSession}:
+ * <pre>
+ * DeviceSession bed4 = DeviceRegistry.open("bed4", new TcpTransport("10.0.0.14", 5000));
+ * Temperature t = AALayerII.getTemperature(bed4, discretePacketInfo, null);
+ * </pre>
+ * The registry is only consulted when sessions are opened, looked up or closed; requests go straight to the
+ * session.
+ */
+public final class DeviceRegistry {
+
+	private static final Map<String, DeviceSession> sessions = new LinkedHashMap<String, DeviceSession>();
+
+	private DeviceRegistry() {
+	}
+
+	/**
+	 * Connects a session to the sensor hardware over the specified transport. If a session of that name is
+	 * already open, its transport is replaced.
+	 * @param name Name identifying the session
+	 * @param transport Channel to the sensor hardware
+	 * @return The connected session
+	 * @throws IOException if the transport cannot be opened
+	 */
+	public static DeviceSession open(String name, Transport transport) throws IOException
+	{
+		DeviceSession session;
+		boolean created = false;
+		synchronized(sessions){
+			session = sessions.get(name);
+			if(session == null)
+			{
+				session = new DeviceSession(name);
+				sessions.put(name, session);
+				created = true;
+			}
+		}
+		try {
+			session.connect(transport);
+		} catch (IOException e) {
+			if(created)
+				remove(name, session);
+			throw e;
+		}
+		return session;
+	}
+
+	/**
+	 * Returns the session of the specified name
+	 * @param name Name the session was opened with
+	 * @return The session, null if no session of that name is open
+	 */
+	public static DeviceSession get(String name)
+	{
+		synchronized(sessions){
+			return sessions.get(name);
+		}
+	}
+
+	/**
+	 * Returns the sessions currently open, in the order they were opened
+	 */
+	public static List<DeviceSession> getSessions()
+	{
+		synchronized(sessions){
+			return new ArrayList<DeviceSession>(sessions.values());
+		}
+	}
+
+	/**
+	 * Disconnects the session of the specified name and removes it from the registry
+	 * @param name Name the session was opened with
+	 */
+	public static void close(String name)
+	{
+		DeviceSession session;
+		synchronized(sessions){
+			session = sessions.remove(name);
+		}
+		if(session != null)
+			session.disconnect();
+	}
+
+	/**
+	 * Disconnects all sessions and empties the registry
+	 */
+	public static void closeAll()
+	{
+		for(DeviceSession session : getSessions())
+			close(session.getName());
+	}
+
+	private static void remove(String name, DeviceSession session)
+	{
+		synchronized(sessions){
+			if(sessions.get(name) == session)
+				sessions.remove(name);
+		}
+	}
+}
@@ -0,0 +1,594 @@
+package com.sensorstack.devicelayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sensorstack.PacketSchema;
+
+/**
+ * Connection to one sensor hardware unit. A session owns its transport, the pipeline matching responses to
+ * requests and the reader thread behind it, so sessions to different units share no state and no locks, and
+ * requests on one link never wait for another link.
+ * Sessions for several units are opened through {@link DeviceRegistry}. The static methods of
+ * {@link DeviceLayerClass} act on a default session, see {@link DeviceLayerClass#getDefaultSession()}.
+ */
+public class DeviceSession {
+
+	private final String name;
+	private volatile boolean isConnected = false;
+	private volatile boolean binaryFraming = false;
+	private volatile boolean compressedStreaming = false;
+	private volatile PacketSchema schema = null;	//format of discrete responses, if known
+	private Transport transport = null;			//channel to the sensor hardware
+	private RequestPipeline pipeline = null;	//matches responses read from the transport to requests
+	private int pipelineDepth = 1;
+	private CaptureTap tap = null;				//records the traffic of the session, if set
+	private LinkMonitor monitor = null;		//probes the link, if started
+	private final Object lock = new Object();	//guards transport, pipeline and pipelineDepth
+	private final AtomicLong corruptFrames = new AtomicLong();
+	private final AtomicLong droppedFrames = new AtomicLong();
+
+	DeviceSession(String name) {
+		this.name = name;
+	}
+
+	/**
+	 * Returns the name the session was opened with
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/*
+	 * Replaces the transport without opening it, for links connected elsewhere, e.g. Bluetooth
+	 */
+	void setTransport(Transport transport) {
+		synchronized(lock){
+			if(pipeline != null)
+				pipeline.stop();
+			this.transport = transport;
+			binaryFraming = false;		//hardware starts in text mode
+			compressedStreaming = false;
+			pipeline = new RequestPipeline(this, transport, pipelineDepth);
+			pipeline.setTap(tap);
+			pipeline.start();
+		}
+	}
+
+	Transport getTransport() {
+		synchronized(lock){
+			return transport;
+		}
+	}
+
+	/**
+	 * Connects to the sensor hardware over the specified transport, replacing the current one.
+	 * @param transport Channel to the sensor hardware
+	 * @throws IOException if the transport cannot be opened
+	 */
+	public void connect(Transport transport) throws IOException
+	{
+		synchronized(lock){
+			if(this.transport != null && this.transport != transport)
+				this.transport.close();
+			transport.open();
+			setTransport(transport);
+			setConnected(true);
+		}
+	}
+
+	/**
+	 * Closes the current transport. Subsequent requests throw NoDeviceConnectedException until connected again.
+	 */
+	public void disconnect()
+	{
+		synchronized(lock){
+			setConnected(false);
+			if(pipeline != null)
+				pipeline.stop();
+			if(transport != null)
+				transport.close();
+		}
+	}
+
+	/**
+	 * Sets the number of discrete requests which may be outstanding on the link at the same time.
+	 * See {@link DeviceLayerClass#setPipelineDepth(int)}
+	 * @param depth Maximum number of outstanding discrete requests, at least 1
+	 */
+	public void setPipelineDepth(int depth)
+	{
+		if(depth < 1)
+			depth = 1;
+		synchronized(lock){
+			pipelineDepth = depth;
+			if(pipeline != null)
+				pipeline.setDepth(depth);
+		}
+	}
+
+	public int getPipelineDepth() {
+		synchronized(lock){
+			return pipelineDepth;
+		}
+	}
+
+	/**
+	 * Asks the hardware to send binary frames instead of text lines, see {@link BinaryFrame}. Hardware which does
+	 * not know binary frames ignores the request and the session stays in text mode. Hardware which also compresses
+	 * streams says so in its ack, see {@link #isCompressedStreaming()}. The parsers of the AA layer accept all
+	 * formats, so the request may be made at any time while no stream is running.
+	 * @param timeout Timeout period in milliseconds for the ack
+	 * @return true if the hardware switched to binary frames
+	 * @throws NoDeviceConnectedException
+	 */
+	public boolean negotiateBinaryFraming(int timeout) throws NoDeviceConnectedException
+	{
+		String ack = getDiscretePacket(BinaryFrame.NEGOTIATE, timeout);
+		boolean compressed = BinaryFrame.NEGOTIATE_ACK_COMPRESSED.equals(ack);
+		if(!compressed && !BinaryFrame.NEGOTIATE_ACK.equals(ack))
+			return false;
+		compressedStreaming = compressed;
+		binaryFraming = true;
+		return true;
+	}
+
+	/**
+	 * Returns true if the hardware has agreed to send binary frames and sends streams as delta compressed blocks
+	 */
+	public boolean isCompressedStreaming() {
+		return compressedStreaming;
+	}
+
+	/**
+	 * Returns true if the hardware has agreed to send binary frames
+	 */
+	public boolean isBinaryFraming() {
+		return binaryFraming;
+	}
+
+	/**
+	 * Starts recording the request bytes written to the hardware and the frames read from it to a capture file,
+	 * replacing a capture already running. See {@link CaptureTap} and {@link ReplayTransport}
+	 * @param file Capture file, replaced if it exists
+	 * @throws IOException if the file cannot be created
+	 */
+	public void startCapture(File file) throws IOException
+	{
+		CaptureTap t = new CaptureTap(file);
+		CaptureTap old;
+		synchronized(lock){
+			old = tap;
+			tap = t;
+			if(pipeline != null)
+				pipeline.setTap(t);
+		}
+		if(old != null)
+			old.close();
+	}
+
+	/**
+	 * Stops the running capture, if any, and closes its file
+	 */
+	public void stopCapture()
+	{
+		CaptureTap old;
+		synchronized(lock){
+			old = tap;
+			tap = null;
+			if(pipeline != null)
+				pipeline.setTap(null);
+		}
+		if(old != null)
+			old.close();
+	}
+
+	public boolean isConnected() {
+		return isConnected;
+	}
+
+	void setConnected(boolean isConnected) {
+		this.isConnected = isConnected;
+	}
+
+	/**
+	 * Starts probing the link at the specified interval, replacing a monitor already running.
+	 * The monitor keeps running across reconnects and transport changes; it only probes while connected.
+	 * @param interval Interval between probes in milliseconds
+	 * @return The monitor, see {@link LinkMonitor}
+	 */
+	public LinkMonitor startLinkMonitor(int interval)
+	{
+		LinkMonitor m = new LinkMonitor(this, interval);
+		synchronized(lock){
+			if(monitor != null)
+				monitor.stop();
+			monitor = m;
+		}
+		m.start();
+		return m;
+	}
+
+	/**
+	 * Stops probing the link. The statistics of the monitor stay readable.
+	 */
+	public void stopLinkMonitor()
+	{
+		synchronized(lock){
+			if(monitor != null)
+				monitor.stop();
+			monitor = null;
+		}
+	}
+
+	/**
+	 * Returns the running link monitor, null if none has been started
+	 */
+	public LinkMonitor getLinkMonitor() {
+		synchronized(lock){
+			return monitor;
+		}
+	}
+
+	/*
+	 * Returns the pipeline if connected and idle, for a probe; null otherwise
+	 */
+	RequestPipeline getIdlePipeline() {
+		synchronized(lock){
+			if(!isConnected || pipeline == null || !pipeline.isIdle())
+				return null;
+			return pipeline;
+		}
+	}
+
+	/**
+	 * Returns the number of frames received garbled: binary frames failing their length or CRC check, and noise
+	 * skipped to resynchronize on the start of a binary frame. Garbled text lines cannot be told apart by the
+	 * device layer; the AA layer drops them as values which do not parse or lie outside the hardware range.
+	 */
+	public long getCorruptFrameCount() {
+		return corruptFrames.get();
+	}
+
+	/**
+	 * Returns the number of intact frames discarded: frames nobody asked for, late responses to requests which
+	 * timed out, and stream frames drained after a stop which was not acknowledged in time
+	 */
+	public long getDroppedFrameCount() {
+		return droppedFrames.get();
+	}
+
+	/**
+	 * Sets the format of the discrete responses of the hardware. The pipeline reads the sensors a response names
+	 * with it, to hand the response to the request which asked for them when the responses to earlier requests
+	 * were lost, see {@link RequestPipeline}. Set by the AA layer for every discrete read.
+	 * @param schema Packet schema of the discrete sensors, see {@link com.sensorstack.DiscretePacketInfo#getSchema()}
+	 */
+	public void setPacketSchema(PacketSchema schema) {
+		this.schema = schema;
+	}
+
+	PacketSchema getPacketSchema() {
+		return schema;
+	}
+
+	void frameCorrupt() {
+		corruptFrames.incrementAndGet();
+	}
+
+	void frameDropped() {
+		droppedFrames.incrementAndGet();
+	}
+
+	/*
+	 * Called by a pipeline whose link broke; ignored if the pipeline has been replaced meanwhile
+	 */
+	void linkLost(RequestPipeline p) {
+		synchronized(lock){
+			if(pipeline == p)
+				setConnected(false);
+		}
+	}
+
+	/**
+	 * Fetches a response packet from the hardware within a timeout period for multiple discrete sensors
+	 * @param requestByte Request byte sent to the hardware specifying the kind of data requested
+	 * @param timeout Timeout period in milliseconds
+	 * @return Response packet received from the sensor hardware, empty if nothing was received within the timeout
+	 * @throws NoDeviceConnectedException
+	 */
+	public String getDiscretePacket(byte requestByte, int timeout) throws NoDeviceConnectedException
+	{
+		return getDiscretePacket(requestByte, timeout, (Deadline) null);
+	}
+
+	/**
+	 * Fetches a response packet from the hardware for multiple discrete sensors, within the timeout period and
+	 * before the deadline
+	 * @param requestByte Request byte sent to the hardware specifying the kind of data requested
+	 * @param timeout Timeout period in milliseconds
+	 * @param deadline Deadline of the read the request is part of, see {@link Deadline}; none if null
+	 * @return Response packet received from the sensor hardware, empty if nothing was received in time or the
+	 * deadline was cancelled
+	 * @throws NoDeviceConnectedException
+	 */
+	public String getDiscretePacket(byte requestByte, int timeout, Deadline deadline) throws NoDeviceConnectedException
+	{
+		return getDiscretePacket(requestByte, timeout, timeout, deadline, null);
+	}
+
+	/**
+	 * Fetches a response packet from the hardware for multiple discrete sensors, waiting for less than the
+	 * hardware may take to respond, e.g. for a timeout learned from the round trips observed
+	 * @param requestByte Request byte sent to the hardware specifying the kind of data requested
+	 * @param timeout Timeout period in milliseconds
+	 * @param hold Time in milliseconds the hardware may take to respond, for which a late response is recognised
+	 * and dropped instead of being handed to the next request
+	 * @param deadline Deadline of the read the request is part of, see {@link Deadline}; none if null
+	 * @param lateListener Told the round trip of a response arriving after the timeout but within the hold time;
+	 * none if null
+	 * @return Response packet received from the sensor hardware, empty if nothing was received in time or the
+	 * deadline was cancelled
+	 * @throws NoDeviceConnectedException
+	 */
+	public String getDiscretePacket(byte requestByte, int timeout, int hold, Deadline deadline, 
+			LateResponseListener lateListener) throws NoDeviceConnectedException
+	{
+		hold = Math.max(hold, timeout);
+		if(deadline != null)
+		{
+			timeout = deadline.limit(timeout);
+			if(timeout <= 0)
+				return "";
+		}
+		RequestPipeline p = getPipeline();
+		Cancellation cancellation = null;
+		try {
+			DiscreteRequest request = p.submit(requestByte, timeout, hold, null, lateListener);
+			if(deadline != null)
+				cancellation = new Cancellation(p, deadline, null).watch(request);
+			String response = request.await(timeout);
+			if(response == null && !p.abandon(request))
+				response = request.getResponse();		//arrived just as the wait timed out
+			if(response != null)
+				return response;
+		} catch (IOException e) {
+			//link to the hardware is broken
+			e.printStackTrace();
+			linkLost(p);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		} finally {
+			if(cancellation != null)
+				deadline.unregister(cancellation);
+		}
+		return "";
+	}
+
+	/**
+	 * Requests a response packet from the hardware for multiple discrete sensors without blocking the calling thread.
+	 * See {@link DeviceLayerClass#getDiscretePacket(byte, int, ResponseListener)}
+	 * @param requestByte Request byte sent to the hardware specifying the kind of data requested
+	 * @param timeout Timeout period in milliseconds
+	 * @param listener Receives the response packet, see {@link ResponseListener}
+	 * @throws NoDeviceConnectedException
+	 */
+	public void getDiscretePacket(byte requestByte, int timeout, ResponseListener listener) throws NoDeviceConnectedException
+	{
+		getDiscretePacket(requestByte, timeout, listener, null);
+	}
+
+	/**
+	 * Requests a response packet from the hardware for multiple discrete sensors without blocking the calling
+	 * thread, within the timeout period and before the deadline
+	 * @param requestByte Request byte sent to the hardware specifying the kind of data requested
+	 * @param timeout Timeout period in milliseconds
+	 * @param listener Receives the response packet, empty if nothing was received in time or the deadline was
+	 * cancelled, see {@link ResponseListener}
+	 * @param deadline Deadline of the read the request is part of, see {@link Deadline}; none if null
+	 * @throws NoDeviceConnectedException
+	 */
+	public void getDiscretePacket(byte requestByte, int timeout, ResponseListener listener, Deadline deadline) throws NoDeviceConnectedException
+	{
+		getDiscretePacket(requestByte, timeout, timeout, listener, deadline, null);
+	}
+
+	/**
+	 * Requests a response packet from the hardware for multiple discrete sensors without blocking the calling
+	 * thread, waiting for less than the hardware may take to respond.
+	 * See {@link #getDiscretePacket(byte, int, int, Deadline, LateResponseListener)}
+	 * @param requestByte Request byte sent to the hardware specifying the kind of data requested
+	 * @param timeout Timeout period in milliseconds
+	 * @param hold Time in milliseconds the hardware may take to respond, for which a late response is recognised
+	 * @param listener Receives the response packet, see {@link ResponseListener}
+	 * @param deadline Deadline of the read the request is part of, see {@link Deadline}; none if null
+	 * @param lateListener Told the round trip of a response arriving after the timeout; none if null
+	 * @throws NoDeviceConnectedException
+	 */
+	public void getDiscretePacket(byte requestByte, int timeout, int hold, ResponseListener listener, Deadline deadline, 
+			LateResponseListener lateListener) throws NoDeviceConnectedException
+	{
+		hold = Math.max(hold, timeout);
+		if(deadline != null)
+		{
+			timeout = deadline.limit(timeout);
+			if(timeout <= 0)
+			{
+				listener.onResponse("");
+				return;
+			}
+		}
+		RequestPipeline p = getPipeline();
+		try {
+			if(deadline == null)
+				p.submit(requestByte, timeout, hold, listener, lateListener);
+			else
+			{
+				Cancellation cancellation = new Cancellation(p, deadline, listener);
+				cancellation.watch(p.submit(requestByte, timeout, hold, cancellation, lateListener));
+			}
+		} catch (IOException e) {
+			//link to the hardware is broken, the listener has been called with an empty packet
+			e.printStackTrace();
+			linkLost(p);
+		}
+	}
+
+	/*
+	 * Gives up on a request when its deadline is cancelled, and stops watching once the request is done
+	 */
+	private static class Cancellation implements Runnable, ResponseListener {
+		private final RequestPipeline pipeline;
+		private final Deadline deadline;
+		private final ResponseListener listener;		//null for blocking requests
+		private volatile DiscreteRequest request = null;
+
+		Cancellation(RequestPipeline pipeline, Deadline deadline, ResponseListener listener) {
+			this.pipeline = pipeline;
+			this.deadline = deadline;
+			this.listener = listener;
+		}
+
+		Cancellation watch(DiscreteRequest request) {
+			this.request = request;
+			if(!deadline.register(this))
+				pipeline.abandon(request);		//cancelled while the request was being submitted
+			else if(request.isDone())
+				deadline.unregister(this);		//answered meanwhile
+			return this;
+		}
+
+		public void run() {
+			DiscreteRequest r = request;
+			if(r != null)
+				pipeline.abandon(r);
+		}
+
+		public void onResponse(String packet) {
+			deadline.unregister(this);
+			listener.onResponse(packet);
+		}
+	}
+
+	/**
+	 * Fetches a response stream from the hardware within a timeout period for particular continuous data sensor
+	 * @param start Request byte sent to the hardware requesting to start streaming data of the specified sensor
+	 * @param stop Byte sent to the hardware requesting it to stop streaming
+	 * @param stopAck Byte received from hardware as an acknowledgement to the stop byte
+	 * @param numLines Specifies the length of data buffer
+	 * @param timeout Timeout period in milliseconds
+	 * @return Response buffer received from the sensor hardware, shorter than numLines if the timeout expired
+	 * @throws NoDeviceConnectedException
+	 */
+	public String[] getContinuousPacket(byte start, byte stop, String stopAck, int numLines, int timeout) throws NoDeviceConnectedException
+	{
+		LineCollector collector = new LineCollector(numLines);
+		ContinuousStream stream = openContinuousStream(start, stop, stopAck, timeout, collector);
+		if(stream != null)
+		{
+			collector.await(timeout);
+			collector.close();		//lines sent before the stop byte takes effect are dropped
+			stream.stop();
+		}
+		return collector.getLines();
+	}
+
+	/**
+	 * Starts a response stream from the hardware for a particular continuous data sensor and hands its frames to
+	 * the listener as they arrive, until the hardware sends the stop ack or the stream is stopped.
+	 * @param start Request byte sent to the hardware requesting to start streaming data of the specified sensor
+	 * @param stop Byte sent to the hardware requesting it to stop streaming
+	 * @param stopAck Byte received from hardware as an acknowledgement to the stop byte
+	 * @param timeout Timeout period in milliseconds for the link to become free, and for the stop ack once the
+	 * stream is stopped
+	 * @param listener Receives the frames of the stream, see {@link StreamListener}
+	 * @return The running stream, null if it could not be started
+	 * @throws NoDeviceConnectedException
+	 */
+	public ContinuousStream openContinuousStream(byte start, byte stop, String stopAck, int timeout, StreamListener listener) throws NoDeviceConnectedException
+	{
+		RequestPipeline p = getPipeline();
+		ContinuousStream stream = new ContinuousStream(p, start, stop, stopAck, timeout, listener);
+		try {
+			if(p.openStream(start, timeout, stream))
+				return stream;
+		} catch (IOException e) {
+			//link to the hardware is broken
+			e.printStackTrace();
+			linkLost(p);
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+		}
+		return null;
+	}
+
+	/*
+	 * Collects the lines of a stream for getContinuousPacket()
+	 */
+	private static class LineCollector implements StreamListener {
+		private final String lines[];
+		private int count = 0;
+		private boolean ended = false;
+		private boolean closed = false;
+
+		LineCollector(int numLines) {
+			lines = new String[numLines];
+		}
+
+		public synchronized void onFrame(Frame frame) {
+			if(closed || count == lines.length)
+				return;
+			lines[count++] = frame.toString();
+			if(count == lines.length)
+				notifyAll();
+		}
+
+		public synchronized void onEnd(boolean acknowledged) {
+			ended = true;
+			notifyAll();
+		}
+
+		synchronized void await(int timeout) {
+			long deadline = System.currentTimeMillis() + timeout;
+			try {
+				while(count < lines.length && !ended)
+				{
+					long remaining = deadline - System.currentTimeMillis();
+					if(remaining <= 0)
+						return;
+					wait(remaining);
+				}
+			} catch (InterruptedException e) {
+				e.printStackTrace();
+			}
+		}
+
+		synchronized void close() {
+			closed = true;
+		}
+
+		synchronized String[] getLines() {
+			if(count == lines.length)
+				return lines;
+			String received[] = new String[count];
+			System.arraycopy(lines, 0, received, 0, count);
+			return received;
+		}
+	}
+
+	private RequestPipeline getPipeline() throws NoDeviceConnectedException
+	{
+		RequestPipeline p;
+		synchronized(lock){
+			p = pipeline;
+		}
+		if(!isConnected() || p == null)
+			throw new NoDeviceConnectedException("No Device Connected");
+		return p;
+	}
+
+	public String toString() {
+		return name;
+	}
+}
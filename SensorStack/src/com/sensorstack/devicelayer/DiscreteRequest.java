@@ -0,0 +1,155 @@
+package com.sensorstack.devicelayer;
+
+/**
+ * Discrete request written to the hardware and waiting for its response packet.
+ * Each request carries the sequence number of its position on the link, see {@link RequestPipeline}.
+ */
+class DiscreteRequest {
+	private final int sequence;
+	private final byte requestByte;
+	private final int hold;			//time to keep the place on the link after abandoning, in milliseconds
+	private final long deadline;
+	private final ResponseListener listener;		//null for blocking requests
+	private final LateResponseListener lateListener;	//null if late responses are only dropped
+	private String response = null;
+	private boolean completed = false;
+	private boolean notified = false;
+	private long expiry = -1;			//set once the caller has given up waiting
+	private long sent = 0;				//System.nanoTime() at which the request was last written
+	private long received = 0;			//System.nanoTime() at which the response arrived
+	private long late = -1;				//round trip of the late response in milliseconds, until reported
+
+	DiscreteRequest(int sequence, byte requestByte, int timeout, int hold, ResponseListener listener) {
+		this(sequence, requestByte, timeout, hold, listener, null);
+	}
+
+	DiscreteRequest(int sequence, byte requestByte, int timeout, int hold, ResponseListener listener, 
+			LateResponseListener lateListener) {
+		this.sequence = sequence;
+		this.requestByte = requestByte;
+		this.hold = hold;
+		this.deadline = System.currentTimeMillis() + timeout;
+		this.listener = listener;
+		this.lateListener = lateListener;
+	}
+
+	int getSequence() {
+		return sequence;
+	}
+
+	byte getRequestByte() {
+		return requestByte;
+	}
+
+	long getDeadline() {
+		return deadline;
+	}
+
+	/*
+	 * Marks the request as written to the link, again after a reconnect
+	 */
+	synchronized void sent() {
+		sent = System.nanoTime();
+	}
+
+	/**
+	 * Returns the time from writing the request to its response in microseconds, -1 if it has no response
+	 */
+	synchronized long getRoundTrip() {
+		return completed ? (received - sent) / 1000 : -1;
+	}
+
+	/**
+	 * Hands the response packet to the request
+	 * @return false if the caller already gave up on the request and the packet is discarded
+	 */
+	synchronized boolean complete(String frame) {
+		if(completed || expiry >= 0)
+			return false;
+		response = frame;
+		received = System.nanoTime();
+		completed = true;
+		notifyAll();
+		return true;
+	}
+
+	/**
+	 * Takes note of the late response of a request given up by its caller, to be reported by notifyListener()
+	 * @return true if the round trip is to be reported
+	 */
+	synchronized boolean completeLate() {
+		if(expiry < 0 || lateListener == null)
+			return false;
+		late = (System.nanoTime() - sent) / 1000000;
+		return true;
+	}
+
+	/**
+	 * Marks the request as given up by its caller. The request keeps its place on the link for one more
+	 * timeout period, the full one if a deadline cut the wait short, so that a late response can still be
+	 * recognised and dropped.
+	 * @return false if the response arrived in the meantime or the request was already given up
+	 */
+	synchronized boolean abandon(long now) {
+		if(completed || expiry >= 0)
+			return false;
+		expiry = now + hold;
+		notifyAll();
+		return true;
+	}
+
+	synchronized boolean isDone() {
+		return completed || expiry >= 0;
+	}
+
+	synchronized boolean isAbandoned() {
+		return expiry >= 0;
+	}
+
+	synchronized boolean isExpired(long now) {
+		return expiry >= 0 && now >= expiry;
+	}
+
+	/**
+	 * Waits for the response packet
+	 * @param timeout Timeout period in milliseconds
+	 * @return Response packet, null if it did not arrive in time
+	 */
+	synchronized String await(long timeout) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while(!completed && expiry < 0)
+		{
+			long remaining = deadline - System.currentTimeMillis();
+			if(remaining <= 0)
+				break;
+			wait(remaining);
+		}
+		return response;
+	}
+
+	synchronized String getResponse() {
+		return response;
+	}
+
+	/**
+	 * Calls the listener, once, with the outcome of the request, and the late listener with the round trip of a
+	 * late response. Must not be called holding any pipeline lock.
+	 */
+	void notifyListener() {
+		String packet = null;
+		long roundTrip;
+		synchronized (this) {
+			if(listener != null && !notified && (completed || expiry >= 0))
+			{
+				notified = true;
+				packet = (response == null) ? "" : response;
+			}
+			roundTrip = late;
+			late = -1;
+		}
+		if(packet != null)
+			listener.onResponse(packet);
+		if(roundTrip >= 0)
+			lateListener.onLateResponse(roundTrip);
+	}
+}
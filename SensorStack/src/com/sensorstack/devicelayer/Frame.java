@@ -0,0 +1,121 @@
+package com.sensorstack.devicelayer;
+
+import java.nio.charset.Charset;
+
+/**
+ * Reusable view of one frame (line) received from the sensor hardware, without its line terminator.
+ * The bytes are valid from {@link #getOffset()} for {@link #getLength()} bytes of {@link #getBuffer()} until the
+ * frame is filled again, so a reader can consume a stream frame by frame without allocating.
+ * The hardware sends plain ASCII, so each byte is one character, and the frame can be parsed in place
+ * as a CharSequence.
+ */
+public class Frame implements CharSequence {
+	/**
+	 * Maps each byte to the character of the same value and back, so binary bytes survive as characters
+	 */
+	static final Charset CHARSET = Charset.forName("ISO-8859-1");
+
+	private byte buffer[];
+	private int length = 0;
+
+	/**
+	 * Constructor for an empty frame
+	 */
+	public Frame() {
+		this(64);
+	}
+
+	/**
+	 * Constructor for an empty frame
+	 * @param capacity Initial buffer size in bytes; grown when a longer frame arrives
+	 */
+	public Frame(int capacity) {
+		buffer = new byte[capacity];
+	}
+
+	/**
+	 * Returns the buffer holding the frame
+	 */
+	public byte[] getBuffer() {
+		return buffer;
+	}
+
+	/**
+	 * Returns the index of the first byte of the frame in the buffer
+	 */
+	public int getOffset() {
+		return 0;
+	}
+
+	/**
+	 * Returns the number of bytes in the frame
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the byte at the specified position of the frame
+	 * @param index Position within the frame, from 0 to getLength()-1
+	 */
+	public byte byteAt(int index) {
+		return buffer[index];
+	}
+
+	public int length() {
+		return length;
+	}
+
+	public char charAt(int index) {
+		return (char) (buffer[index] & 0xff);
+	}
+
+	public CharSequence subSequence(int start, int end) {
+		return new String(buffer, start, end - start, CHARSET);
+	}
+
+	/**
+	 * Compares the frame with a string without converting the frame
+	 * @param s String to compare with
+	 * @return true if the frame holds exactly the characters of s
+	 */
+	public boolean contentEquals(String s) {
+		if(s == null || s.length() != length)
+			return false;
+		for(int i=0;i<length;i++)
+			if((buffer[i] & 0xff) != s.charAt(i))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns the frame as a String, as returned by {@link Transport#readFrame(int)}
+	 */
+	public String toString() {
+		return new String(buffer, 0, length, CHARSET);
+	}
+
+	/*
+	 * Makes room for a frame of the given length, discarding the current content
+	 */
+	byte[] reset(int length) {
+		if(buffer.length < length)
+			buffer = new byte[Math.max(length, buffer.length * 2)];
+		this.length = length;
+		return buffer;
+	}
+
+	/*
+	 * Copies part of another buffer into the frame
+	 */
+	void set(byte src[], int offset, int length) {
+		System.arraycopy(src, offset, reset(length), 0, length);
+	}
+
+	void set(String s) {
+		int n = s.length();
+		byte b[] = reset(n);
+		for(int i=0;i<n;i++)
+			b[i] = (byte) s.charAt(i);
+	}
+}
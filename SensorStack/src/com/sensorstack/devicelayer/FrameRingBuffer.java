@@ -0,0 +1,193 @@
+package com.sensorstack.devicelayer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import android.util.Log;
+
+/**
+ * Bounded ring of bytes received from the hardware, cut into frames on the way out.
+ * The thread reading the link only copies bytes in and never waits for a request, so the socket is drained
+ * continuously and unsolicited data is kept. Frames end with '\n', '\r' or "\r\n", as accepted by
+ * BufferedReader.readLine().
+ * When the ring is full the oldest frames are dropped to make room, so a stalled consumer loses old data
+ * instead of stalling the link.
+ */
+class FrameRingBuffer {
+	private static final String TAG = "FrameRingBuffer";
+	/**
+	 * Default capacity in bytes; several seconds of ECG stream
+	 */
+	static final int DEFAULT_CAPACITY = 8192;
+
+	private final byte ring[];
+	private int head = 0;			//index of the oldest byte
+	private int count = 0;			//bytes held
+	private int scanned = 0;		//bytes after head known not to contain a terminator
+	private boolean skipLF = false;	//last frame ended with '\r', so a following '\n' belongs to it
+	private boolean closed = false;
+	private long dropped = 0;
+
+	FrameRingBuffer() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	FrameRingBuffer(int capacity) {
+		ring = new byte[capacity];
+	}
+
+	/**
+	 * Appends bytes read from the link and wakes up threads waiting for a frame
+	 */
+	synchronized void write(byte data[], int offset, int length) {
+		if(length > ring.length)
+		{
+			//only the newest bytes can be kept
+			dropped += length - ring.length;
+			offset += length - ring.length;
+			length = ring.length;
+		}
+		if(ring.length - count < length)
+			makeRoom(length);
+		int tail = (head + count) % ring.length;
+		int first = Math.min(length, ring.length - tail);
+		System.arraycopy(data, offset, ring, tail, first);
+		System.arraycopy(data, offset + first, ring, 0, length - first);
+		count += length;
+		notifyAll();
+	}
+
+	/**
+	 * Appends the bytes remaining in a buffer read from the link
+	 */
+	void write(ByteBuffer data) {
+		if(data.hasArray())
+		{
+			write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+			data.position(data.limit());
+		}
+		else
+		{
+			byte copy[] = new byte[data.remaining()];
+			data.get(copy);
+			write(copy, 0, copy.length);
+		}
+	}
+
+	/**
+	 * Returns the next complete frame as a String, see {@link #readFrame(Frame, long)}
+	 * @return Frame, null if no complete frame arrived within the timeout
+	 */
+	String readFrame(long timeout) throws IOException, InterruptedException {
+		Frame frame = new Frame();
+		return readFrame(frame, timeout) ? frame.toString() : null;
+	}
+
+	/**
+	 * Copies the next complete frame, without its terminator, into a reusable frame
+	 * @param frame Receives the frame
+	 * @param timeout Timeout period in milliseconds
+	 * @return false if no complete frame arrived within the timeout
+	 * @throws IOException if the link was closed and all frames have been read
+	 */
+	synchronized boolean readFrame(Frame frame, long timeout) throws IOException, InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		while(true)
+		{
+			int length = nextTerminator();
+			if(length >= 0)
+			{
+				byte dest[] = frame.reset(length);
+				int first = Math.min(length, ring.length - head);
+				System.arraycopy(ring, head, dest, 0, first);
+				System.arraycopy(ring, 0, dest, first, length - first);
+				consume(length);
+				return true;
+			}
+			if(closed)
+				throw new IOException("End of stream");
+			long remaining = deadline - System.currentTimeMillis();
+			if(remaining <= 0)
+				return false;
+			wait(remaining);
+		}
+	}
+
+	/**
+	 * Marks the end of the stream. Frames already complete can still be read.
+	 */
+	synchronized void close() {
+		closed = true;
+		notifyAll();
+	}
+
+	/**
+	 * Discards all bytes held
+	 */
+	synchronized void clear() {
+		head = 0;
+		count = 0;
+		scanned = 0;
+		skipLF = false;
+	}
+
+	/**
+	 * Returns the number of bytes dropped because the ring was full
+	 */
+	synchronized long getDropped() {
+		return dropped;
+	}
+
+	/*
+	 * Returns the length of the frame at head, -1 if its terminator has not arrived yet
+	 */
+	private int nextTerminator() {
+		if(skipLF && count > 0)
+		{
+			skipLF = false;
+			if(ring[head] == '\n')
+				discard(1);
+		}
+		for(; scanned < count; scanned++)
+		{
+			byte b = ring[(head + scanned) % ring.length];
+			if(b == '\n' || b == '\r')
+				return scanned;
+		}
+		return -1;
+	}
+
+	/*
+	 * Removes a frame of the given length and its terminator
+	 */
+	private void consume(int length) {
+		skipLF = ring[(head + length) % ring.length] == '\r';
+		discard(length + 1);
+	}
+
+	private void discard(int length) {
+		head = (head + length) % ring.length;
+		count -= length;
+		scanned = Math.max(0, scanned - length);
+	}
+
+	/*
+	 * Drops whole frames from head until length more bytes fit
+	 */
+	private void makeRoom(int length) {
+		int needed = length - (ring.length - count);
+		int freed = 0;
+		while(freed < needed)
+		{
+			int frame = nextTerminator();
+			int size = (frame >= 0) ? frame + 1 : count;
+			if(frame >= 0)
+				consume(frame);
+			else
+				discard(size);
+			freed += size;
+		}
+		dropped += freed;
+		Log.w(TAG, "Receive buffer full, " + freed + " bytes dropped");
+	}
+}
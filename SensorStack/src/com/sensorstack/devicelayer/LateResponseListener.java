@@ -0,0 +1,15 @@
+package com.sensorstack.devicelayer;
+
+/**
+ * Told of a response which arrived after its request was given up, and was dropped, see
+ * {@link DeviceSession#getDiscretePacket(byte, int, int, Deadline, LateResponseListener)}.
+ * A caller waiting for less than the hardware may take, e.g. for a timeout learned from the round trips observed,
+ * learns from it how long the hardware took.
+ */
+public interface LateResponseListener {
+	/**
+	 * Called on the thread reading the transport. Implementations must return quickly.
+	 * @param roundTrip Time in milliseconds from writing the request to its response
+	 */
+	void onLateResponse(long roundTrip);
+}
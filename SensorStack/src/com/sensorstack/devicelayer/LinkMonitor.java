@@ -0,0 +1,263 @@
+package com.sensorstack.devicelayer;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+/**
+ * Watches the health of the link of one session with heartbeat probes, see {@link DeviceSession#startLinkMonitor(int)}.
+ * At every interval the probe byte is written as a discrete request, unless requests are in flight or a stream
+ * is running, so the probes neither queue behind other traffic nor add to it. Neither is a probe written while
+ * a request which timed out still holds its place for a late response, as the probe's response would be
+ * taken for it. The time from writing the probe to
+ * its response is its round trip; a probe without response within the probe timeout is lost.
+ * The last WINDOW probes are kept, giving a rolling view of the link: latency percentiles and histogram, and
+ * the loss rate. The monitor also keeps a smoothed round trip and its variation (as in RFC 6298), from which
+ * request timeouts can be derived, see {@link #getAdaptiveTimeout()}.
+ * The probe is by default the metadata bit without a sensor, which the hardware answers without reading any
+ * sensor; another request byte can be set, see {@link #setProbe(byte)}. Whichever it is, the hardware must answer
+ * it every time: responses are matched to requests in the order the requests were written, so a probe left
+ * unanswered would have the response to the next request taken for it, and every response after it go to the
+ * request before its own.
+ */
+public class LinkMonitor {
+	private static final String TAG = "LinkMonitor";
+	/**
+	 * Request byte of the probe until set: metadata of no sensor
+	 */
+	public static final byte DEFAULT_PROBE = (byte) 0x80;
+	/**
+	 * Number of probes the statistics are kept for
+	 */
+	public static final int WINDOW = 128;
+	/**
+	 * Upper bounds, in milliseconds, of the buckets of {@link #getHistogram()}; the last bucket is unbounded
+	 */
+	public static final int BUCKETS[] = {5, 10, 20, 50, 100, 200, 500, 1000, 2000};
+	/**
+	 * Default timeout (in milliseconds) after which a probe is counted as lost
+	 */
+	public static final int DEFAULT_PROBE_TIMEOUT = 2000;
+
+	private final DeviceSession session;
+	private final int interval;
+	private int probeTimeout = DEFAULT_PROBE_TIMEOUT;
+	private byte probe = DEFAULT_PROBE;
+	private final ScheduledExecutorService timer;
+	private final long roundTrips[] = new long[WINDOW];	//in microseconds, -1 for a lost probe
+	private int count = 0;				//probes in the window
+	private int next = 0;				//index of the slot for the next probe
+	private long probes = 0;
+	private long lost = 0;
+	private double smoothed = -1;		//smoothed round trip in microseconds, -1 before the first
+	private double variation = 0;
+	private boolean outstanding = false;	//a probe is waiting for its response
+
+	LinkMonitor(DeviceSession session, int interval) {
+		this.session = session;
+		this.interval = interval;
+		timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, TAG);
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	void start() {
+		timer.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				probe();
+			}
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	void stop() {
+		timer.shutdownNow();
+	}
+
+	/**
+	 * Sets the time after which a probe is counted as lost
+	 * @param timeout Timeout period in milliseconds
+	 */
+	public synchronized void setProbeTimeout(int timeout) {
+		probeTimeout = timeout;
+	}
+
+	/**
+	 * Sets the request byte written as probe, for hardware which does not answer {@link #DEFAULT_PROBE}. The
+	 * hardware must answer the byte every time and without delay, e.g. with the reading of a sensor which is always
+	 * present; a byte it leaves unanswered puts the responses to all later requests out of step, see above.
+	 * @param probe Request byte of the probe
+	 */
+	public synchronized void setProbe(byte probe) {
+		this.probe = probe;
+	}
+
+	/**
+	 * Returns the request byte written as probe
+	 */
+	public synchronized byte getProbe() {
+		return probe;
+	}
+
+	/**
+	 * Returns the interval between probes in milliseconds
+	 */
+	public int getInterval() {
+		return interval;
+	}
+
+	private void probe() {
+		int timeout;
+		byte request;
+		synchronized (this) {
+			if(outstanding)
+				return;
+			timeout = probeTimeout;
+			request = probe;
+		}
+		RequestPipeline p = session.getIdlePipeline();
+		if(p == null)
+			return;			//not connected, or busy with other traffic
+		final DiscreteRequest holder[] = new DiscreteRequest[1];
+		synchronized (this) {
+			outstanding = true;
+		}
+		try {
+			//the response may arrive before submit() returns, so the listener waits for the request
+			synchronized (holder) {
+				holder[0] = p.submit(request, timeout, new ResponseListener() {
+					public void onResponse(String packet) {
+						DiscreteRequest request;
+						synchronized (holder) {
+							request = holder[0];
+						}
+						record(packet.length() > 0 ? request.getRoundTrip() : -1);
+					}
+				});
+			}
+		} catch (IOException e) {
+			//the listener has been told, and the session has seen the broken link
+			Log.w(TAG, "probe not sent", e);
+		}
+	}
+
+	/*
+	 * Adds the outcome of a probe: the round trip in microseconds, -1 if lost
+	 */
+	private synchronized void record(long roundTrip) {
+		outstanding = false;
+		probes++;
+		roundTrips[next] = roundTrip;
+		next = (next + 1) % WINDOW;
+		count = Math.min(count + 1, WINDOW);
+		if(roundTrip < 0)
+		{
+			lost++;
+			return;
+		}
+		if(smoothed < 0)
+		{
+			smoothed = roundTrip;
+			variation = roundTrip / 2.0;
+		}
+		else
+		{
+			variation = 0.75 * variation + 0.25 * Math.abs(smoothed - roundTrip);
+			smoothed = 0.875 * smoothed + 0.125 * roundTrip;
+		}
+	}
+
+	/**
+	 * Returns the number of probes sent since the monitor was started
+	 */
+	public synchronized long getProbeCount() {
+		return probes;
+	}
+
+	/**
+	 * Returns the number of probes lost since the monitor was started
+	 */
+	public synchronized long getLostCount() {
+		return lost;
+	}
+
+	/**
+	 * Returns the share of the probes in the window which were lost, from 0 to 1
+	 */
+	public synchronized float getLossRate() {
+		if(count == 0)
+			return 0;
+		int n = 0;
+		for(int i=0;i<count;i++)
+			if(roundTrips[i] < 0)
+				n++;
+		return (float) n / count;
+	}
+
+	/**
+	 * Returns a percentile of the round trips of the probes in the window which were answered
+	 * @param quantile From 0 to 1, e.g. 0.5 for the median or 0.99
+	 * @return Round trip in milliseconds, -1 if no probe in the window was answered
+	 */
+	public synchronized float getLatency(double quantile) {
+		long sorted[] = new long[count];
+		int n = 0;
+		for(int i=0;i<count;i++)
+			if(roundTrips[i] >= 0)
+				sorted[n++] = roundTrips[i];
+		if(n == 0)
+			return -1;
+		Arrays.sort(sorted, 0, n);
+		int index = (int) Math.ceil(quantile * n) - 1;
+		return sorted[Math.min(Math.max(index, 0), n - 1)] / 1000f;
+	}
+
+	/**
+	 * Returns the smoothed round trip in milliseconds, -1 before the first probe was answered
+	 */
+	public synchronized float getSmoothedLatency() {
+		return (smoothed < 0) ? -1 : (float) (smoothed / 1000);
+	}
+
+	/**
+	 * Returns the number of probes in the window per round trip bucket, see {@link #BUCKETS}. The array has one
+	 * element more than BUCKETS, for round trips above the last bound.
+	 */
+	public synchronized int[] getHistogram() {
+		int histogram[] = new int[BUCKETS.length + 1];
+		for(int i=0;i<count;i++)
+		{
+			if(roundTrips[i] < 0)
+				continue;
+			int b = 0;
+			while(b < BUCKETS.length && roundTrips[i] > BUCKETS[b] * 1000L)
+				b++;
+			histogram[b]++;
+		}
+		return histogram;
+	}
+
+	/**
+	 * Returns a timeout covering the round trip of the link with margin for its variation: the smoothed round
+	 * trip plus four times its variation, at least 1 ms. The time the hardware takes to read a sensor comes on top.
+	 * @return Timeout in milliseconds, the probe timeout before the first probe was answered
+	 */
+	public synchronized int getAdaptiveTimeout() {
+		if(smoothed < 0)
+			return probeTimeout;
+		return (int) Math.max(Math.ceil((smoothed + 4 * variation) / 1000), 1);
+	}
+
+	public synchronized String toString() {
+		return "LinkMonitor[" + session.getName() + ": " + count + " probes, loss " + getLossRate()
+				+ ", p50 " + getLatency(0.5) + " ms, p99 " + getLatency(0.99) + " ms]";
+	}
+}
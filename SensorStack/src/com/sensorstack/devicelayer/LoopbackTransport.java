@@ -0,0 +1,82 @@
+package com.sensorstack.devicelayer;
+
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process transport which hands every request byte to a {@link Peer} standing in for the sensor hardware.
+ * The peer answers by calling {@link #send(String)}. No Bluetooth, USB or network hardware is involved, so the
+ * complete request path can be run and measured on a plain JVM.
+ */
+public class LoopbackTransport implements Transport {
+
+	/**
+	 * Stand-in for the sensor hardware on the far end of a loopback link.
+	 */
+	public interface Peer {
+		/**
+		 * Called for every byte written to the link
+		 * @param data Request byte written by DeviceLayerClass
+		 * @param link Link on which the response frames must be sent
+		 */
+		void onRequest(byte data, LoopbackTransport link);
+	}
+
+	private final Peer peer;
+	private final BlockingQueue<String> frames = new LinkedBlockingQueue<String>();
+	private volatile boolean open = false;
+
+	/**
+	 * Constructor to attach the link to a peer
+	 * @param peer Stand-in for the sensor hardware
+	 */
+	public LoopbackTransport(Peer peer) {
+		this.peer = peer;
+	}
+
+	public void open() {
+		frames.clear();
+		open = true;
+	}
+
+	public void write(byte data) throws IOException {
+		if(!open)
+			throw new IOException("Loopback link is closed");
+		peer.onRequest(data, this);
+	}
+
+	public String readFrame(int timeout) throws IOException, InterruptedException {
+		if(!open)
+			throw new IOException("Loopback link is closed");
+		return frames.poll(timeout, TimeUnit.MILLISECONDS);
+	}
+
+	public boolean readFrame(Frame frame, int timeout) throws IOException, InterruptedException {
+		String s = readFrame(timeout);
+		if(s == null)
+			return false;
+		frame.set(s);
+		return true;
+	}
+
+	public void close() {
+		open = false;
+		frames.clear();
+	}
+
+	/**
+	 * Sends a frame from the peer towards DeviceLayerClass. Frames sent on a closed link are dropped.
+	 * May be called from any thread.
+	 * @param frame Line of data without the line terminator
+	 */
+	public void send(String frame) {
+		if(open)
+			frames.offer(frame);
+	}
+
+	public boolean isOpen() {
+		return open;
+	}
+}
@@ -2,10 +2,13 @@ package com.sensorstack.devicelayer;
 
 /**
  * Encapsulates parameters for defining and identifying various supported mode of connection with the hardware.
- * Currently, Bluetooth is supported.
+ * Currently, Bluetooth, USB (CDC-ACM serial port, see {@link UsbTransport}) and WIFI (TCP connection to a sensor hub,
+ * see {@link TcpTransport}) are supported.
+ * EMULATOR runs against {@link SensorEmulator} instead of sensor hardware.
  */
 public final class Mode {
 	public static final int BLUETOOTH=1;
 	public static final int USB=2;
 	public static final int WIFI=3;
+	public static final int EMULATOR=4;
 }
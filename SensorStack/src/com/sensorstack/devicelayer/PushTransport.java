@@ -0,0 +1,15 @@
+package com.sensorstack.devicelayer;
+
+/**
+ * Transport which receives its frames on a thread of its own and tells the reader when frames are ready, so the
+ * {@link RequestPipeline} reads them on that thread instead of blocking a thread of its own in readFrame(),
+ * e.g. {@link TcpTransport}, whose frames are received by the shared {@link TcpHubReader}.
+ */
+interface PushTransport extends Transport {
+	/**
+	 * Sets the action run when frames can be read without waiting, or the link broke, in which case readFrame()
+	 * throws once the frames received have been read. The action is run on the thread receiving the frames.
+	 * @param ready Action to run, null to stop pushing
+	 */
+	void setReadyListener(Runnable ready);
+}
@@ -0,0 +1,31 @@
+package com.sensorstack.devicelayer;
+
+/**
+ * Transport which restores a dropped link by itself, e.g. {@link BluetoothTransport}.
+ * While the link is down, reads time out instead of failing and writes are lost, so the pipeline holds back its
+ * requests and writes the outstanding ones again once the link is restored. If the link cannot be restored,
+ * reads fail as for any other transport.
+ */
+interface ReconnectingTransport extends Transport {
+
+	/**
+	 * Sets the listener told when the link drops and when it is restored; null removes it
+	 */
+	void setLinkListener(LinkListener listener);
+
+	/**
+	 * Called on the thread supervising the link, never while the transport holds a lock of its own,
+	 * so that the listener may write to the transport.
+	 */
+	interface LinkListener {
+		/**
+		 * The link dropped and is being restored
+		 */
+		void onLinkDown();
+
+		/**
+		 * The link is back; requests written while it was down were lost
+		 */
+		void onLinkRestored();
+	}
+}
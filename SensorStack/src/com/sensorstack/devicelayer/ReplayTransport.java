@@ -0,0 +1,161 @@
+package com.sensorstack.devicelayer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Transport playing back a capture recorded by {@link CaptureTap} instead of talking to hardware. The capture file
+ * is memory-mapped, so frames are copied straight from the page cache into the reader's frame.
+ * The recorded conversation is kept in step with the requests of the application: a frame is only handed out
+ * once as many request bytes have been written as had been before it in the capture. The values of the request
+ * bytes are not compared.
+ * Paced playback keeps the recorded gaps between a request and its frames and between frames; otherwise
+ * frames are handed out as fast as they are read, which makes the replay a benchmark of the parsing and
+ * mapping layers above the transport.
+ * Reading past the end of the capture fails like a broken link.
+ */
+public class ReplayTransport implements Transport {
+
+	private final File file;
+	private final boolean paced;
+	private MappedByteBuffer capture = null;
+	private long startTime = 0;		//wall clock time of the recording, in milliseconds
+	private long recorded = 0;		//time of the last record passed, in nanoseconds since the start of the capture
+	private long base = 0;			//System.nanoTime() at which the recording started, as replayed
+	private int written = 0;		//request bytes written by the application
+	private int passed = 0;			//request records passed in the capture
+	private boolean open = false;
+
+	/**
+	 * Constructor to set the capture to replay
+	 * @param file Capture file written by {@link CaptureTap}
+	 * @param paced true to keep the recorded timing, false to replay as fast as possible
+	 */
+	public ReplayTransport(File file, boolean paced) {
+		this.file = file;
+		this.paced = paced;
+	}
+
+	public synchronized void open() throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "r");
+		try {
+			capture = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, raf.length());
+		} finally {
+			raf.close();		//the mapping stays valid
+		}
+		try {
+			if(capture.getInt() != CaptureTap.MAGIC || capture.get() != CaptureTap.VERSION)
+				throw new IOException("Not a capture file: " + file);
+			startTime = capture.getLong();
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Capture file truncated: " + file);
+		}
+		recorded = 0;
+		written = 0;
+		passed = 0;
+		base = System.nanoTime();
+		open = true;
+	}
+
+	public synchronized void write(byte data) throws IOException {
+		if(!open)
+			throw new IOException("Replay is closed");
+		written++;
+		notifyAll();
+	}
+
+	public String readFrame(int timeout) throws IOException, InterruptedException {
+		Frame frame = new Frame();
+		return readFrame(frame, timeout) ? frame.toString() : null;
+	}
+
+	public synchronized boolean readFrame(Frame frame, int timeout) throws IOException, InterruptedException {
+		long deadline = System.nanoTime() + timeout * 1000000L;
+		while(true)
+		{
+			if(!open)
+				throw new IOException("Replay is closed");
+			if(!capture.hasRemaining())
+				throw new IOException("End of capture");
+			int mark = capture.position();
+			int type;
+			long time;
+			try {
+				type = capture.get();
+				time = recorded + readVarint();
+			} catch (BufferUnderflowException e) {
+				throw new IOException("Capture file truncated");
+			}
+			long now = System.nanoTime();
+			long wait;
+			if(type == CaptureTap.REQUEST)
+			{
+				if(passed < written)
+				{
+					capture.get();
+					passed++;
+					recorded = time;
+					//frames are timed from when the application actually sent the request
+					if(paced)
+						base = Math.max(base, now - time);
+					continue;
+				}
+				wait = deadline - now;
+			}
+			else if(type == CaptureTap.FRAME)
+			{
+				long due = base + time;
+				if(!paced || due <= now)
+				{
+					try {
+						int length = (int) readVarint();
+						byte dest[] = frame.reset(length);
+						capture.get(dest, 0, length);
+					} catch (BufferUnderflowException e) {
+						throw new IOException("Capture file truncated");
+					}
+					recorded = time;
+					return true;
+				}
+				wait = Math.min(due, deadline) - now;
+			}
+			else
+				throw new IOException("Corrupt capture record of type " + type);
+			capture.position(mark);
+			if(deadline - now <= 0)
+				return false;
+			long millis = wait / 1000000L;
+			wait(Math.max(1, millis), 0);
+		}
+	}
+
+	/**
+	 * Returns the wall clock time at which the capture was recorded, in milliseconds
+	 */
+	public synchronized long getStartTime() {
+		return startTime;
+	}
+
+	public synchronized void close() {
+		open = false;
+		capture = null;
+		notifyAll();
+	}
+
+	private long readVarint() {
+		long v = 0;
+		int shift = 0;
+		while(true)
+		{
+			int b = capture.get();
+			v |= (long) (b & 0x7f) << shift;
+			if((b & 0x80) == 0)
+				return v;
+			shift += 7;
+		}
+	}
+}
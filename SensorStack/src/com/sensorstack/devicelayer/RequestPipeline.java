@@ -0,0 +1,761 @@
+package com.sensorstack.devicelayer;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import android.util.Log;
+
+import com.sensorstack.PacketSchema;
+import com.sensorstack.sensors.Sensor;
+
+/**
+ * Matches the frames read from a transport with the requests written to it.
+ * The hardware answers request bytes in the order they were received, so every discrete request is given a
+ * sequence number and waits in a FIFO table until the frame for its position arrives. Up to depth requests can
+ * be outstanding on the link at the same time, which hides the round trip time of slow links. Further requests
+ * wait in a backlog and are written by whichever thread frees a slot, so submitting never blocks.
+ * A request whose caller timed out keeps its position in the table for one more timeout period, so that its late
+ * response is dropped instead of being handed to the next caller; it also keeps its slot, so at depth 1 nothing is
+ * written until its response arrived or its time ran out, and a lost response delays the next request instead of
+ * putting the responses to all later ones out of step.
+ * At greater depths a lost response would still hand every later response to the request before its own. So a
+ * response naming its sensors, a binary frame by its request byte or a text packet by the identifiers of the
+ * session's packet schema (see {@link DeviceSession#setPacketSchema(PacketSchema)}), goes to the first request
+ * still waiting which asked for all of them, and the requests before it, whose responses were lost, are given up.
+ * A response which names no sensors, and any response while a request of other than discrete sensors (metadata,
+ * probe, negotiation) comes first, is matched by position alone.
+ * While a continuous stream is open, all frames are routed to the stream. If the stop ack of a stream does not
+ * arrive in time, the stop byte is written once more and frames are drained until the link has been quiet for
+ * DRAIN_QUIET, or for at most the timeout of the stream, so that stream frames and a late ack are not taken for
+ * responses to the discrete requests waiting behind the stream.
+ * Every frame is checked before it is routed: a line holding several binary frames, because noise swallowed a
+ * terminator, is split at each STX and noise before the first one is skipped, and binary frames failing their
+ * CRC are counted and dropped from streams. A garbled response still takes the position of its request, as the
+ * hardware sends nothing else in its place.
+ * The frames are read by a thread of the pipeline, except on a {@link PushTransport}, which hands them over on its
+ * own thread, with a timer shared by all such pipelines giving up the requests whose deadline passed; so the TCP
+ * connections to many hubs are served by the TcpHubReader thread and the timer alone.
+ * When a {@link ReconnectingTransport} drops its link, requests are held back until it is restored; the
+ * requests outstanding at the time of the drop are then written again in their original order, so their
+ * positions in the table still match the wire.
+ */
+class RequestPipeline implements Runnable, ReconnectingTransport.LinkListener {
+	private static final String TAG = "RequestPipeline";
+	/**
+	 * Interval (in milliseconds) at which the reader thread checks whether it has been stopped
+	 */
+	static final int POLL_INTERVAL = 250;
+	/**
+	 * Time (in milliseconds) without frames after which a stream that was not acknowledged is taken to have stopped
+	 */
+	static final int DRAIN_QUIET = 250;
+	private static final int DISCRETE_SENSORS = (1 << Sensor.NUM_DISCRETE) - 1;
+
+	private final DeviceSession session;
+	private final Transport transport;
+	private final LinkedList<DiscreteRequest> backlog = new LinkedList<DiscreteRequest>();	//not yet written
+	private final LinkedList<DiscreteRequest> pending = new LinkedList<DiscreteRequest>();	//written, in wire order
+	private int depth;
+	private int nextSequence = 0;
+	private boolean streamRequested = false;
+	private boolean linkUp = true;		//false while a reconnecting transport restores its link
+	private volatile ContinuousStream stream = null;	//written holding the table, read by the reader without it
+	private final Frame frame = new Frame();		//reused for every read, only touched by the reader thread or, locked, by the pushing one
+	private final Frame segment = new Frame();	//binary frame split from a line, only touched by the reader thread
+	private final BinaryFrame decoded = new BinaryFrame();	//response checked for its sensors, guarded by the table
+	private boolean draining = false;		//discarding the rest of a stream which was not acknowledged
+	private long drainQuiet;				//end of the drain if no further frame arrives
+	private long drainDeadline;			//end of the drain at the latest
+	private volatile CaptureTap tap = null;		//records the traffic, if set
+	private volatile boolean running = false;
+	private Thread thread = null;
+	private static ScheduledExecutorService timer = null;	//shared by the pipelines on push transports
+	private ScheduledFuture<?> tick = null;		//housekeeping of a push transport, guarded by this
+	private final Runnable ready = new Runnable() {
+		public void run() {
+			readReady();
+		}
+	};
+	private final Runnable housekeeping = new Runnable() {
+		public void run() {
+			housekeep();
+		}
+	};
+
+	RequestPipeline(DeviceSession session, Transport transport, int depth) {
+		this.session = session;
+		this.transport = transport;
+		this.depth = depth;
+	}
+
+	Transport getTransport() {
+		return transport;
+	}
+
+	void setTap(CaptureTap tap) {
+		this.tap = tap;
+	}
+
+	synchronized void start() {
+		if(running)
+			return;
+		running = true;
+		if(transport instanceof ReconnectingTransport)
+			((ReconnectingTransport) transport).setLinkListener(this);
+		if(transport instanceof PushTransport)
+		{
+			tick = getTimer().schedule(housekeeping, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+			((PushTransport) transport).setReadyListener(ready);
+			ready.run();		//frames received before the listener was set
+			return;
+		}
+		thread = new Thread(this, TAG);
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/*
+	 * Returns the timer doing the housekeeping of all pipelines on push transports
+	 */
+	private static synchronized ScheduledExecutorService getTimer() {
+		if(timer == null)
+		{
+			timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, TAG + "-timer");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return timer;
+	}
+
+	synchronized void stop() {
+		running = false;
+		if(transport instanceof ReconnectingTransport)
+			((ReconnectingTransport) transport).setLinkListener(null);
+		if(thread != null)
+			thread.interrupt();
+		detach();
+		notifyListeners(failAll());
+		endStream();
+	}
+
+	void setDepth(int depth) {
+		List<DiscreteRequest> done = new ArrayList<DiscreteRequest>();
+		synchronized(pending){
+			this.depth = depth;
+			pump(done);
+			pending.notifyAll();
+		}
+		notifyListeners(done);
+	}
+
+	/**
+	 * Queues a discrete request. It is written to the link as soon as a slot in the pipeline is free.
+	 * @param requestByte Request byte
+	 * @param timeout Timeout period in milliseconds, including the time spent waiting for a free slot
+	 * @param listener Called with the response on the reader thread, null for a blocking request
+	 * @return The queued request
+	 * @throws IOException if the link broke while writing
+	 */
+	DiscreteRequest submit(byte requestByte, int timeout, ResponseListener listener) throws IOException {
+		return submit(requestByte, timeout, timeout, listener);
+	}
+
+	/**
+	 * Queues a discrete request which waits for less than the hardware may take to respond, e.g. to meet a deadline
+	 * @param hold Time in milliseconds the hardware may take to respond, for which a late response is recognised
+	 */
+	DiscreteRequest submit(byte requestByte, int timeout, int hold, ResponseListener listener) throws IOException {
+		return submit(requestByte, timeout, hold, listener, null);
+	}
+
+	/**
+	 * Queues a discrete request whose caller is told the round trip of a late response
+	 * @param lateListener Called with the round trip of a response arriving after the request was given up
+	 */
+	DiscreteRequest submit(byte requestByte, int timeout, int hold, ResponseListener listener, 
+			LateResponseListener lateListener) throws IOException {
+		List<DiscreteRequest> done = new ArrayList<DiscreteRequest>();
+		DiscreteRequest request;
+		boolean written;
+		synchronized(pending){
+			request = new DiscreteRequest(nextSequence++, requestByte, timeout, hold, listener, lateListener);
+			backlog.addLast(request);
+			written = pump(done);
+		}
+		notifyListeners(done);
+		if(!written)
+			throw new IOException("Write to the hardware failed");
+		return request;
+	}
+
+	/**
+	 * Gives up on a request which did not get its response in time, freeing its pipeline slot
+	 * @return false if the response arrived in the meantime
+	 */
+	boolean abandon(DiscreteRequest request) {
+		List<DiscreteRequest> done = new ArrayList<DiscreteRequest>();
+		boolean abandoned;
+		synchronized(pending){
+			abandoned = request.abandon(System.currentTimeMillis());
+			backlog.remove(request);
+			pump(done);
+			pending.notifyAll();
+		}
+		notifyListeners(done);
+		request.notifyListener();
+		return abandoned;
+	}
+
+	/**
+	 * Waits for outstanding discrete requests to finish, then writes the start byte and routes all frames to the
+	 * stream until it ends. Discrete requests made meanwhile wait in the backlog.
+	 * @param start Request byte starting the stream
+	 * @param timeout Timeout period in milliseconds for the link to become free
+	 * @param s Stream receiving the frames
+	 * @return false if the link did not become free in time
+	 */
+	boolean openStream(byte start, int timeout, ContinuousStream s) throws IOException, InterruptedException {
+		long deadline = System.currentTimeMillis() + timeout;
+		synchronized(pending){
+			while(streamRequested)
+			{
+				long remaining = deadline - System.currentTimeMillis();
+				if(remaining <= 0)
+					return false;
+				pending.wait(remaining);
+			}
+			streamRequested = true;
+			purge();
+			while(!pending.isEmpty())
+			{
+				long remaining = deadline - System.currentTimeMillis();
+				if(remaining <= 0)
+				{
+					releaseLink();
+					return false;
+				}
+				pending.wait(Math.min(remaining, POLL_INTERVAL));
+				purge();
+			}
+			stream = s;
+			try {
+				send(start);
+			} catch (IOException e) {
+				releaseLink();
+				throw e;
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Stops routing frames to the stream, if it is the one open, and lets discrete requests continue
+	 * @param drain true to discard frames until the link is quiet first, for a stream whose stop was not acknowledged
+	 */
+	void closeStream(ContinuousStream s, boolean drain) {
+		List<DiscreteRequest> done = new ArrayList<DiscreteRequest>();
+		synchronized(pending){
+			if(stream != s)
+				return;
+			if(drain && running)
+			{
+				stream = null;
+				draining = true;
+				long now = System.currentTimeMillis();
+				drainQuiet = now + DRAIN_QUIET;
+				drainDeadline = now + s.getTimeout();
+				try {
+					send(s.getStopByte());		//in case the first stop byte was lost
+					Log.w(TAG, "stop not acknowledged, draining the stream");
+					return;
+				} catch (IOException e) {
+					Log.e(TAG, "write failed", e);
+					linkLost();
+					done.addAll(failAll());
+				}
+			}
+		}
+		notifyListeners(done);
+		releaseLink();
+	}
+
+	private void releaseLink() {
+		List<DiscreteRequest> done = new ArrayList<DiscreteRequest>();
+		synchronized(pending){
+			stream = null;
+			streamRequested = false;
+			draining = false;
+			pump(done);
+			pending.notifyAll();
+		}
+		notifyListeners(done);
+	}
+
+	/*
+	 * Ends the open stream, if any, because the link is gone
+	 */
+	private void endStream() {
+		ContinuousStream s;
+		synchronized(pending){
+			s = stream;
+		}
+		if(s != null)
+			s.end(false);
+	}
+
+	void write(byte data) throws IOException {
+		send(data);
+	}
+
+	private void send(byte data) throws IOException {
+		transport.write(data);
+		CaptureTap t = tap;
+		if(t != null)
+			t.request(data);
+	}
+
+	/**
+	 * Marks the session of this pipeline as disconnected, unless the pipeline has been replaced
+	 */
+	void linkLost() {
+		session.linkLost(this);
+	}
+
+	public void onLinkDown() {
+		Log.w(TAG, "link down, holding requests");
+		synchronized(pending){
+			linkUp = false;
+		}
+	}
+
+	public void onLinkRestored() {
+		List<DiscreteRequest> done = new ArrayList<DiscreteRequest>();
+		synchronized(pending){
+			linkUp = true;
+			//late responses to abandoned requests were lost with the old link, so they no longer hold a position
+			Iterator<DiscreteRequest> it = pending.iterator();
+			while(it.hasNext())
+				if(it.next().isAbandoned())
+					it.remove();
+			Log.i(TAG, "link restored, writing " + pending.size() + " requests again");
+			try {
+				for(DiscreteRequest request : pending)
+				{
+					send(request.getRequestByte());
+					request.sent();
+				}
+				ContinuousStream s = stream;
+				if(s != null)
+					send(s.getResumeByte());
+				pump(done);
+			} catch (IOException e) {
+				Log.e(TAG, "write failed", e);
+				linkLost();
+				done.addAll(failAll());
+			}
+			pending.notifyAll();
+		}
+		notifyListeners(done);
+	}
+
+	public void run() {
+		while(running)
+		{
+			boolean received;
+			long wait;
+			synchronized(pending){
+				wait = untilNextDeadline();
+			}
+			try {
+				received = transport.readFrame(frame, (int) wait);
+			} catch (IOException e) {
+				broken(e);
+				break;
+			} catch (InterruptedException e) {
+				break;
+			}
+			List<DiscreteRequest> done = new ArrayList<DiscreteRequest>();
+			if(received)
+				receive(done);
+			synchronized(pending){
+				maintain(done);
+			}
+			notifyListeners(done);
+		}
+	}
+
+	/*
+	 * Reads the frames of a push transport which are ready, on the thread of the transport
+	 */
+	private void readReady() {
+		if(!running)
+			return;
+		List<DiscreteRequest> done = new ArrayList<DiscreteRequest>();
+		IOException error = null;
+		synchronized(frame){		//also run by start() for the frames received before
+			try {
+				while(transport.readFrame(frame, 0))
+					receive(done);
+			} catch (IOException e) {
+				error = e;
+			} catch (InterruptedException e) {
+				//not waiting
+			}
+		}
+		if(error != null)
+		{
+			notifyListeners(done);
+			detach();
+			broken(error);
+			return;
+		}
+		synchronized(pending){
+			maintain(done);
+		}
+		notifyListeners(done);
+	}
+
+	/*
+	 * Expires the requests of a push transport, which has no reader thread waking up at their deadlines
+	 */
+	private void housekeep() {
+		List<DiscreteRequest> done = new ArrayList<DiscreteRequest>();
+		long wait;
+		synchronized(pending){
+			maintain(done);
+			wait = untilNextDeadline();
+		}
+		notifyListeners(done);
+		synchronized(this){
+			if(running && tick != null)
+				tick = getTimer().schedule(housekeeping, Math.max(wait, 1), TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/*
+	 * Stops the frames and housekeeping of a push transport
+	 */
+	private synchronized void detach() {
+		if(!(transport instanceof PushTransport))
+			return;
+		((PushTransport) transport).setReadyListener(null);
+		if(tick != null)
+			tick.cancel(false);
+		tick = null;
+	}
+
+	private void broken(IOException e) {
+		Log.e(TAG, "link broken", e);
+		linkLost();
+		notifyListeners(failAll());
+		endStream();
+	}
+
+	/*
+	 * Handles the frame just read
+	 */
+	private void receive(List<DiscreteRequest> done) {
+		CaptureTap t = tap;
+		if(t != null)
+			t.frame(frame);
+		int start = BinaryFrame.indexOfStart(frame, 1);
+		if(start < 0)
+			route(frame, done);
+		else
+			resync(start, done);
+	}
+
+	/*
+	 * Ends a drain, gives up expired requests and writes backlogged ones; must be called holding the table
+	 */
+	private void maintain(List<DiscreteRequest> done) {
+		if(draining && System.currentTimeMillis() >= Math.min(drainQuiet, drainDeadline))
+			endDrain();
+		expire(done);
+		purge();
+		pump(done);
+	}
+
+	/*
+	 * Splits a line holding a binary frame after its first byte into the frames starting at each STX
+	 */
+	private void resync(int start, List<DiscreteRequest> done) {
+		if(!BinaryFrame.isBinary(frame))
+			session.frameCorrupt();		//noise, or a text line garbled by the start of the frame
+		else
+		{
+			segment.set(frame.getBuffer(), frame.getOffset(), start);
+			route(segment, done);
+		}
+		while(start >= 0)
+		{
+			int next = BinaryFrame.indexOfStart(frame, start + 1);
+			int end = (next < 0) ? frame.getLength() : next;
+			segment.set(frame.getBuffer(), frame.getOffset() + start, end - start);
+			route(segment, done);
+			start = next;
+		}
+	}
+
+	/*
+	 * Checks a frame and hands it to the stream, the drain or the request it answers
+	 */
+	private void route(Frame f, List<DiscreteRequest> done) {
+		boolean intact = !BinaryFrame.isBinary(f) || BinaryFrame.isIntact(f);
+		if(!intact)
+			session.frameCorrupt();
+		ContinuousStream s = stream;
+		if(s != null)
+		{
+			//handed over outside the table lock, as the stream may end itself and release the link
+			if(intact)
+				s.onFrame(f);
+			return;
+		}
+		synchronized(pending){
+			if(draining)
+			{
+				if(intact)
+					session.frameDropped();
+				drainQuiet = System.currentTimeMillis() + DRAIN_QUIET;
+				return;
+			}
+			dispatch(f, done);
+		}
+	}
+
+	private void endDrain() {
+		if(System.currentTimeMillis() >= drainQuiet)
+			Log.i(TAG, "stream drained");
+		else
+			Log.w(TAG, "stream still sending after the drain limit");
+		stream = null;
+		streamRequested = false;
+		draining = false;
+		pending.notifyAll();
+	}
+
+	private void dispatch(Frame frame, List<DiscreteRequest> done) {
+		purge();
+		realign(frame, done);
+		DiscreteRequest head = pending.poll();
+		if(head == null)
+		{
+			session.frameDropped();
+			Log.w(TAG, "Unsolicited frame dropped: " + frame);
+		}
+		else if(head.complete(frame.toString()))
+			done.add(head);
+		else
+		{
+			session.frameDropped();
+			Log.w(TAG, "Late response to request " + head.getSequence() + " dropped: " + frame);
+			if(head.completeLate())
+				done.add(head);
+		}
+		pending.notifyAll();
+	}
+
+	/*
+	 * Gives up the requests before the one a response answers, if the sensors it names show that their responses
+	 * were lost. A request still waiting is preferred to one holding its place just before it, as the late response
+	 * of the one holding its place would answer it as well.
+	 */
+	private void realign(Frame frame, List<DiscreteRequest> done) {
+		int sensors = sensorsOf(frame);
+		if(sensors == 0)
+			return;
+		int answered = -1;		//position of the request answered
+		int position = 0;
+		for(DiscreteRequest request : pending)
+		{
+			int asked = sensorsAsked(request.getRequestByte());
+			if(asked == 0)
+				break;			//cannot tell what answers it
+			boolean match = (sensors & ~asked) == 0;
+			if(!request.isAbandoned())
+			{
+				if(match)
+					answered = position;
+				if(match || answered >= 0)
+					break;		//a request before it, holding its place, may be the one answered
+			}
+			else if(match && answered < 0)
+				answered = position;
+			position++;
+		}
+		if(answered <= 0)
+			return;
+		long now = System.currentTimeMillis();
+		for(int i=0;i<answered;i++)
+		{
+			DiscreteRequest lost = pending.poll();
+			Log.w(TAG, "Response to request " + lost.getSequence() + " lost");
+			if(lost.abandon(now))
+				done.add(lost);
+		}
+	}
+
+	/*
+	 * Returns the discrete sensors a response names, 0 if it names none or is not understood
+	 */
+	private int sensorsOf(Frame frame) {
+		if(BinaryFrame.isBinary(frame))
+		{
+			if(!decoded.decode(frame) || decoded.getType() != BinaryFrame.TYPE_VALUES)
+				return 0;
+			return decoded.getSensor() & DISCRETE_SENSORS;
+		}
+		PacketSchema schema = session.getPacketSchema();
+		if(schema == null)
+			return 0;
+		char dataDelimiter = schema.getDataDelimiter();
+		int sensors = 0;
+		for(int j=frame.length()-2;j>=0;j--)
+			if(frame.charAt(j+1) == dataDelimiter)
+				sensors |= schema.getSensors(frame.charAt(j));
+		return sensors & DISCRETE_SENSORS;
+	}
+
+	/*
+	 * Returns the discrete sensors a request byte asks for, 0 for any other request
+	 */
+	private static int sensorsAsked(byte requestByte) {
+		if((requestByte & 0x80) != 0)
+			return 0;		//metadata, probe or negotiation
+		return requestByte & DISCRETE_SENSORS;
+	}
+
+	/*
+	 * Writes backlogged requests while slots are free. Returns false if the link broke.
+	 */
+	private boolean pump(List<DiscreteRequest> done) {
+		while(linkUp && !streamRequested && !backlog.isEmpty() && inFlight() < depth)
+		{
+			DiscreteRequest request = backlog.poll();
+			if(request.isDone())
+				continue;
+			pending.addLast(request);
+			try {
+				//written while holding the table so that the order on the wire matches the table
+				send(request.getRequestByte());
+				request.sent();
+			} catch (IOException e) {
+				Log.e(TAG, "write failed", e);
+				linkLost();
+				done.addAll(failAll());
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/*
+	 * Gives up on requests whose deadline has passed; needed for requests nobody is blocked on.
+	 */
+	private void expire(List<DiscreteRequest> done) {
+		long now = System.currentTimeMillis();
+		Iterator<DiscreteRequest> it = backlog.iterator();
+		while(it.hasNext())
+		{
+			DiscreteRequest request = it.next();
+			if(now >= request.getDeadline() && request.abandon(now))
+			{
+				it.remove();
+				done.add(request);
+			}
+		}
+		for(DiscreteRequest request : pending)
+			if(now >= request.getDeadline() && request.abandon(now))
+				done.add(request);
+	}
+
+	private long untilNextDeadline() {
+		long next = POLL_INTERVAL;
+		long now = System.currentTimeMillis();
+		if(draining)
+			next = Math.min(next, Math.min(drainQuiet, drainDeadline) - now);
+		for(DiscreteRequest request : backlog)
+			next = Math.min(next, request.getDeadline() - now);
+		for(DiscreteRequest request : pending)
+			if(!request.isDone())
+				next = Math.min(next, request.getDeadline() - now);
+		return Math.max(next, 1);
+	}
+
+	/**
+	 * Returns true if no request is waiting, in flight or holding its place for a late response, and no stream
+	 * is open
+	 */
+	boolean isIdle() {
+		synchronized(pending){
+			purge();
+			return linkUp && !streamRequested && backlog.isEmpty() && pending.isEmpty();
+		}
+	}
+
+	/*
+	 * Returns the number of slots taken: by requests waiting for their response, and by requests given up whose
+	 * late response may still arrive, as a request written behind one of those would be answered by it
+	 */
+	private int inFlight() {
+		purge();
+		return pending.size();
+	}
+
+	private void purge() {
+		long now = System.currentTimeMillis();
+		boolean removed = false;
+		Iterator<DiscreteRequest> it = pending.iterator();
+		while(it.hasNext())
+		{
+			if(it.next().isExpired(now))
+			{
+				it.remove();
+				removed = true;
+			}
+		}
+		if(removed)
+			pending.notifyAll();
+	}
+
+	private List<DiscreteRequest> failAll() {
+		List<DiscreteRequest> failed = new ArrayList<DiscreteRequest>();
+		synchronized(pending){
+			long now = System.currentTimeMillis();
+			for(DiscreteRequest request : pending)
+				if(request.abandon(now))
+					failed.add(request);
+			for(DiscreteRequest request : backlog)
+				if(request.abandon(now))
+					failed.add(request);
+			pending.clear();
+			backlog.clear();
+			pending.notifyAll();
+		}
+		return failed;
+	}
+
+	private void notifyListeners(List<DiscreteRequest> done) {
+		for(DiscreteRequest request : done)
+		{
+			try {
+				request.notifyListener();
+			} catch (RuntimeException e) {
+				Log.e(TAG, "ResponseListener failed", e);
+			}
+		}
+	}
+}
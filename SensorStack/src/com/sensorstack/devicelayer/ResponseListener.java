@@ -0,0 +1,15 @@
+package com.sensorstack.devicelayer;
+
+/**
+ * Receives the response packet of a discrete request made without blocking the calling thread,
+ * see {@link DeviceSession#getDiscretePacket(byte, int, ResponseListener)}.
+ */
+public interface ResponseListener {
+	/**
+	 * Called exactly once for each request, on the thread reading the transport. Implementations must return quickly
+	 * and must not wait for other responses from the same link.
+	 * @param packet Response packet received from the sensor hardware, empty if nothing was received within the timeout
+	 * or the link was lost
+	 */
+	void onResponse(String packet);
+}
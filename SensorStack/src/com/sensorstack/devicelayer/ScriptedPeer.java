@@ -0,0 +1,46 @@
+package com.sensorstack.devicelayer;
+
+import java.util.HashMap;
+
+/**
+ * Loopback peer answering each request byte with a fixed, scripted list of frames.
+ * Request bytes without a script are ignored, as the hardware does for unknown requests.
+ * Example - discrete temperature request answered with a single packet:
+ * <pre>
+ * ScriptedPeer peer = new ScriptedPeer();
+ * peer.setResponse((byte) 0x01, "T@36.6#");
+ * DeviceLayerClass.connect(new LoopbackTransport(peer));
+ * </pre>
+ */
+public class ScriptedPeer implements LoopbackTransport.Peer {
+
+	private final HashMap<Byte, String[]> script = new HashMap<Byte, String[]>();
+
+	/**
+	 * Sets the frames sent back for a request byte, replacing any previous script for that byte
+	 * @param request Request byte
+	 * @param frames Frames sent in order in response to the request
+	 */
+	public synchronized void setResponse(byte request, String... frames) {
+		script.put(request, frames);
+	}
+
+	/**
+	 * Removes the script for a request byte
+	 * @param request Request byte
+	 */
+	public synchronized void removeResponse(byte request) {
+		script.remove(request);
+	}
+
+	public void onRequest(byte data, LoopbackTransport link) {
+		String frames[];
+		synchronized (this) {
+			frames = script.get(data);
+		}
+		if(frames == null)
+			return;
+		for(int i=0;i<frames.length;i++)
+			link.send(frames[i]);
+	}
+}
@@ -0,0 +1,475 @@
+package com.sensorstack.devicelayer;
+
+import java.util.LinkedList;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import com.sensorstack.ContinuousStreamInfo;
+import com.sensorstack.DiscretePacketInfo;
+import com.sensorstack.sensors.Sensor;
+
+/**
+ * Emulates the sensor hardware on a loopback link, speaking the same wire protocol:
+ * <ul>
+ * <li>a discrete request byte (bit i set for sensor i) is answered with one packet
+ * SensorId|dataDelimiter|value[|multiValueDelimiter|value][|sensorDelimiter|SensorId|...] for the sensors requested</li>
+ * <li>a discrete request byte with bit 6 set (batch) is answered with {@link #setBatchSize(int)} readings of each sensor
+ * requested in one packet, oldest first, as hardware buffering its readings between batch requests does</li>
+ * <li>a request byte with bit 7 set is answered with the metadata of the sensor, see {@link #setMetadata(int, String...)};
+ * the heartbeat probe {@link LinkMonitor#DEFAULT_PROBE}, naming no sensor, with the data delimiter alone</li>
+ * <li>the start byte of the continuous sensor starts a stream of one sample per line at the sampling rate,
+ * until the stop byte is received, which is answered with the stop ack</li>
+ * <li>{@link BinaryFrame#NEGOTIATE} switches to binary frames: discrete replies become one TYPE_VALUES frame and
+ * the stream is sent in TYPE_SAMPLES_INT16 blocks of {@link #BINARY_BLOCK} samples; with compression supported
+ * (see {@link #setCompressionSupported(boolean)}) it is acknowledged with NEGOTIATE_ACK_COMPRESSED instead and the
+ * stream is sent in delta compressed blocks of {@link #DELTA_BLOCK} samples, a keyframe every
+ * {@link #KEYFRAME_INTERVAL} blocks</li>
+ * </ul>
+ * Identifiers, delimiters, the stop byte and ack and the sampling rate are read from the DiscretePacketInfo and
+ * ContinuousStreamInfo given, when each request arrives, so the emulator follows changes made to them.
+ * Replies are sent after a configurable latency and jitter, and can be dropped or corrupted at random, so the
+ * complete stack can be benchmarked and soak-tested on a plain JVM:
+ * <pre>
+ * SensorEmulator emulator = new SensorEmulator(AALayerII.getDiscretePacketInfo(), AALayerII.getContinuousStreamInfo());
+ * emulator.setLatency(40, 20);
+ * emulator.setDropRate(0.01);
+ * DeviceLayerClass.connectEmulator(emulator);
+ * </pre>
+ * Replies keep the order of the requests, as the hardware does.
+ */
+public class SensorEmulator implements LoopbackTransport.Peer {
+	/**
+	 * Sampling rate (in samples per second) used if the ContinuousStreamInfo does not specify one
+	 */
+	public static final int DEFAULT_SAMPLING_RATE = 250;
+	/**
+	 * Stream samples per binary frame
+	 */
+	public static final int BINARY_BLOCK = 8;
+	/**
+	 * Stream samples per delta compressed frame
+	 */
+	public static final int DELTA_BLOCK = 32;
+	/**
+	 * Delta compressed frames from one keyframe to the next
+	 */
+	public static final int KEYFRAME_INTERVAL = 8;
+
+	private final DiscretePacketInfo packetInfo;
+	private final ContinuousStreamInfo streamInfo;
+	private final ScheduledExecutorService clock;	//sends all replies and samples, in order
+	private final Random random = new Random();
+	private final String values[] = new String[Sensor.NUM_DISCRETE];	//null for generated values
+	private final String metadata[][] = new String[Sensor.ECG + 1][];
+	private int latency = 0;			//in milliseconds
+	private int jitter = 0;			//in milliseconds
+	private double dropRate = 0;
+	private double corruptRate = 0;
+	private int heartRate = 72;			//in beats per minute
+	private int batchSize = 8;			//readings per sensor answering a batch request
+	private boolean binarySupported = true;
+	private boolean binary = false;		//binary frames negotiated
+	private final byte block[] = new byte[2 * BINARY_BLOCK];	//samples of the binary frame being filled
+	private int blockCount = 0;
+	private boolean compressionSupported = true;
+	private boolean compressed = false;		//delta compressed stream negotiated
+	private final int deltaBlock[] = new int[DELTA_BLOCK];	//samples of the compressed frame being filled
+	private int sequence = 0;			//compressed frames of the running stream
+	private int previous = 0;			//last sample of the previous compressed frame
+	private long lastReply = 0;			//System.nanoTime() at which the latest reply is due
+	private final LinkedList<String> replies = new LinkedList<String>();	//scheduled, in the order of the requests
+	private ScheduledFuture<?> stream = null;
+	private long samples = 0;			//samples of the running stream
+	private long requestCount = 0;
+	private long droppedCount = 0;
+	private long corruptedCount = 0;
+	private long sampleCount = 0;
+
+	/**
+	 * Constructor to attach the emulator to the packet settings of the application
+	 * @param packetInfo Identifiers and delimiters of discrete packets
+	 * @param streamInfo Sensor, stop byte, stop ack and sampling rate of the continuous stream
+	 */
+	public SensorEmulator(DiscretePacketInfo packetInfo, ContinuousStreamInfo streamInfo) {
+		this.packetInfo = packetInfo;
+		this.streamInfo = streamInfo;
+		clock = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "SensorEmulator");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Sets the delay before each reply
+	 * @param latency Minimum delay in milliseconds
+	 * @param jitter Maximum random delay in milliseconds added to the latency
+	 */
+	public synchronized void setLatency(int latency, int jitter) {
+		this.latency = Math.max(0, latency);
+		this.jitter = Math.max(0, jitter);
+	}
+
+	/**
+	 * Sets the probability that a discrete or metadata request is not answered at all
+	 * @param rate Probability from 0 to 1
+	 */
+	public synchronized void setDropRate(double rate) {
+		dropRate = rate;
+	}
+
+	/**
+	 * Sets the probability that a frame sent, reply or sample, has one character garbled
+	 * @param rate Probability from 0 to 1
+	 */
+	public synchronized void setCorruptRate(double rate) {
+		corruptRate = rate;
+	}
+
+	/**
+	 * Seeds the random values, delays, drops and corruptions, so that a run can be repeated
+	 */
+	public synchronized void setSeed(long seed) {
+		random.setSeed(seed);
+	}
+
+	/**
+	 * Sets the value sent for a discrete sensor, replacing the generated one
+	 * @param sensor Discrete sensor, see {@link Sensor}
+	 * @param value Value as sent in the packet, e.g. "120%80" for blood pressure; null to generate values again
+	 */
+	public synchronized void setValue(int sensor, String value) {
+		values[sensor] = value;
+	}
+
+	/**
+	 * Sets the metadata sent for a sensor. Metadata requests of sensors without metadata are not answered.
+	 * @param sensor Sensor, see {@link Sensor}
+	 * @param values Values in the order of the metadata map of the application
+	 */
+	public synchronized void setMetadata(int sensor, String... values) {
+		metadata[sensor] = values;
+	}
+
+	/**
+	 * Sets the heart rate of the generated ECG waveform
+	 * @param bpm Beats per minute
+	 */
+	public synchronized void setHeartRate(int bpm) {
+		heartRate = bpm;
+	}
+
+	/**
+	 * Sets whether the emulator accepts binary frames when asked, see {@link DeviceSession#negotiateBinaryFraming(int)};
+	 * when not, the request is ignored as by older hardware. Accepted by default.
+	 */
+	public synchronized void setBinarySupported(boolean supported) {
+		binarySupported = supported;
+	}
+
+	/**
+	 * Sets whether the emulator compresses the stream once binary frames are negotiated; when not, it acknowledges
+	 * as hardware sending plain int16 blocks. Compressed by default.
+	 */
+	public synchronized void setCompressionSupported(boolean supported) {
+		compressionSupported = supported;
+	}
+
+	/**
+	 * Sets the number of readings of each sensor sent in reply to a batch request; 1 emulates hardware
+	 * without batch support. 8 by default.
+	 */
+	public synchronized void setBatchSize(int size) {
+		batchSize = Math.max(size, 1);
+	}
+
+	public synchronized long getRequestCount() {
+		return requestCount;
+	}
+
+	/**
+	 * Returns the number of requests left unanswered, see {@link #setDropRate(double)}
+	 */
+	public synchronized long getDroppedCount() {
+		return droppedCount;
+	}
+
+	/**
+	 * Returns the number of frames garbled, see {@link #setCorruptRate(double)}
+	 */
+	public synchronized long getCorruptedCount() {
+		return corruptedCount;
+	}
+
+	/**
+	 * Returns the number of stream samples sent
+	 */
+	public synchronized long getSampleCount() {
+		return sampleCount;
+	}
+
+	/**
+	 * Stops the stream, if running, and the thread sending replies
+	 */
+	public synchronized void shutdown() {
+		if(stream != null)
+			stream.cancel(false);
+		stream = null;
+		clock.shutdownNow();
+	}
+
+	public synchronized void onRequest(byte data, LoopbackTransport link) {
+		requestCount++;
+		if(data == streamInfo.getStop())
+		{
+			if(stream != null)
+				stream.cancel(false);
+			stream = null;
+			reply(link, String.valueOf(streamInfo.getStopAck()));
+		}
+		else if(data == BinaryFrame.NEGOTIATE)
+		{
+			if(binarySupported)
+			{
+				binary = true;
+				compressed = compressionSupported;
+				reply(link, compressed ? BinaryFrame.NEGOTIATE_ACK_COMPRESSED : BinaryFrame.NEGOTIATE_ACK);
+			}
+		}
+		else if(data == LinkMonitor.DEFAULT_PROBE)
+		{
+			if(!drop())
+				reply(link, String.valueOf(packetInfo.getSensorDataDelimiter()));	//metadata of no sensor
+		}
+		else if((data & 0x80) != 0)
+		{
+			String packet = metadataPacket(data);
+			if(packet != null && !drop())
+				reply(link, packet);
+		}
+		else if(data == (byte) (1 << streamInfo.getSensorNum()))
+			startStream(link);
+		else
+		{
+			String packet = binary ? binaryPacket(data) : discretePacket(data);
+			if(packet != null && !drop())
+				reply(link, packet);
+		}
+	}
+
+	private boolean drop() {
+		if(random.nextDouble() >= dropRate)
+			return false;
+		droppedCount++;
+		return true;
+	}
+
+	/*
+	 * Sends a frame after the latency and jitter, but never before the replies to earlier requests
+	 */
+	private void reply(final LoopbackTransport link, String frame) {
+		long now = System.nanoTime();
+		long delay = TimeUnit.MILLISECONDS.toNanos(latency + (jitter > 0 ? random.nextInt(jitter + 1) : 0));
+		long due = Math.max(now + delay, lastReply);
+		lastReply = due;
+		replies.addLast(corrupt(frame));
+		//each run sends the oldest reply, as runs due at about the same time may start in either order
+		clock.schedule(new Runnable() {
+			public void run() {
+				String f;
+				synchronized(SensorEmulator.this){
+					f = replies.poll();
+				}
+				if(f != null)
+					link.send(f);
+			}
+		}, due - now, TimeUnit.NANOSECONDS);
+	}
+
+	private String corrupt(String frame) {
+		if(frame.length() == 0 || random.nextDouble() >= corruptRate)
+			return frame;
+		corruptedCount++;
+		char chars[] = frame.toCharArray();
+		int i = random.nextInt(chars.length);
+		char c = (char) (chars[i] ^ (1 << random.nextInt(7)));
+		chars[i] = (c == '\n' || c == '\r') ? '?' : c;
+		return new String(chars);
+	}
+
+	private String discretePacket(byte request) {
+		char id[] = packetInfo.getSensorIdentifier();
+		int readings = ((request & 0x40) != 0) ? batchSize : 1;
+		StringBuilder packet = new StringBuilder();
+		for(int i=0;i<Sensor.NUM_DISCRETE;i++)
+		{
+			if((request & (1 << i)) == 0 || id[i] == '\0')
+				continue;
+			for(int k=0;k<readings;k++)
+			{
+				if(packet.length() > 0)
+					packet.append(packetInfo.getSensorDelimiter());
+				packet.append(id[i]).append(packetInfo.getSensorDataDelimiter()).append(value(i));
+			}
+		}
+		return (packet.length() > 0) ? packet.toString() : null;
+	}
+
+	private String binaryPacket(byte request) {
+		int mask = request & ((1 << Sensor.NUM_DISCRETE) - 1);
+		if(mask == 0)
+			return null;
+		byte payload[] = new byte[4 * 2 * Sensor.NUM_DISCRETE];
+		int index = 0;
+		for(int i=0;i<Sensor.NUM_DISCRETE;i++)
+		{
+			if((mask & (1 << i)) == 0)
+				continue;
+			String fields[] = value(i).split(Pattern.quote(String.valueOf(packetInfo.getMultiValueDelimiter())));
+			for(int k=0;k<BinaryFrame.getValueCount(i);k++)
+			{
+				float v = Float.NaN;
+				try {
+					v = Float.parseFloat(fields[k]);
+				} catch (RuntimeException e) {
+					//value set by the caller which is not a number, sent as NaN
+				}
+				BinaryFrame.putFloat(payload, index++, v);
+			}
+		}
+		return BinaryFrame.encode(BinaryFrame.TYPE_VALUES, mask, payload, 4 * index);
+	}
+
+	private String metadataPacket(byte request) {
+		for(int i=0;i<=Sensor.ECG;i++)
+		{
+			if((request & (1 << i)) == 0)
+				continue;
+			if(metadata[i] == null)
+				return null;
+			char id;
+			char dataDelimiter;
+			char multiValueDelimiter;
+			if(i == streamInfo.getSensorNum())
+			{
+				id = streamInfo.getSensorIdentifier();
+				dataDelimiter = streamInfo.getSensorDataDelimiter();
+				multiValueDelimiter = streamInfo.getMultiValueDelimiter();
+			}
+			else
+			{
+				id = packetInfo.getSensorIdentifier()[i];
+				dataDelimiter = packetInfo.getSensorDataDelimiter();
+				multiValueDelimiter = packetInfo.getMultiValueDelimiter();
+			}
+			StringBuilder packet = new StringBuilder().append(id).append(dataDelimiter);
+			for(int k=0;k<metadata[i].length;k++)
+			{
+				if(k > 0)
+					packet.append(multiValueDelimiter);
+				packet.append(metadata[i][k]);
+			}
+			return packet.toString();
+		}
+		return null;
+	}
+
+	/*
+	 * Value of a discrete sensor: the one set, or a plausible reading with some noise
+	 */
+	private String value(int sensor) {
+		if(values[sensor] != null)
+			return values[sensor];
+		char d = packetInfo.getMultiValueDelimiter();
+		switch(sensor)
+		{
+			case Sensor.TEMPERATURE:
+				return round(36.6 + random.nextGaussian() * 0.2);
+			case Sensor.BLOODPRESSURE:
+				return (118 + random.nextInt(8)) + "" + d + (76 + random.nextInt(8));
+			case Sensor.PULSERATE:
+				return String.valueOf(heartRate - 2 + random.nextInt(5));
+			case Sensor.OXIMETER:
+				return round(97.5 + random.nextGaussian() * 0.5);
+			case Sensor.GSR:
+				return round(2.5 + random.nextGaussian() * 0.1) + d + round(400 + random.nextGaussian() * 10);
+			default:
+				return "0";
+		}
+	}
+
+	private static String round(double value) {
+		return String.valueOf(Math.round(value * 10) / 10f);
+	}
+
+	private void startStream(final LoopbackTransport link) {
+		if(stream != null)
+			stream.cancel(false);
+		samples = 0;
+		blockCount = 0;
+		sequence = 0;
+		final int rate = (streamInfo.getSamplingRate() > 0) ? streamInfo.getSamplingRate() : DEFAULT_SAMPLING_RATE;
+		long period = TimeUnit.SECONDS.toNanos(1) / rate;
+		long now = System.nanoTime();
+		long start = Math.max(now + TimeUnit.MILLISECONDS.toNanos(latency), lastReply);
+		lastReply = start;
+		stream = clock.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				sendSample(link, rate);
+			}
+		}, start - now, period, TimeUnit.NANOSECONDS);
+	}
+
+	private synchronized void sendSample(LoopbackTransport link, int rate) {
+		if(stream == null)
+			return;			//stopped after this tick was due
+		float value = ecg((double) samples++ / rate);
+		sampleCount++;
+		if(!binary)
+		{
+			link.send(corrupt(String.valueOf(value)));
+			return;
+		}
+		if(compressed)
+		{
+			deltaBlock[blockCount++] = Math.round(value * BinaryFrame.INT16_SCALE);
+			if(blockCount == DELTA_BLOCK)
+			{
+				boolean key = (sequence % KEYFRAME_INTERVAL == 0);
+				link.send(corrupt(BinaryFrame.encodeDelta(key, streamInfo.getSensorNum(), sequence, deltaBlock, blockCount, previous)));
+				previous = deltaBlock[blockCount-1];
+				sequence = (sequence + 1) & 0xff;
+				blockCount = 0;
+			}
+			return;
+		}
+		BinaryFrame.putInt16(block, blockCount++, Math.round(value * BinaryFrame.INT16_SCALE));
+		if(blockCount == BINARY_BLOCK)
+		{
+			link.send(corrupt(BinaryFrame.encode(BinaryFrame.TYPE_SAMPLES_INT16, streamInfo.getSensorNum(), block, block.length)));
+			blockCount = 0;
+		}
+	}
+
+	/*
+	 * Synthetic ECG in millivolts at time t (in seconds): P wave, QRS complex and T wave of each beat
+	 */
+	private float ecg(double t) {
+		double beat = t * heartRate / 60.0;
+		double x = beat - Math.floor(beat);
+		return (float) (0.15 * wave(x, 0.20, 0.025) - 0.15 * wave(x, 0.35, 0.010) + 1.20 * wave(x, 0.37, 0.010)
+				- 0.25 * wave(x, 0.39, 0.010) + 0.30 * wave(x, 0.60, 0.040));
+	}
+
+	private static double wave(double x, double centre, double width) {
+		double d = (x - centre) / width;
+		return Math.exp(-0.5 * d * d);
+	}
+}
@@ -0,0 +1,171 @@
+package com.sensorstack.devicelayer;
+
+import java.io.IOException;
+
+import android.util.Log;
+
+/**
+ * Base of the transports over a serial line, see {@link UsbTransport} and {@link TtyTransport}.
+ * A reader thread per port drains the line as soon as bytes arrive, independent of the requests written,
+ * and cuts them into frames, the same as the Bluetooth connection. Subclasses only move bytes: they open and
+ * close the port, read what arrived within a short timeout and write requests.
+ * When the line breaks the frames received so far can still be read, after which readFrame() throws IOException.
+ */
+public abstract class SerialTransport implements Transport {
+	private static final String TAG = "SerialTransport";
+	/**
+	 * Time (in milliseconds) a read of the port may wait for bytes, so the reader notices when it is closed
+	 */
+	protected static final int POLL_TIMEOUT = 100;
+	/**
+	 * Capacity in bytes of the frames received but not yet read. A serial line carries more than a
+	 * Bluetooth link, so the ring holds more than the default.
+	 */
+	static final int CAPACITY = 4 * FrameRingBuffer.DEFAULT_CAPACITY;
+
+	private final String name;
+	private volatile FrameRingBuffer frames = new FrameRingBuffer();
+	private volatile boolean closed = true;
+	private volatile Thread reader;
+	private final byte request[] = new byte[1];
+
+	/**
+	 * Constructor
+	 * @param name Name of the port, given to the reader thread
+	 */
+	protected SerialTransport(String name) {
+		this.name = name;
+		frames.close();		//nothing to read until opened
+	}
+
+	public void open() throws IOException {
+		//the reader of the last connection leaves within a poll, so it takes no bytes of the new one
+		Thread previous = reader;
+		if(previous != null && previous != Thread.currentThread())
+		{
+			try {
+				previous.join(2 * POLL_TIMEOUT);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		synchronized (this) {
+			if(!closed)
+				return;
+			openPort();
+			start();
+		}
+	}
+
+	private void start() {
+		final FrameRingBuffer f = new FrameRingBuffer(CAPACITY);
+		frames = f;
+		closed = false;
+		Thread t = new Thread(new Runnable() {
+			public void run() {
+				readLoop(f);
+			}
+		}, TAG + " " + name);
+		t.setDaemon(true);
+		reader = t;
+		t.start();
+	}
+
+	public synchronized void write(byte data) throws IOException {
+		if(closed)
+			throw new IOException("Serial port is closed");
+		request[0] = data;
+		writePort(request, 1);
+	}
+
+	public String readFrame(int timeout) throws IOException, InterruptedException {
+		return frames.readFrame(timeout);
+	}
+
+	public boolean readFrame(Frame frame, int timeout) throws IOException, InterruptedException {
+		return frames.readFrame(frame, timeout);
+	}
+
+	public synchronized void close() {
+		if(closed)
+			return;
+		closed = true;
+		closePort();
+		frames.clear();
+		frames.close();
+	}
+
+	/**
+	 * Returns true while the port is open and the line is not broken
+	 */
+	public boolean isOpen() {
+		return !closed;
+	}
+
+	/**
+	 * Returns the name of the port
+	 */
+	public String getName() {
+		return name;
+	}
+
+	private void readLoop(FrameRingBuffer f) {
+		byte buffer[] = new byte[readSize()];
+		try {
+			while(!closed && frames == f)
+			{
+				int n = readPort(buffer, POLL_TIMEOUT);
+				if(n < 0)
+					throw new IOException("End of stream");
+				if(n > 0)
+					f.write(buffer, 0, n);
+			}
+		} catch (IOException e) {
+			synchronized (this) {
+				if(!closed && frames == f)
+				{
+					//the line broke, not closed on purpose
+					Log.e(TAG, name + " disconnected", e);
+					closed = true;
+					closePort();
+				}
+			}
+		}
+		f.close();
+	}
+
+	/**
+	 * Returns the size of the buffer passed to {@link #readPort(byte[], int)}
+	 */
+	protected int readSize() {
+		return 1024;
+	}
+
+	/**
+	 * Opens the port. Called by {@link #open()} while the transport is closed.
+	 * @throws IOException if the port cannot be opened
+	 */
+	protected abstract void openPort() throws IOException;
+
+	/**
+	 * Reads the bytes which arrived on the port. Called by the reader thread only.
+	 * @param buffer Buffer to fill from its start
+	 * @param timeout Time in milliseconds to wait for the first byte
+	 * @return Number of bytes read, 0 if none arrived within the timeout, -1 at the end of the stream
+	 * @throws IOException if the line broke
+	 */
+	protected abstract int readPort(byte buffer[], int timeout) throws IOException;
+
+	/**
+	 * Writes bytes to the port. Called with the transport locked.
+	 * @param data Bytes to write from the start of the array
+	 * @param length Number of bytes to write
+	 * @throws IOException if the line broke
+	 */
+	protected abstract void writePort(byte data[], int length) throws IOException;
+
+	/**
+	 * Closes the port, which ends a read in progress. Called with the transport locked.
+	 */
+	protected abstract void closePort();
+}
@@ -0,0 +1,21 @@
+package com.sensorstack.devicelayer;
+
+/**
+ * Receives the frames of a continuous stream as they arrive, see
+ * {@link DeviceSession#openContinuousStream(byte, byte, String, int, StreamListener)}.
+ * Both methods are called on the thread reading the transport and must return quickly.
+ */
+public interface StreamListener {
+	/**
+	 * Called for every frame of the stream except the stop ack
+	 * @param frame Frame received; only valid until this method returns
+	 */
+	void onFrame(Frame frame);
+
+	/**
+	 * Called once when the stream has ended, because the stop ack was received, the stream was stopped
+	 * or the link was lost
+	 * @param acknowledged true if the hardware sent the stop ack
+	 */
+	void onEnd(boolean acknowledged);
+}
@@ -0,0 +1,107 @@
+package com.sensorstack.devicelayer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import android.util.Log;
+
+/**
+ * Single reader thread serving every open {@link TcpTransport}. All hub connections are registered with one
+ * Selector, and the frames received are handed to the request pipelines on this thread, so the number of threads
+ * does not grow with the number of hubs connected.
+ */
+class TcpHubReader implements Runnable {
+	private static final String TAG = "TcpHubReader";
+	private static TcpHubReader defaultReader = null;
+
+	private final Selector selector;
+	// Channels can only be registered from the selecting thread without blocking, so they are queued here
+	private final ConcurrentLinkedQueue<TcpTransport> pending = new ConcurrentLinkedQueue<TcpTransport>();
+	private final ByteBuffer buffer = ByteBuffer.allocate(8192);
+
+	private TcpHubReader() throws IOException {
+		selector = Selector.open();
+	}
+
+	/**
+	 * Returns the reader shared by all TCP transports, starting it on first use
+	 * @return Shared reader
+	 * @throws IOException if the selector cannot be opened
+	 */
+	static synchronized TcpHubReader getDefault() throws IOException {
+		if(defaultReader == null)
+		{
+			defaultReader = new TcpHubReader();
+			Thread thread = new Thread(defaultReader, TAG);
+			thread.setDaemon(true);
+			thread.start();
+		}
+		return defaultReader;
+	}
+
+	void register(TcpTransport transport) {
+		pending.add(transport);
+		selector.wakeup();
+	}
+
+	void unregister(TcpTransport transport) {
+		SelectionKey key = transport.getChannel().keyFor(selector);
+		if(key != null)
+			key.cancel();
+		selector.wakeup();
+	}
+
+	public void run() {
+		while(true)
+		{
+			try {
+				selector.select();
+				TcpTransport transport;
+				while((transport = pending.poll()) != null)
+				{
+					try {
+						transport.getChannel().register(selector, SelectionKey.OP_READ, transport);
+					} catch (ClosedChannelException e) {
+						transport.onClosed();
+					}
+				}
+				Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+				while(keys.hasNext())
+				{
+					SelectionKey key = keys.next();
+					keys.remove();
+					if(key.isValid() && key.isReadable())
+						read(key);
+				}
+			} catch (IOException e) {
+				Log.e(TAG, "select() failed", e);
+			}
+		}
+	}
+
+	private void read(SelectionKey key) {
+		TcpTransport transport = (TcpTransport) key.attachment();
+		int count;
+		buffer.clear();
+		try {
+			count = ((SocketChannel) key.channel()).read(buffer);
+		} catch (IOException e) {
+			Log.e(TAG, "read() failed", e);
+			count = -1;
+		}
+		if(count < 0)
+		{
+			key.cancel();
+			transport.onClosed();
+			return;
+		}
+		buffer.flip();
+		transport.onBytes(buffer);
+	}
+}
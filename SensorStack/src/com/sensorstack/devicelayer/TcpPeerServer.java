@@ -0,0 +1,119 @@
+package com.sensorstack.devicelayer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+
+/**
+ * Local TCP stand-in for a sensor hub. Every accepted connection is answered by a {@link LoopbackTransport.Peer},
+ * e.g. a {@link ScriptedPeer}, so {@link TcpTransport} can be exercised without hub hardware.
+ * Frames sent by the peer are written to the connection terminated by '\n', one byte per character.
+ */
+public class TcpPeerServer implements Runnable {
+
+	private final ServerSocket server;
+	private final LoopbackTransport.Peer peer;
+
+	/**
+	 * Constructor to bind the server
+	 * @param port TCP port to listen on, 0 for any free port
+	 * @param peer Stand-in for the sensor hardware answering the requests
+	 * @throws IOException if the port cannot be bound
+	 */
+	public TcpPeerServer(int port, LoopbackTransport.Peer peer) throws IOException {
+		this.server = new ServerSocket(port);
+		this.peer = peer;
+	}
+
+	/**
+	 * Returns the TCP port the server listens on
+	 * @return Port number
+	 */
+	public int getPort() {
+		return server.getLocalPort();
+	}
+
+	/**
+	 * Starts accepting connections on a background thread
+	 */
+	public void start() {
+		Thread thread = new Thread(this, "TcpPeerServer");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Stops accepting connections
+	 */
+	public void close() {
+		try {
+			server.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+	}
+
+	public void run() {
+		while(!server.isClosed())
+		{
+			try {
+				serve(server.accept());
+			} catch (IOException e) {
+				if(!server.isClosed())
+					e.printStackTrace();
+			}
+		}
+	}
+
+	private void serve(final Socket socket) throws IOException {
+		final LoopbackTransport link = new LoopbackTransport(peer);
+		final InputStream in = socket.getInputStream();
+		final OutputStream out = socket.getOutputStream();
+		link.open();
+
+		//requests: connection -> peer
+		Thread requests = new Thread("TcpPeerServer-requests") {
+			public void run() {
+				try {
+					int data;
+					while((data = in.read()) >= 0)
+						link.write((byte) data);
+				} catch (IOException e) {
+					//connection dropped
+				} finally {
+					link.close();
+					try {
+						socket.close();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		};
+		//responses: peer -> connection
+		Thread responses = new Thread("TcpPeerServer-responses") {
+			public void run() {
+				try {
+					while(true)
+					{
+						String frame = link.readFrame(100);
+						if(frame == null)
+							continue;
+						out.write((frame + "\n").getBytes(Frame.CHARSET));
+						out.flush();
+					}
+				} catch (IOException e) {
+					//link closed
+				} catch (InterruptedException e) {
+					//stopped
+				}
+			}
+		};
+		requests.setDaemon(true);
+		responses.setDaemon(true);
+		requests.start();
+		responses.start();
+	}
+}
@@ -0,0 +1,167 @@
+package com.sensorstack.devicelayer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Transport for {@link Mode#WIFI}. The sensor hub speaks the same line based protocol as the Bluetooth
+ * hardware over a TCP connection. Reading is done by the shared {@link TcpHubReader}, which also hands the frames
+ * to the request pipeline of the session, see {@link PushTransport}, so many hubs can be connected at the same time
+ * without a thread per hub.
+ */
+public class TcpTransport implements PushTransport {
+	/**
+	 * Time (in milliseconds) allowed for establishing the TCP connection
+	 */
+	public static final int CONNECT_TIMEOUT = 5000;
+	/**
+	 * Time (in milliseconds) a request byte waits for room in the socket buffer
+	 */
+	public static final int WRITE_TIMEOUT = 1000;
+
+	private final InetSocketAddress address;
+	private SocketChannel channel;
+	private volatile FrameRingBuffer frames = new FrameRingBuffer();
+	private final ByteBuffer request = ByteBuffer.allocate(1);
+	private volatile boolean closed = true;
+	private volatile Runnable ready = null;
+	private Selector writeSelector = null;		//waits for room in the socket buffer, opened when first needed
+
+	/**
+	 * Constructor to set the address of the sensor hub
+	 * @param host Host name or IP address of the hub
+	 * @param port TCP port of the hub
+	 */
+	public TcpTransport(String host, int port) {
+		this(new InetSocketAddress(host, port));
+	}
+
+	/**
+	 * Constructor to set the address of the sensor hub
+	 * @param address Socket address of the hub
+	 */
+	public TcpTransport(InetSocketAddress address) {
+		this.address = address;
+		frames.close();		//nothing to read until opened
+	}
+
+	public synchronized void open() throws IOException {
+		if(!closed)
+			return;
+		SocketChannel ch = SocketChannel.open();
+		try {
+			ch.socket().connect(address, CONNECT_TIMEOUT);
+			ch.socket().setTcpNoDelay(true);
+			ch.configureBlocking(false);
+		} catch (IOException e) {
+			ch.close();
+			throw e;
+		}
+		channel = ch;
+		frames = new FrameRingBuffer();
+		closed = false;
+		TcpHubReader.getDefault().register(this);
+	}
+
+	public synchronized void write(byte data) throws IOException {
+		if(closed)
+			throw new IOException("Hub connection is closed");
+		request.clear();
+		request.put(data);
+		request.flip();
+		if(channel.write(request) == 0)
+			awaitWritable();		//socket buffer full, the hub is not keeping up
+	}
+
+	/*
+	 * Writes the request once the socket buffer has room; the channel stays non-blocking for the reader
+	 */
+	private void awaitWritable() throws IOException {
+		if(writeSelector == null)
+		{
+			writeSelector = Selector.open();
+			channel.register(writeSelector, SelectionKey.OP_WRITE);
+		}
+		long deadline = System.currentTimeMillis() + WRITE_TIMEOUT;
+		while(request.hasRemaining())
+		{
+			long remaining = deadline - System.currentTimeMillis();
+			if(remaining <= 0)
+				throw new IOException("Hub not accepting requests");
+			writeSelector.select(remaining);
+			writeSelector.selectedKeys().clear();
+			channel.write(request);
+		}
+	}
+
+	public void setReadyListener(Runnable ready) {
+		this.ready = ready;
+	}
+
+	public String readFrame(int timeout) throws IOException, InterruptedException {
+		return frames.readFrame(timeout);
+	}
+
+	public boolean readFrame(Frame frame, int timeout) throws IOException, InterruptedException {
+		return frames.readFrame(frame, timeout);
+	}
+
+	public synchronized void close() {
+		if(closed)
+			return;
+		closed = true;
+		try {
+			TcpHubReader.getDefault().unregister(this);
+			channel.close();
+			if(writeSelector != null)
+				writeSelector.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		writeSelector = null;
+		frames.clear();
+		frames.close();
+	}
+
+	/**
+	 * Returns the address of the sensor hub
+	 * @return Socket address of the hub
+	 */
+	public InetSocketAddress getAddress() {
+		return address;
+	}
+
+	SocketChannel getChannel() {
+		return channel;
+	}
+
+	/*
+	 * Called by the reader thread with the bytes received from the hub
+	 */
+	void onBytes(ByteBuffer data) {
+		frames.write(data);
+		Runnable r = ready;
+		if(r != null)
+			r.run();
+	}
+
+	/*
+	 * Called by the reader thread when the hub closed the connection. Reads and writes fail from now on, but the
+	 * transport stays open until close(), which releases the write selector.
+	 */
+	void onClosed() {
+		frames.close();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		Runnable r = ready;
+		if(r != null)
+			r.run();
+	}
+}
@@ -0,0 +1,50 @@
+package com.sensorstack.devicelayer;
+
+import java.io.IOException;
+
+/**
+ * Channel over which DeviceLayerClass exchanges data with the sensor hardware.
+ * Request bytes are written to the hardware and every line sent back by the hardware is read as one frame.
+ * An implementation is provided for each mode of connectivity, see {@link Mode}.
+ */
+public interface Transport {
+
+	/**
+	 * Prepares the channel for data exchange. Connection establishment with the hardware must be complete
+	 * (or be completed by this call) before any request is written.
+	 * @throws IOException if the channel cannot be opened
+	 */
+	void open() throws IOException;
+
+	/**
+	 * Sends a single request byte to the hardware
+	 * @param data Request byte
+	 * @throws IOException if the channel is not open or the write fails
+	 */
+	void write(byte data) throws IOException;
+
+	/**
+	 * Returns the next frame received from the hardware, waiting up to the specified timeout period
+	 * @param timeout Timeout period in milliseconds
+	 * @return Frame received from the hardware without the line terminator, null if no frame arrived in time
+	 * @throws IOException if the channel is broken
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 */
+	String readFrame(int timeout) throws IOException, InterruptedException;
+
+	/**
+	 * Reads the next frame received from the hardware into a reusable frame, waiting up to the specified timeout
+	 * period. Unlike {@link #readFrame(int)} no objects are allocated per frame when the transport frames raw bytes.
+	 * @param frame Receives the frame without the line terminator
+	 * @param timeout Timeout period in milliseconds
+	 * @return false if no frame arrived in time
+	 * @throws IOException if the channel is broken
+	 * @throws InterruptedException if the calling thread is interrupted while waiting
+	 */
+	boolean readFrame(Frame frame, int timeout) throws IOException, InterruptedException;
+
+	/**
+	 * Releases the channel. Frames not yet read are discarded.
+	 */
+	void close();
+}
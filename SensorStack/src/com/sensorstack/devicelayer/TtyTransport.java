@@ -0,0 +1,85 @@
+package com.sensorstack.devicelayer;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Transport over a serial device file, e.g. /dev/ttyACM0 for a sensor kit seen by the kernel's CDC-ACM driver,
+ * or the slave side of a pseudo-terminal. It speaks the same protocol as {@link UsbTransport} and shares its reader,
+ * so the USB path can be run on a Linux host against a pseudo-terminal standing in for the sensor kit.
+ * The line settings are left to the device: a pseudo-terminal must have been put in raw mode (no echo,
+ * no translation of line ends), e.g. with "stty raw -echo".
+ */
+public class TtyTransport extends SerialTransport {
+	private static final int IDLE_WAIT = 2;		//ms between checks for bytes
+
+	private final File device;
+	private volatile FileInputStream in;
+	private FileOutputStream out;
+
+	/**
+	 * Constructor
+	 * @param device Serial device file
+	 */
+	public TtyTransport(File device) {
+		super(device.getPath());
+		this.device = device;
+	}
+
+	/**
+	 * Returns the serial device file of this transport
+	 */
+	public File getDevice() {
+		return device;
+	}
+
+	protected void openPort() throws IOException {
+		FileInputStream i = new FileInputStream(device);
+		try {
+			out = new FileOutputStream(device);
+		} catch (IOException e) {
+			i.close();
+			throw e;
+		}
+		in = i;
+	}
+
+	protected int readPort(byte[] buffer, int timeout) throws IOException {
+		FileInputStream i = in;
+		if(i == null)
+			return 0;		//closed
+		//a blocking read of a device file would outlive close(), so only what is available is read
+		long end = System.currentTimeMillis() + timeout;
+		int available = i.available();
+		while(available == 0 && System.currentTimeMillis() < end)
+		{
+			try {
+				Thread.sleep(IDLE_WAIT);
+			} catch (InterruptedException e) {
+				return 0;
+			}
+			available = i.available();
+		}
+		if(available == 0)
+			return 0;
+		return i.read(buffer, 0, Math.min(available, buffer.length));
+	}
+
+	protected void writePort(byte[] data, int length) throws IOException {
+		out.write(data, 0, length);
+		out.flush();
+	}
+
+	protected void closePort() {
+		try {
+			in.close();
+			out.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		in = null;
+		out = null;
+	}
+}
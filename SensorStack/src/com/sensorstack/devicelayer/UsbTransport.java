@@ -0,0 +1,174 @@
+package com.sensorstack.devicelayer;
+
+import java.io.IOException;
+
+import android.hardware.usb.UsbConstants;
+import android.hardware.usb.UsbDevice;
+import android.hardware.usb.UsbDeviceConnection;
+import android.hardware.usb.UsbEndpoint;
+import android.hardware.usb.UsbInterface;
+import android.hardware.usb.UsbManager;
+
+/**
+ * Transport for {@link Mode#USB}. The sensor kit is a USB CDC-ACM device (virtual serial port) speaking the same
+ * line based protocol as the Bluetooth hardware, read and written with bulk transfers in USB host mode.
+ * The application must have been granted permission for the device, see UsbManager.requestPermission().
+ */
+public class UsbTransport extends SerialTransport {
+	/**
+	 * Default baud rate; the line of a CDC-ACM device is virtual, but bridges to a UART use it
+	 */
+	public static final int DEFAULT_BAUD_RATE = 115200;
+	/**
+	 * Time (in milliseconds) allowed for writing a request
+	 */
+	public static final int WRITE_TIMEOUT = 1000;
+
+	//CDC class requests, on the communication interface
+	private static final int REQUEST_TYPE = UsbConstants.USB_TYPE_CLASS | 0x01;		//host to interface
+	private static final int SET_LINE_CODING = 0x20;
+	private static final int SET_CONTROL_LINE_STATE = 0x22;
+	private static final int DTR = 0x01;
+	private static final int RTS = 0x02;
+	//consecutive failed reads returning before their timeout, taken as the device detached
+	private static final int MAX_FAILED_READS = 10;
+
+	private final UsbManager manager;
+	private final UsbDevice device;
+	private final int baudRate;
+	private volatile UsbDeviceConnection connection;
+	private UsbInterface control;
+	private UsbInterface data;
+	private UsbEndpoint in;
+	private UsbEndpoint out;
+	private int failedReads = 0;
+
+	/**
+	 * Constructor for the default baud rate
+	 * @param manager USB service of the android device
+	 * @param device Sensor kit attached to the android device
+	 */
+	public UsbTransport(UsbManager manager, UsbDevice device) {
+		this(manager, device, DEFAULT_BAUD_RATE);
+	}
+
+	/**
+	 * Constructor
+	 * @param manager USB service of the android device
+	 * @param device Sensor kit attached to the android device
+	 * @param baudRate Baud rate of the line, 8 data bits, no parity, 1 stop bit
+	 */
+	public UsbTransport(UsbManager manager, UsbDevice device, int baudRate) {
+		super(device.getDeviceName());
+		this.manager = manager;
+		this.device = device;
+		this.baudRate = baudRate;
+	}
+
+	/**
+	 * Returns the sensor kit of this transport
+	 */
+	public UsbDevice getDevice() {
+		return device;
+	}
+
+	protected void openPort() throws IOException {
+		if(!manager.hasPermission(device))
+			throw new IOException("No permission for USB device " + device.getDeviceName());
+		findInterfaces();
+		UsbDeviceConnection c = manager.openDevice(device);
+		if(c == null)
+			throw new IOException("Cannot open USB device " + device.getDeviceName());
+		if(!c.claimInterface(data, true) || (control != null && !c.claimInterface(control, true)))
+		{
+			c.close();
+			throw new IOException("Cannot claim USB device " + device.getDeviceName());
+		}
+		if(control != null)
+		{
+			//8N1 at the baud rate, then raise DTR and RTS; the kit starts answering once DTR is up
+			byte coding[] = {(byte) baudRate, (byte) (baudRate >> 8), (byte) (baudRate >> 16), (byte) (baudRate >> 24),
+					0, 0, 8};
+			if(c.controlTransfer(REQUEST_TYPE, SET_LINE_CODING, 0, control.getId(), coding, coding.length, WRITE_TIMEOUT) < 0
+					|| c.controlTransfer(REQUEST_TYPE, SET_CONTROL_LINE_STATE, DTR | RTS, control.getId(), null, 0, WRITE_TIMEOUT) < 0)
+			{
+				c.close();
+				throw new IOException("Cannot set up the line of USB device " + device.getDeviceName());
+			}
+		}
+		connection = c;
+		failedReads = 0;
+	}
+
+	/*
+	 * Finds the data interface with its bulk endpoints, and the communication interface if the device has one
+	 */
+	private void findInterfaces() throws IOException {
+		control = null;
+		data = null;
+		for(int i=0;i<device.getInterfaceCount();i++)
+		{
+			UsbInterface intf = device.getInterface(i);
+			if(intf.getInterfaceClass() == UsbConstants.USB_CLASS_COMM && control == null)
+				control = intf;
+			else if(intf.getInterfaceClass() == UsbConstants.USB_CLASS_CDC_DATA && data == null)
+			{
+				in = null;
+				out = null;
+				for(int e=0;e<intf.getEndpointCount();e++)
+				{
+					UsbEndpoint ep = intf.getEndpoint(e);
+					if(ep.getType() != UsbConstants.USB_ENDPOINT_XFER_BULK)
+						continue;
+					if(ep.getDirection() == UsbConstants.USB_DIR_IN)
+						in = ep;
+					else
+						out = ep;
+				}
+				if(in != null && out != null)
+					data = intf;
+			}
+		}
+		if(data == null)
+			throw new IOException("USB device " + device.getDeviceName() + " is not a CDC-ACM serial port");
+	}
+
+	protected int readSize() {
+		//a multiple of the packet size, so a transfer never ends in the middle of a packet
+		return Math.max(in.getMaxPacketSize(), 64) * 16;
+	}
+
+	protected int readPort(byte[] buffer, int timeout) throws IOException {
+		UsbDeviceConnection c = connection;
+		if(c == null)
+			return 0;		//closed
+		long start = System.currentTimeMillis();
+		int n = c.bulkTransfer(in, buffer, buffer.length, timeout);
+		if(n >= 0)
+		{
+			failedReads = 0;
+			return n;
+		}
+		//a timeout and an error look the same, but a detached device fails at once
+		if(System.currentTimeMillis() - start >= timeout / 2)
+			failedReads = 0;
+		else if(++failedReads >= MAX_FAILED_READS)
+			throw new IOException("USB device " + device.getDeviceName() + " detached");
+		return 0;
+	}
+
+	protected void writePort(byte[] data, int length) throws IOException {
+		if(connection.bulkTransfer(out, data, length, WRITE_TIMEOUT) != length)
+			throw new IOException("Write to USB device " + device.getDeviceName() + " failed");
+	}
+
+	protected void closePort() {
+		if(connection == null)
+			return;
+		if(control != null)
+			connection.releaseInterface(control);
+		connection.releaseInterface(data);
+		connection.close();
+		connection = null;
+	}
+}
@@ -3,6 +3,8 @@ package com.sensorstack.provenancelayer;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import android.content.Context;
 import android.location.Location;
@@ -11,6 +13,8 @@ import android.location.LocationManager;
 import com.sensorstack.ContinuousStreamInfo;
 import com.sensorstack.DiscretePacketInfo;
 import com.sensorstack.AAlayer.AALayerII;
+import com.sensorstack.devicelayer.DeviceLayerClass;
+import com.sensorstack.devicelayer.DeviceSession;
 import com.sensorstack.devicelayer.NoDeviceConnectedException;
 import com.sensorstack.sensors.BloodPressure;
 import com.sensorstack.sensors.DataNotCollectedException;
@@ -30,16 +34,15 @@ import com.sensorstack.sensors.Temperature;
  * 1) medical data value from sensors
  * 2) metadata information from sensors
  * 3) GPS location and timestamp from the system
+ * The methods taking a DeviceSession fetch from the sensor hardware of that session, see 
+ * {@link com.sensorstack.devicelayer.DeviceRegistry}; metadata is kept separately for each session.
  */
 public class ProvenanceLayer {
 	static final String SENSORIDKEY = "SensorId";
 	static final String MANUFACTURERKEY = "Manufacturer";
-	private static HashMap<String, String> temperatureMetadata=null;
-	private static HashMap<String, String> bloodPressureMetadata=null;
-	private static HashMap<String, String> pulseRateMetadata=null;
-	private static HashMap<String, String> oximeterMetadata=null;
-	private static HashMap<String, String> GSRMetadata=null;
-	private static HashMap<String, String> ECGMetadata=null;
+	//last fetched metadata of each session, by sensor
+	private static final Map<DeviceSession, HashMap<Integer, HashMap<String, String>>> sessionMetadata = 
+			new WeakHashMap<DeviceSession, HashMap<Integer, HashMap<String, String>>>();
 	
 	private static GPSLocation getGPS(Context context){	 
 		final LocationManager manager = (LocationManager) context.getSystemService( Context.LOCATION_SERVICE );
@@ -56,7 +59,8 @@ public class ProvenanceLayer {
 	    return null;
 	}
 	
-	private static HashMap<String, String> getMetadata(int sensorId, String variableMetadata[]) throws NoDeviceConnectedException
+	private static HashMap<String, String> getMetadata(DeviceSession session, int sensorId, String variableMetadata[], 
+			DiscretePacketInfo discretePacketInfo, ContinuousStreamInfo continuousStreamInfo) throws NoDeviceConnectedException
 	{
 		HashMap<String, String> metadata = new HashMap<String, String>();
 		metadata.put(SENSORIDKEY, null);
@@ -67,13 +71,33 @@ public class ProvenanceLayer {
 				metadata.put(variableMetadata[i], null);
 		}
 		try {
-			AALayerII.getMetadata(sensorId,metadata);
+			AALayerII.getMetadata(session, sensorId, metadata, discretePacketInfo, continuousStreamInfo);
 		} catch (SensorNotDefinedException e) {
 			e.printStackTrace();
 		}
+		synchronized(sessionMetadata){
+			HashMap<Integer, HashMap<String, String>> cache = sessionMetadata.get(session);
+			if(cache == null)
+			{
+				cache = new HashMap<Integer, HashMap<String, String>>();
+				sessionMetadata.put(session, cache);
+			}
+			cache.put(sensorId, metadata);
+		}
 		return metadata;
 	}
 	
+	/*
+	 * Returns the metadata last fetched from the sensor of the session, null if none has been fetched
+	 */
+	private static HashMap<String, String> getCachedMetadata(DeviceSession session, int sensorId)
+	{
+		synchronized(sessionMetadata){
+			HashMap<Integer, HashMap<String, String>> cache = sessionMetadata.get(session);
+			return (cache != null) ? cache.get(sensorId) : null;
+		}
+	}
+	
 	/**
 	 * Used to fetch Temperature sensor data value along with metadata
 	 * @param context Context of the app
@@ -90,19 +114,34 @@ public class ProvenanceLayer {
 	{
 		if(discretePacketInfo != null)
 			AALayerII.setDiscretePacketInfo(discretePacketInfo);
-		
+		if(range != null)
+			AALayerII.getHardwareDataRange().setTemperatureRange(range);
+		return getTemperature(DeviceLayerClass.getDefaultSession(), context, flag, variableMetadata, AALayerII.getDiscretePacketInfo(), range);
+	}
+	
+	/**
+	 * Used to fetch Temperature sensor data value along with metadata from the sensor hardware of the specified session
+	 * @param session Connection to the sensor hardware. See {@link com.sensorstack.devicelayer.DeviceSession}
+	 * @param context Context of the app
+	 * @param flag If set, a new request to re-fetch metadata from the h/w is made otherwise last fetched metadata is used  
+	 * @param variableMetadata Specifies which additional metadata parameters are needed to be fetched from the sensors other than the mandatory sensorID and manufacturerID
+	 * @param discretePacketInfo Required to fetch and unpack the data received. See {@link com.sensorstack.DiscretePacketInfo}
+	 * @param range Specifies the valid range of sensor hardware, the current hardware range if null. See {@link com.sensorstack.sensors.RangeOfValues}
+	 * @return Fully populated instance of Temperature class. See {@link com.sensorstack.sensors.Temperature} 
+	 * @throws NoDeviceConnectedException
+	 */
+	public static Temperature getTemperature(DeviceSession session, Context context,boolean flag, 
+			String variableMetadata[], DiscretePacketInfo discretePacketInfo, 
+			RangeOfValues<Float> range) throws NoDeviceConnectedException
+	{
 		//get metadata
 		if(flag)
-			temperatureMetadata = getMetadata(Sensor.TEMPERATURE, variableMetadata);
+			getMetadata(session, Sensor.TEMPERATURE, variableMetadata, discretePacketInfo, null);
 		
 		//get medical data
-		Temperature temp;
-		if(range != null)
-			temp = AALayerII.getTemperature(range);
-		else
-			temp = AALayerII.getTemperature();
+		Temperature temp = AALayerII.getTemperature(session, discretePacketInfo, range);
 		//add metadata
-		temp.setMetadataMap(temperatureMetadata);
+		temp.setMetadataMap(getCachedMetadata(session, Sensor.TEMPERATURE));
 		
 		//get Timestamp
 		Date now = new Date();
@@ -134,19 +173,39 @@ public class ProvenanceLayer {
 	{
 		if(discretePacketInfo != null)
 			AALayerII.setDiscretePacketInfo(discretePacketInfo);
-		
+		if(sysRange != null && diasRange != null)
+		{
+			AALayerII.getHardwareDataRange().setSystolicRange(sysRange);
+			AALayerII.getHardwareDataRange().setDiastolicRange(diasRange);
+		}
+		return getBloodPressure(DeviceLayerClass.getDefaultSession(), context, flag, variableMetadata, AALayerII.getDiscretePacketInfo(), null, null);
+	}
+	
+	/**
+	 * Used to fetch Blood Pressure sensor data value along with metadata from the sensor hardware of the specified session
+	 * @param session Connection to the sensor hardware. See {@link com.sensorstack.devicelayer.DeviceSession}
+	 * @param context Context of the app
+	 * @param flag If set, a new request to re-fetch metadata from the h/w is made otherwise last fetched metadata is used  
+	 * @param variableMetadata Specifies which additional metadata parameters are needed to be fetched from the sensors other than the mandatory sensorID and manufacturerID
+	 * @param discretePacketInfo Required to fetch and unpack the data received. See {@link com.sensorstack.DiscretePacketInfo}
+	 * @param sysRange Specifies the valid range of sensor hardware for Systolic Pressure, the current hardware range if null. See {@link com.sensorstack.sensors.RangeOfValues}
+	 * @param diasRange Specifies the valid range of sensor hardware for Diastolic Pressure, the current hardware range if null. See {@link com.sensorstack.sensors.RangeOfValues}
+	 * @return Fully populated instance of BloodPressure class. See {@link com.sensorstack.sensors.BloodPressure} 
+	 * @throws NoDeviceConnectedException
+	 */
+	public static BloodPressure getBloodPressure(DeviceSession session, Context context,boolean flag, 
+			String variableMetadata[], DiscretePacketInfo discretePacketInfo, 
+			RangeOfValues<Integer> sysRange, RangeOfValues<Integer> diasRange) 
+					throws NoDeviceConnectedException
+	{
 		//get metadata
 		if(flag)
-			bloodPressureMetadata = getMetadata(Sensor.BLOODPRESSURE, variableMetadata);
+			getMetadata(session, Sensor.BLOODPRESSURE, variableMetadata, discretePacketInfo, null);
 		
 		//get medical data
-		BloodPressure bp;
-		if(sysRange != null && diasRange != null)
-			bp = AALayerII.getBloodPressure(sysRange, diasRange);
-		else
-			bp = AALayerII.getBloodPressure();
+		BloodPressure bp = AALayerII.getBloodPressure(session, discretePacketInfo, sysRange, diasRange);
 		//add metadata
-		bp.setMetadataMap(bloodPressureMetadata);
+		bp.setMetadataMap(getCachedMetadata(session, Sensor.BLOODPRESSURE));
 		
 		//get Timestamp
 		Date now = new Date();
@@ -176,19 +235,34 @@ public class ProvenanceLayer {
 	{
 		if(discretePacketInfo != null)
 			AALayerII.setDiscretePacketInfo(discretePacketInfo);
-		
+		if(range != null)
+			AALayerII.getHardwareDataRange().setPulseRateRange(range);
+		return getPulseRate(DeviceLayerClass.getDefaultSession(), context, flag, variableMetadata, AALayerII.getDiscretePacketInfo(), range);
+	}
+	
+	/**
+	 * Used to fetch Pulse Rate sensor data value along with metadata from the sensor hardware of the specified session
+	 * @param session Connection to the sensor hardware. See {@link com.sensorstack.devicelayer.DeviceSession}
+	 * @param context Context of the app
+	 * @param flag If set, a new request to re-fetch metadata from the h/w is made otherwise last fetched metadata is used  
+	 * @param variableMetadata Specifies which additional metadata parameters are needed to be fetched from the sensors other than the mandatory sensorID and manufacturerID
+	 * @param discretePacketInfo Required to fetch and unpack the data received. See {@link com.sensorstack.DiscretePacketInfo}
+	 * @param range Specifies the valid range of sensor hardware, the current hardware range if null. See {@link com.sensorstack.sensors.RangeOfValues}
+	 * @return Fully populated instance of PulseRate class. See {@link com.sensorstack.sensors.PulseRate} 
+	 * @throws NoDeviceConnectedException
+	 */
+	public static PulseRate getPulseRate(DeviceSession session, Context context,boolean flag, 
+			String variableMetadata[], DiscretePacketInfo discretePacketInfo, 
+			RangeOfValues<Integer> range) throws NoDeviceConnectedException
+	{
 		//get metadata
-		if(flag || pulseRateMetadata == null)
-			pulseRateMetadata = getMetadata(Sensor.PULSERATE, variableMetadata);
+		if(flag || getCachedMetadata(session, Sensor.PULSERATE) == null)
+			getMetadata(session, Sensor.PULSERATE, variableMetadata, discretePacketInfo, null);
 		
 		//get medical data
-		PulseRate pulseRate;
-		if(range != null)
-			pulseRate = AALayerII.getPulseRate(range);
-		else
-			pulseRate = AALayerII.getPulseRate();
+		PulseRate pulseRate = AALayerII.getPulseRate(session, discretePacketInfo, range);
 		//add metadata
-		pulseRate.setMetadataMap(pulseRateMetadata);
+		pulseRate.setMetadataMap(getCachedMetadata(session, Sensor.PULSERATE));
 		
 		//get Timestamp
 		Date now = new Date();
@@ -218,19 +292,34 @@ public class ProvenanceLayer {
 	{
 		if(discretePacketInfo != null)
 			AALayerII.setDiscretePacketInfo(discretePacketInfo);
-		
+		if(range != null)
+			AALayerII.getHardwareDataRange().setOximeterRange(range);
+		return getOximeter(DeviceLayerClass.getDefaultSession(), context, flag, variableMetadata, AALayerII.getDiscretePacketInfo(), range);
+	}
+	
+	/**
+	 * Used to fetch Oximeter sensor data value along with metadata from the sensor hardware of the specified session
+	 * @param session Connection to the sensor hardware. See {@link com.sensorstack.devicelayer.DeviceSession}
+	 * @param context Context of the app
+	 * @param flag If set, a new request to re-fetch metadata from the h/w is made otherwise last fetched metadata is used  
+	 * @param variableMetadata Specifies which additional metadata parameters are needed to be fetched from the sensors other than the mandatory sensorID and manufacturerID
+	 * @param discretePacketInfo Required to fetch and unpack the data received. See {@link com.sensorstack.DiscretePacketInfo}
+	 * @param range Specifies the valid range of sensor hardware, the current hardware range if null. See {@link com.sensorstack.sensors.RangeOfValues}
+	 * @return Fully populated instance of Oximeter class. See {@link com.sensorstack.sensors.Oximeter} 
+	 * @throws NoDeviceConnectedException
+	 */
+	public static Oximeter getOximeter(DeviceSession session, Context context,boolean flag, 
+			String variableMetadata[], DiscretePacketInfo discretePacketInfo, 
+			RangeOfValues<Float> range) throws NoDeviceConnectedException
+	{
 		//get metadata
 		if(flag)
-			oximeterMetadata = getMetadata(Sensor.OXIMETER, variableMetadata);
+			getMetadata(session, Sensor.OXIMETER, variableMetadata, discretePacketInfo, null);
 		
 		//get medical data
-		Oximeter oximeter;
-		if(range != null)
-			oximeter = AALayerII.getOximeter(range);
-		else
-			oximeter = AALayerII.getOximeter();
+		Oximeter oximeter = AALayerII.getOximeter(session, discretePacketInfo, range);
 		//add metadata
-		oximeter.setMetadataMap(oximeterMetadata);
+		oximeter.setMetadataMap(getCachedMetadata(session, Sensor.OXIMETER));
 		
 		//get Timestamp
 		Date now = new Date();
@@ -262,19 +351,39 @@ public class ProvenanceLayer {
 	{
 		if(discretePacketInfo != null)
 			AALayerII.setDiscretePacketInfo(discretePacketInfo);
-		
+		if(conductanceRange != null && resistanceRange != null)
+		{
+			AALayerII.getHardwareDataRange().setGsrConductanceRange(conductanceRange);
+			AALayerII.getHardwareDataRange().setGsrResistanceRange(resistanceRange);
+		}
+		return getGSR(DeviceLayerClass.getDefaultSession(), context, flag, variableMetadata, AALayerII.getDiscretePacketInfo(), null, null);
+	}
+	
+	/**
+	 * Used to fetch GSR sensor data value along with metadata from the sensor hardware of the specified session
+	 * @param session Connection to the sensor hardware. See {@link com.sensorstack.devicelayer.DeviceSession}
+	 * @param context Context of the app
+	 * @param flag If set, a new request to re-fetch metadata from the h/w is made otherwise last fetched metadata is used  
+	 * @param variableMetadata Specifies which additional metadata parameters are needed to be fetched from the sensors other than the mandatory sensorID and manufacturerID
+	 * @param discretePacketInfo Required to fetch and unpack the data received. See {@link com.sensorstack.DiscretePacketInfo}
+	 * @param conductanceRange Specifies the valid range of sensor hardware for skin conductance, the current hardware range if null. See {@link com.sensorstack.sensors.RangeOfValues}
+	 * @param resistanceRange Specifies the valid range of sensor hardware for skin resistance, the current hardware range if null. See {@link com.sensorstack.sensors.RangeOfValues}
+	 * @return Fully populated instance of GSR class. See {@link com.sensorstack.sensors.GSR} 
+	 * @throws NoDeviceConnectedException
+	 */
+	public static GSR getGSR(DeviceSession session, Context context,boolean flag, 
+			String variableMetadata[], DiscretePacketInfo discretePacketInfo, 
+			RangeOfValues<Float> conductanceRange, RangeOfValues<Float> resistanceRange) 
+					throws NoDeviceConnectedException
+	{
 		//get metadata
 		if(flag)
-			GSRMetadata = getMetadata(Sensor.GSR, variableMetadata);
+			getMetadata(session, Sensor.GSR, variableMetadata, discretePacketInfo, null);
 		
 		//get medical data
-		GSR gsr;
-		if(conductanceRange != null && resistanceRange != null)
-			gsr = AALayerII.getGSR(conductanceRange, resistanceRange);
-		else
-			gsr = AALayerII.getGSR();
+		GSR gsr = AALayerII.getGSR(session, discretePacketInfo, conductanceRange, resistanceRange);
 		//add metadata
-		gsr.setMetadataMap(GSRMetadata);
+		gsr.setMetadataMap(getCachedMetadata(session, Sensor.GSR));
 		
 		//get Timestamp
 		Date now = new Date();
@@ -305,19 +414,35 @@ public class ProvenanceLayer {
 	{
 		if(continuousStreamInfo != null)
 			AALayerII.setContinuousStreamInfo(continuousStreamInfo);
-		
+		if(range != null)
+			AALayerII.getHardwareDataRange().setEcgRange(range);
+		return getECG(DeviceLayerClass.getDefaultSession(), context, flag, variableMetadata, AALayerII.getContinuousStreamInfo(), range);
+	}
+	
+	/**
+	 * Used to fetch ECG sensor data value along with metadata from the sensor hardware of the specified session
+	 * @param session Connection to the sensor hardware. See {@link com.sensorstack.devicelayer.DeviceSession}
+	 * @param context Context of the app
+	 * @param flag If set, a new request to re-fetch metadata from the h/w is made otherwise last fetched metadata is used  
+	 * @param variableMetadata Specifies which additional metadata parameters are needed to be fetched from the sensors other than the mandatory sensorID and manufacturerID
+	 * @param continuousStreamInfo Required to fetch and unpack the data received. See {@link com.sensorstack.ContinuousStreamInfo}
+	 * @param range Specifies the valid range of sensor hardware, the current hardware range if null. See {@link com.sensorstack.sensors.RangeOfValues}
+	 * @return Fully populated instance of ECG class. See {@link com.sensorstack.sensors.ECG} 
+	 * @throws NoDeviceConnectedException
+	 * @throws DataNotCollectedException
+	 */
+	public static ECG getECG(DeviceSession session, Context context,boolean flag, 
+			String variableMetadata[], ContinuousStreamInfo continuousStreamInfo, 
+			RangeOfValues<Float> range) throws NoDeviceConnectedException, DataNotCollectedException
+	{
 		//get metadata
 		if(flag)
-			ECGMetadata = getMetadata(Sensor.ECG, variableMetadata);
+			getMetadata(session, Sensor.ECG, variableMetadata, null, continuousStreamInfo);
 		
 		//get medical data
-		ECG ecg;
-		if(range != null)
-			ecg = AALayerII.getECG(range);
-		else
-			ecg = AALayerII.getECG();
+		ECG ecg = AALayerII.getECG(session, continuousStreamInfo, range);
 		//add metadata
-		ecg.setMetadataMap(ECGMetadata);
+		ecg.setMetadataMap(getCachedMetadata(session, Sensor.ECG));
 		
 		//get Timestamp
 		Date now = new Date();
@@ -348,43 +473,38 @@ public class ProvenanceLayer {
 	{
 		if(discretePacketInfo != null)
 			AALayerII.setDiscretePacketInfo(discretePacketInfo);
-		
+		if(range != null)
+			AALayerII.setHardwareRange(range);
+		return getDiscrete(DeviceLayerClass.getDefaultSession(), context, flag, variableMetadata, AALayerII.getDiscretePacketInfo(), null);
+	}
+	
+	/**
+	 * Used to fetch discrete sensor data values along with metadata from the sensor hardware of the specified session
+	 * @param session Connection to the sensor hardware. See {@link com.sensorstack.devicelayer.DeviceSession}
+	 * @param context Context of the app
+	 * @param flag If set, a new request to re-fetch metadata from the h/w is made otherwise last fetched metadata is used  
+	 * @param variableMetadata Specifies which additional metadata parameters are needed to be fetched from the sensors other than the mandatory sensorID and manufacturerID
+	 * @param discretePacketInfo Required to fetch and unpack the data received. See {@link com.sensorstack.DiscretePacketInfo}
+	 * @param range Specifies the valid range of sensors' hardware; the current hardware range is used where null. See {@link com.sensorstack.sensors.SensorDataRange}
+	 * @return SensorData populated with the values collected, each with its metadata. See {@link com.sensorstack.sensors.SensorData} 
+	 * @throws DataNotCollectedException
+	 * @throws NoDeviceConnectedException	
+	 */
+	public static SensorData getDiscrete(DeviceSession session, Context context,boolean flag, 
+			String variableMetadata[], DiscretePacketInfo discretePacketInfo, 
+			SensorDataRange range) throws DataNotCollectedException, NoDeviceConnectedException
+	{
 		//get metadata
 		if(flag)
 		{
 			boolean req[] = discretePacketInfo.getRequirement();
 			for(int i=0; i<Sensor.NUM_DISCRETE; i++)
-			{
 				if(req[i])
-				{
-					switch(i)
-					{
-						case Sensor.TEMPERATURE:
-							temperatureMetadata = getMetadata(i, variableMetadata);
-							break;
-						case Sensor.BLOODPRESSURE:
-							bloodPressureMetadata = getMetadata(i, variableMetadata);
-							break;
-						case Sensor.PULSERATE:
-							pulseRateMetadata = getMetadata(i, variableMetadata);
-							break;
-						case Sensor.OXIMETER:
-							oximeterMetadata = getMetadata(i, variableMetadata);
-							break;
-						case Sensor.GSR:
-							GSRMetadata = getMetadata(i, variableMetadata);
-							break;
-					}
-				}
-			}
+					getMetadata(session, i, variableMetadata, discretePacketInfo, null);
 		}
 			
 		//get medical data
-		SensorData sensorData;
-		if(range != null)
-			sensorData = AALayerII.getDiscrete(range);
-		else
-			sensorData = AALayerII.getDiscrete();
+		SensorData sensorData = AALayerII.getDiscrete(session, discretePacketInfo, range);
 
 		//get Timestamp
 		Date now = new Date();
@@ -405,31 +525,31 @@ public class ProvenanceLayer {
 				{
 					case Sensor.TEMPERATURE:
 						Temperature temp = sensorData.getTemperature();
-						temp.setMetadataMap(temperatureMetadata);
+						temp.setMetadataMap(getCachedMetadata(session, Sensor.TEMPERATURE));
 						temp.setTimestamp(timestamp);
 						temp.setGps(loc);
 						break;
 					case Sensor.BLOODPRESSURE:
 						BloodPressure bp = sensorData.getBloodPressure();
-						bp.setMetadataMap(bloodPressureMetadata);
+						bp.setMetadataMap(getCachedMetadata(session, Sensor.BLOODPRESSURE));
 						bp.setTimestamp(timestamp);
 						bp.setGps(loc);
 						break;
 					case Sensor.PULSERATE:
 						PulseRate pulseRate = sensorData.getPulseRate();
-						pulseRate.setMetadataMap(pulseRateMetadata);
+						pulseRate.setMetadataMap(getCachedMetadata(session, Sensor.PULSERATE));
 						pulseRate.setTimestamp(timestamp);
 						pulseRate.setGps(loc);
 						break;
 					case Sensor.OXIMETER:
 						Oximeter oximeter = sensorData.getOximeter();
-						oximeter.setMetadataMap(oximeterMetadata);
+						oximeter.setMetadataMap(getCachedMetadata(session, Sensor.OXIMETER));
 						oximeter.setTimestamp(timestamp);
 						oximeter.setGps(loc);
 						break;
 					case Sensor.GSR:
 						GSR gsr = sensorData.getGsr();
-						gsr.setMetadataMap(GSRMetadata);
+						gsr.setMetadataMap(getCachedMetadata(session, Sensor.GSR));
 						gsr.setTimestamp(timestamp);
 						gsr.setGps(loc);
 						break;
@@ -4,14 +4,24 @@ package com.sensorstack.sensors;
 /**
  * Encapsulates the parameters for defining ECG data
  */
-public class ECG extends SensorContinuous<Float>{
+public class ECG extends SensorContinuousFloat{
 	/**
 	 * Constructor to set the length of ECG data buffer 
 	 * @param length Defines the length of the ECG data buffer
 	 */
 	public ECG(int length)
 	{
-		super(Float.class, length);
+		super(length);
+	}
+	
+	/**
+	 * Constructor to take over an ECG data buffer without copying
+	 * @param samples data buffer
+	 * @param length number of valid samples at the beginning of the buffer
+	 */
+	public ECG(float samples[], int length)
+	{
+		super(samples, length);
 	}
 	
 	/**
@@ -20,7 +30,10 @@ public class ECG extends SensorContinuous<Float>{
 	 */
 	public ECG(SensorContinuous<Float> sc)
 	{
-		super(Float.class, sc.length);
-		this.setValueArray(sc.valueArray);
+		super(sc.length);
+		if(sc instanceof SensorContinuousFloat)
+			this.setSamples(((SensorContinuousFloat) sc).samples, sc.length);
+		else
+			this.setValueArray(sc.valueArray);
 	}
 }
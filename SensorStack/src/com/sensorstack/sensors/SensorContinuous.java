@@ -4,6 +4,8 @@ import java.lang.reflect.Array;
 
 /**
  * Base class for continuous data sensors
+ * Sensors sampled as primitives keep their data in {@link SensorContinuousFloat} or {@link SensorContinuousInt},
+ * for which the value array of this class is a boxed view.
  * @param <T>
  */
 public class SensorContinuous<T> extends Metadata{
@@ -21,6 +23,14 @@ public class SensorContinuous<T> extends Metadata{
         final T[] a = (T[]) Array.newInstance(c, len);
 		valueArray = a;
 	}
+	
+	/**
+	 * Constructor for subclasses keeping the data buffer themselves
+	 * @param len length of data buffer
+	 */
+	protected SensorContinuous(int len){
+		this.length = len;
+	}
 	public T[] getValueArray() {
 		return valueArray;
 	}
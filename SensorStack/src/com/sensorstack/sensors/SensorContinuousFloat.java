@@ -0,0 +1,82 @@
+package com.sensorstack.sensors;
+
+/**
+ * Continuous data sensor whose samples are kept in a float array.
+ * {@link #getValueArray()} and {@link #setValueArray(Float[])} convert to and from boxed values and are meant for
+ * compatibility only; use {@link #getSamples()} to work on the data without boxing every sample.
+ */
+public class SensorContinuousFloat extends SensorContinuous<Float>{
+	float samples[];
+	
+	/**
+	 * Constructor to initialise data buffer
+	 * @param len length of data buffer
+	 */
+	public SensorContinuousFloat(int len){
+		super(len);
+		samples = new float[len];
+	}
+	
+	/**
+	 * Constructor to take over a data buffer without copying
+	 * @param samples data buffer, owned by this object afterwards
+	 * @param len number of valid samples at the beginning of the buffer
+	 */
+	public SensorContinuousFloat(float samples[], int len){
+		super(len);
+		this.samples = samples;
+	}
+	
+	/**
+	 * Returns the data buffer itself; the first getLength() samples are valid
+	 */
+	public float[] getSamples() {
+		return samples;
+	}
+	public float getSample(int index) {
+		return samples[index];
+	}
+	public void setSample(int index, float value) {
+		samples[index] = value;
+	}
+	
+	/**
+	 * Returns a boxed copy of the samples. Unlike {@link SensorContinuous#getValueArray()} the array is not the data
+	 * buffer itself: changes to it do not reach the sensor, and each call allocates a new array. Write values back
+	 * with {@link #setValueArray(Float[])} or {@link #setSample(int, float)}.
+	 */
+	public Float[] getValueArray() {
+		Float values[] = new Float[length];
+		for(int i=0;i<length;i++)
+			values[i] = samples[i];
+		return values;
+	}
+	/**
+	 * Copies boxed values into the data buffer. A null element has no float value, so the sample at its index is
+	 * left unchanged.
+	 */
+	public void setValueArray(Float valueArray[]) {
+		//copy
+		for(int i=0;i<length&&i<valueArray.length;i++)
+			if(valueArray[i] != null)
+				samples[i] = valueArray[i];
+	}
+	
+	/**
+	 * Copies samples into the data buffer
+	 * @param samples values to copy
+	 * @param len number of values to copy, limited to getLength()
+	 */
+	public void setSamples(float samples[], int len) {
+		System.arraycopy(samples, 0, this.samples, 0, Math.min(len, length));
+	}
+	public void setLength(int length) {
+		if(length > samples.length)
+		{
+			float grown[] = new float[length];
+			System.arraycopy(samples, 0, grown, 0, this.length);
+			samples = grown;
+		}
+		this.length = length;
+	}
+}
@@ -0,0 +1,82 @@
+package com.sensorstack.sensors;
+
+/**
+ * Continuous data sensor whose samples are kept in an int array.
+ * {@link #getValueArray()} and {@link #setValueArray(Integer[])} convert to and from boxed values and are meant for
+ * compatibility only; use {@link #getSamples()} to work on the data without boxing every sample.
+ */
+public class SensorContinuousInt extends SensorContinuous<Integer>{
+	int samples[];
+	
+	/**
+	 * Constructor to initialise data buffer
+	 * @param len length of data buffer
+	 */
+	public SensorContinuousInt(int len){
+		super(len);
+		samples = new int[len];
+	}
+	
+	/**
+	 * Constructor to take over a data buffer without copying
+	 * @param samples data buffer, owned by this object afterwards
+	 * @param len number of valid samples at the beginning of the buffer
+	 */
+	public SensorContinuousInt(int samples[], int len){
+		super(len);
+		this.samples = samples;
+	}
+	
+	/**
+	 * Returns the data buffer itself; the first getLength() samples are valid
+	 */
+	public int[] getSamples() {
+		return samples;
+	}
+	public int getSample(int index) {
+		return samples[index];
+	}
+	public void setSample(int index, int value) {
+		samples[index] = value;
+	}
+	
+	/**
+	 * Returns a boxed copy of the samples. Unlike {@link SensorContinuous#getValueArray()} the array is not the data
+	 * buffer itself: changes to it do not reach the sensor, and each call allocates a new array. Write values back
+	 * with {@link #setValueArray(Integer[])} or {@link #setSample(int, int)}.
+	 */
+	public Integer[] getValueArray() {
+		Integer values[] = new Integer[length];
+		for(int i=0;i<length;i++)
+			values[i] = samples[i];
+		return values;
+	}
+	/**
+	 * Copies boxed values into the data buffer. A null element has no int value, so the sample at its index is
+	 * left unchanged.
+	 */
+	public void setValueArray(Integer valueArray[]) {
+		//copy
+		for(int i=0;i<length&&i<valueArray.length;i++)
+			if(valueArray[i] != null)
+				samples[i] = valueArray[i];
+	}
+	
+	/**
+	 * Copies samples into the data buffer
+	 * @param samples values to copy
+	 * @param len number of values to copy, limited to getLength()
+	 */
+	public void setSamples(int samples[], int len) {
+		System.arraycopy(samples, 0, this.samples, 0, Math.min(len, length));
+	}
+	public void setLength(int length) {
+		if(length > samples.length)
+		{
+			int grown[] = new int[length];
+			System.arraycopy(samples, 0, grown, 0, this.length);
+			samples = grown;
+		}
+		this.length = length;
+	}
+}
@@ -0,0 +1,113 @@
+package com.sensorstack.sensors;
+
+/**
+ * Readings of one discrete sensor received in a batch response, oldest first; the last one is the reading
+ * current at {@link #getTime()}.
+ * Each value of the sensor is kept in a float array of its own, e.g. the systolic values in getValues(0) and
+ * the diastolic values in getValues(1) for the blood pressure, so a series is read without boxing.
+ */
+public class SensorSeries {
+	private final int sensor;
+	private float values[][];
+	private int length = 0;
+	private long time = 0;
+
+	/**
+	 * Constructor for an empty series
+	 * @param sensor Sensor as defined in the Sensor class
+	 * @param valueCount Number of values per reading, e.g. 2 for the blood pressure
+	 * @param capacity Initial number of readings; grown when more are added
+	 */
+	public SensorSeries(int sensor, int valueCount, int capacity) {
+		this.sensor = sensor;
+		values = new float[valueCount][Math.max(capacity, 1)];
+	}
+
+	/**
+	 * Returns the sensor of the series, as defined in the Sensor class
+	 */
+	public int getSensor() {
+		return sensor;
+	}
+
+	/**
+	 * Returns the number of readings
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * Returns the number of values per reading
+	 */
+	public int getValueCount() {
+		return values.length;
+	}
+
+	/**
+	 * Returns the buffer of one value of the readings itself; the first getLength() entries are valid
+	 * @param value Index of the value, from 0 to getValueCount()-1
+	 */
+	public float[] getValues(int value) {
+		return values[value];
+	}
+
+	/**
+	 * Returns the first value of a reading
+	 * @param index Position of the reading, 0 for the oldest
+	 */
+	public float getValue(int index) {
+		return values[0][index];
+	}
+
+	/**
+	 * Returns one value of a reading
+	 * @param index Position of the reading, 0 for the oldest
+	 * @param value Index of the value, from 0 to getValueCount()-1
+	 */
+	public float getValue(int index, int value) {
+		return values[value][index];
+	}
+
+	/**
+	 * Returns the latest reading's first value
+	 * @throws DataNotCollectedException if the series is empty
+	 */
+	public float getLatest() throws DataNotCollectedException {
+		if(length == 0)
+			throw new DataNotCollectedException(Sensor.sensorName(sensor) + " Sensor Not Available");
+		return values[0][length - 1];
+	}
+
+	/**
+	 * Returns the time (as System.currentTimeMillis()) the response holding the readings was received
+	 */
+	public long getTime() {
+		return time;
+	}
+
+	public void setTime(long time) {
+		this.time = time;
+	}
+
+	/**
+	 * Appends a reading
+	 * @param first First value of the reading
+	 * @param second Second value of the reading; ignored if the sensor sends one value
+	 */
+	public void add(float first, float second) {
+		if(length == values[0].length)
+		{
+			for(int k=0;k<values.length;k++)
+			{
+				float grown[] = new float[2 * length];
+				System.arraycopy(values[k], 0, grown, 0, length);
+				values[k] = grown;
+			}
+		}
+		values[0][length] = first;
+		if(values.length > 1)
+			values[1][length] = second;
+		length++;
+	}
+}